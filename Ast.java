@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.*;
+
+class Ast
+{
+    static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    byte[] kinds = new byte[INITIAL_CAPACITY];
+    int[] tks = new int[INITIAL_CAPACITY];
+    int[] as = new int[INITIAL_CAPACITY];
+    int[] bs = new int[INITIAL_CAPACITY];
+    int[] cs = new int[INITIAL_CAPACITY];
+    int[] nexts = new int[INITIAL_CAPACITY];
+    int count = 0;
+
+    int add(NodeKind kind, int tk, int a, int b, int c)
+    {
+        if(count == kinds.length) grow();
+        kinds[count] = (byte)kind.ordinal();
+        tks[count] = tk;
+        as[count] = a;
+        bs[count] = b;
+        cs[count] = c;
+        nexts[count] = NONE;
+        return count++;
+    }
+
+    private void grow()
+    {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        tks = Arrays.copyOf(tks, capacity);
+        as = Arrays.copyOf(as, capacity);
+        bs = Arrays.copyOf(bs, capacity);
+        cs = Arrays.copyOf(cs, capacity);
+        nexts = Arrays.copyOf(nexts, capacity);
+    }
+
+    int link(int prev, int node)
+    {
+        if(prev != NONE) nexts[prev] = node;
+        return node;
+    }
+
+    int tail(int node)
+    {
+        while(nexts[node] != NONE) node = nexts[node];
+        return node;
+    }
+
+    void truncate(int size)
+    {
+        count = size;
+    }
+
+    public void reset()
+    {
+        count = 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public NodeKind kind(int n)
+    {
+        return KINDS[kinds[n]];
+    }
+
+    public int token(int n)
+    {
+        return tks[n];
+    }
+
+    public int a(int n)
+    {
+        return as[n];
+    }
+
+    public int b(int n)
+    {
+        return bs[n];
+    }
+
+    public int c(int n)
+    {
+        return cs[n];
+    }
+
+    public int next(int n)
+    {
+        return nexts[n];
+    }
+
+    public double real(int n)
+    {
+        return cs[n] == Types.DOUBLE ? Double.longBitsToDouble(((long)bs[n] << 32) | (as[n] & 0xFFFFFFFFL)) : as[n];
+    }
+
+    public void dump(int n, TokenStore tokens, PrintStream out)
+    {
+        dump(n, tokens, out, 0);
+    }
+
+    private void dump(int n, TokenStore tokens, PrintStream out, int depth)
+    {
+        for(; n != NONE; n = nexts[n])
+        {
+            out.print("  ".repeat(depth));
+            out.print(kind(n));
+            if(kind(n) == NodeKind.CONST)
+            {
+                out.println(" " + (cs[n] == Types.DOUBLE ? String.valueOf(real(n)) : String.valueOf(as[n])));
+                continue;
+            }
+            if(kind(n) != NodeKind.UNIT) out.print(" " + tokens.text(tks[n]));
+            out.println();
+            dump(as[n], tokens, out, depth + 1);
+            dump(bs[n], tokens, out, depth + 1);
+            dump(cs[n], tokens, out, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+class BatchCompiler
+{
+    static class Result
+    {
+        final Path file;
+        long bytes;
+        int tokens;
+        long nanos;
+        String error;
+        Diagnostics diagnostics;
+
+        Result(Path file)
+        {
+            this.file = file;
+        }
+    }
+
+    private static final ThreadLocal<Ast> ARENAS = ThreadLocal.withInitial(Ast::new);
+
+    private final ForkJoinPool pool;
+    private boolean tables = false;
+    private boolean recover = false;
+    private TokenCache cache;
+
+    public BatchCompiler(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    public BatchCompiler useTables(boolean tables)
+    {
+        this.tables = tables;
+        return this;
+    }
+
+    public BatchCompiler recover(boolean recover)
+    {
+        this.recover = recover;
+        return this;
+    }
+
+    public BatchCompiler cache(TokenCache cache)
+    {
+        this.cache = cache;
+        return this;
+    }
+
+    public List<Result> compile(Path dir) throws IOException
+    {
+        List<Path> files;
+        try(Stream<Path> walk = Files.walk(dir))
+        {
+            files = walk.filter(p -> p.toString().endsWith(".c") && Files.isRegularFile(p)).sorted().collect(Collectors.toList());
+        }
+
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for(Path file : files)
+        {
+            tasks.add(pool.submit(() -> compileFile(file)));
+        }
+
+        List<Result> results = new ArrayList<>();
+        for(ForkJoinTask<Result> task : tasks)
+        {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    private Result compileFile(Path file)
+    {
+        Result result = new Result(file);
+        long start = System.nanoTime();
+        try
+        {
+            MappedSource src = MappedSource.map(file);
+            result.bytes = src.length();
+            String key = cache != null ? TokenCache.key(src) : null;
+            TokenCache.Entry cached = cache != null ? cache.load(key, src) : null;
+            if(recover) result.diagnostics = new Diagnostics();
+            // kept for the cache, so a hit prints the same warnings lexing did
+            List<String> warnings = new ArrayList<>();
+            TokenStore tokens;
+            if(cached != null)
+            {
+                tokens = cached.tokens;
+                for(String warning : cached.warnings) System.err.println(warning);
+            }
+            else
+            {
+                tokens = new Lex(src).useTables(tables).recover(result.diagnostics).warnings((message, at) ->
+                {
+                    warnings.add(message);
+                    System.err.println(message);
+                }).tokenizeCompact();
+            }
+            result.tokens = tokens.size();
+            // cached tokens never carry lexical errors, since tokens with any are not stored
+            int lexical = result.diagnostics != null ? result.diagnostics.size() : 0;
+            Ast ast;
+            int root;
+            if(cached != null && cached.ast != null)
+            {
+                ast = cached.ast;
+                root = cached.root;
+            }
+            else
+            {
+                Syntactic parser = new Syntactic(tokens, ARENAS.get()).recover(result.diagnostics);
+                boolean parsed;
+                try
+                {
+                    parsed = parser.parse();
+                }
+                catch(RuntimeException e)
+                {
+                    if(cache != null && cached == null && lexical == 0) cache.store(key, tokens, warnings, null, Ast.NONE);
+                    throw e;
+                }
+                boolean clean = parsed && (result.diagnostics == null || result.diagnostics.size() == 0);
+                if(cache != null && cached == null && lexical == 0) cache.store(key, tokens, warnings, clean ? parser.ast() : null, parser.root());
+                if(!parsed || lexical > 0)
+                {
+                    result.error = lexical > 0 ? result.diagnostics.format(0) : parser.error();
+                    result.nanos = System.nanoTime() - start;
+                    return result;
+                }
+                ast = parser.ast();
+                root = parser.root();
+            }
+            Diagnostics semantic = result.diagnostics != null ? result.diagnostics : new Diagnostics();
+            Domain domain = new Domain(tokens, ast, semantic);
+            if(!domain.analyze(root) || !new TypeCheck(tokens, ast, domain, semantic).check(root))
+            {
+                result.error = semantic.format(0);
+            }
+        }
+        catch(IOException | RuntimeException e)
+        {
+            // a message-less exception must still count as a failure
+            result.error = e.getMessage() != null ? e.getMessage() : String.valueOf(e);
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    public static void report(List<Result> results, long wallNanos, PrintStream out)
+    {
+        long bytes = 0;
+        long tokens = 0;
+        int failed = 0;
+        for(Result result : results)
+        {
+            bytes += result.bytes;
+            tokens += result.tokens;
+            if(result.error != null)
+            {
+                failed++;
+                if(result.diagnostics != null && result.diagnostics.size() > 0) result.diagnostics.print(result.file + ": ", out);
+                else out.println(result.file + ": " + result.error);
+            }
+            else
+            {
+                out.printf("%s: OK (%d tokens, %.3f ms)%n", result.file, result.tokens, result.nanos / 1e6);
+            }
+        }
+
+        double seconds = wallNanos / 1e9;
+        out.printf("%d files, %d failed, %d bytes, %d tokens in %.3f s (%.2f MB/s, %.0f tokens/s)%n",
+            results.size(), failed, bytes, tokens, seconds, bytes / 1e6 / seconds, tokens / seconds);
+    }
+}
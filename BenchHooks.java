@@ -0,0 +1,146 @@
+import java.util.function.*;
+
+// the compiler lives in the unnamed package, which benchmark code in a named package cannot import; these
+// fields are its entry points as plain java.util.function values, looked up once by reflection
+public final class BenchHooks
+{
+    public static final BiFunction<String, Integer, String> CORPUS = (shape, bytes) -> Corpus.generate(Corpus.Shape.valueOf(shape), bytes, 1);
+
+    public static final Function<String, Object> TOKENIZE = text -> new Lex(text).tokenize();
+
+    public static final Function<String, Object> LEX = text -> new Lex(text).tokenizeCompact();
+
+    public static final ToIntFunction<Object> TOKENS = tokens -> ((TokenStore)tokens).size();
+
+    public static final Function<Object, Object> PARSE = tokens -> parse((TokenStore)tokens, false, false);
+
+    public static final Function<Object, Object> PARSE_PREDICTIVE = tokens -> parse((TokenStore)tokens, true, false);
+
+    public static final Function<Object, Object> PARSE_PRATT = tokens -> parse((TokenStore)tokens, false, true);
+
+    public static final Function<Object, Object> RECOGNIZE = tokens ->
+    {
+        Syntactic parser = new Syntactic((TokenStore)tokens, new Ast()).buildTree(false);
+        if(!parser.parse()) throw new IllegalStateException(parser.error());
+        return parser;
+    };
+
+    public static final Supplier<Object> ARENA = Ast::new;
+
+    // parses into an arena the caller keeps, as a long-running compiler would
+    public static final BiFunction<Object, Object, Object> PARSE_INTO = (tokens, arena) ->
+    {
+        Syntactic parser = new Syntactic((TokenStore)tokens, (Ast)arena);
+        if(!parser.parse()) throw new IllegalStateException(parser.error());
+        return parser;
+    };
+
+    public static final Function<Object, Object> TREE = tokens -> new Tree((TokenStore)tokens);
+
+    public static final Function<Object, Object> ANALYZE = tree ->
+    {
+        Tree t = (Tree)tree;
+        Domain domain = new Domain(t.tokens, t.ast, new Diagnostics());
+        if(!domain.analyze(t.root)) throw new IllegalStateException("domain errors");
+        return domain;
+    };
+
+    public static final Function<Object, Object> TYPE_CHECK = tree ->
+    {
+        Tree t = (Tree)tree;
+        TypeCheck types = new TypeCheck(t.tokens, t.ast, t.domain, new Diagnostics());
+        if(!types.check(t.root)) throw new IllegalStateException("type errors");
+        return types;
+    };
+
+    public static final Function<String, Object> LEX_PARSE = text -> parse(new Lex(text).tokenizeCompact(), false, false);
+
+    public static final Function<String, Object> LEX_PARSE_PIPELINED = text ->
+    {
+        TokenPipe pipe = new TokenPipe(new StringSource(text), false).start();
+        Syntactic parser = new Syntactic(pipe.tokens(), new Ast()).feed(pipe);
+        if(!parser.parse()) throw new IllegalStateException(parser.error());
+        return parser;
+    };
+
+    public static final Function<String, Object> COMPILE = text ->
+    {
+        TokenStore tokens = new Lex(text).tokenizeCompact();
+        Ast ast = new Ast();
+        Syntactic parser = new Syntactic(tokens, ast);
+        if(!parser.parse()) throw new IllegalStateException(parser.error());
+        Diagnostics diagnostics = new Diagnostics();
+        Domain domain = new Domain(tokens, ast, diagnostics);
+        if(!domain.analyze(parser.root()) || !new TypeCheck(tokens, ast, domain, diagnostics).check(parser.root()))
+        {
+            throw new IllegalStateException(diagnostics.format(0));
+        }
+        return ast;
+    };
+
+    // compiles a program for one back end ("stack", "closures", "jvm" or "ir:" and a --passes list) and returns
+    // a run of it
+    public static final BiFunction<String, String, LongSupplier> BACKEND = (text, backend) ->
+    {
+        Tree t = new Tree(new Lex(text).tokenizeCompact());
+        switch(backend)
+        {
+            case "stack":
+            {
+                Program program = new CodeGen(t.tokens, t.ast, t.domain, t.types).generate(t.root);
+                return () -> new Vm(program).run();
+            }
+            case "closures":
+                return new ClosureGen(t.tokens, t.ast, t.domain, t.types).generate(t.root)::run;
+            case "jvm":
+                return new JvmGen(t.tokens, t.ast, t.domain, t.types).generate(t.root)::run;
+            default:
+            {
+                IrModule module = optimize(text, backend.substring("ir:".length()));
+                return () -> new IrVm(module).run();
+            }
+        }
+    };
+
+    // compiles a program to IR and runs the passes of a --passes list over it
+    public static final BiFunction<String, String, Object> OPTIMIZE = BenchHooks::optimize;
+
+    private BenchHooks()
+    {
+    }
+
+    private static IrModule optimize(String text, String passes)
+    {
+        Tree t = new Tree(new Lex(text).tokenizeCompact());
+        return new IrPipeline(IrPass.parse(passes)).run(new IrGen(t.tokens, t.ast, t.domain, t.types).generate(t.root));
+    }
+
+    // a parsed and checked file, for the benchmarks that start after parsing
+    private static final class Tree
+    {
+        final TokenStore tokens;
+        final Ast ast = new Ast();
+        final int root;
+        final Domain domain;
+        final TypeCheck types;
+
+        Tree(TokenStore tokens)
+        {
+            this.tokens = tokens;
+            Syntactic parser = new Syntactic(tokens, ast);
+            if(!parser.parse()) throw new IllegalStateException(parser.error());
+            root = parser.root();
+            Diagnostics diagnostics = new Diagnostics();
+            domain = new Domain(tokens, ast, diagnostics);
+            types = new TypeCheck(tokens, ast, domain, diagnostics);
+            if(!domain.analyze(root) || !types.check(root)) throw new IllegalStateException(diagnostics.format(0));
+        }
+    }
+
+    private static Syntactic parse(TokenStore tokens, boolean predictive, boolean pratt)
+    {
+        Syntactic parser = new Syntactic(tokens, new Ast()).predictive(predictive).pratt(pratt);
+        if(!parser.parse()) throw new IllegalStateException(parser.error());
+        return parser;
+    }
+}
@@ -0,0 +1,30 @@
+enum Builtin
+{
+    PUT_S("put_s", Types.VOID, Types.CHAR_ARRAY),
+    GET_S("get_s", Types.VOID, Types.CHAR_ARRAY),
+    PUT_I("put_i", Types.VOID, Types.INT),
+    GET_I("get_i", Types.INT),
+    PUT_D("put_d", Types.VOID, Types.DOUBLE),
+    GET_D("get_d", Types.DOUBLE),
+    PUT_C("put_c", Types.VOID, Types.CHAR),
+    GET_C("get_c", Types.CHAR),
+    SECONDS("seconds", Types.DOUBLE);
+
+    final String spelling;
+    final int ret;
+    final int[] params;
+    final int arity;        // argument slots at run time, since an array travels with its element count
+
+    Builtin(String spelling, int ret, int... params)
+    {
+        this.spelling = spelling;
+        this.ret = ret;
+        this.params = params;
+        int arity = params.length;
+        for(int param : params)
+        {
+            if(Types.isArray(param)) arity++;
+        }
+        this.arity = arity;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.*;
+
+// the builtin functions over flat memory, shared by the interpreters; doubles travel as their raw long bits
+class BuiltinIo
+{
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    PrintStream out = System.out;
+
+    // runs builtin on the arguments ending just below top in args and returns its result, 0 for void builtins; an
+    // array argument is its address followed by its element count
+    long call(Builtin builtin, long[] memory, long[] args, int top)
+    {
+        switch(builtin)
+        {
+            case PUT_S:
+                putS(memory, (int)args[top - 2], (int)args[top - 1]);
+                return 0;
+            case GET_S:
+                getS(memory, (int)args[top - 2], (int)args[top - 1]);
+                return 0;
+            case PUT_I:
+                out.print((int)args[top - 1]);
+                return 0;
+            case GET_I:
+                return getI();
+            case PUT_D:
+                out.print(Double.longBitsToDouble(args[top - 1]));
+                return 0;
+            case GET_D:
+                return Double.doubleToRawLongBits(getD());
+            case PUT_C:
+                putC((int)args[top - 1]);
+                return 0;
+            case GET_C:
+                return getC();
+            default:
+                return Double.doubleToRawLongBits(seconds());
+        }
+    }
+
+    // both stay inside the count elements of the array, as the JVM backend's get_s and put_s do
+    void putS(long[] memory, int p, int count)
+    {
+        for(int end = p + count; p < end && memory[p] != 0; p++) out.print((char)(memory[p] & 0xFF));
+    }
+
+    void getS(long[] memory, int p, int count)
+    {
+        String line = readLine();
+        int n = Math.min(line.length(), count - 1);
+        for(int i = 0; i < n; i++) memory[p + i] = (byte)line.charAt(i);
+        if(n >= 0) memory[p + n] = 0;
+    }
+
+    int getI()
+    {
+        return Integer.parseInt(readLine().trim());
+    }
+
+    double getD()
+    {
+        return Double.parseDouble(readLine().trim());
+    }
+
+    void putC(int value)
+    {
+        out.print((char)(value & 0xFF));
+    }
+
+    int getC()
+    {
+        try
+        {
+            int c = in.read();
+            return (byte)(c >= 0 ? c : 0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static double seconds()
+    {
+        return System.nanoTime() / 1e9;
+    }
+
+    private String readLine()
+    {
+        try
+        {
+            String line = in.readLine();
+            return line != null ? line : "";
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.*;
+import java.util.*;
+
+class ClassFile
+{
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int NONE_INDEX = 0;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount = 0;
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    final String name;
+    private final int thisClass;
+    private final int superClass;
+
+    ClassFile(String name)
+    {
+        this.name = name;
+        this.thisClass = cls(name);
+        this.superClass = cls("java/lang/Object");
+    }
+
+    int utf8(String text)
+    {
+        Integer index = entries.get("U" + text);
+        if(index != null) return index;
+        try
+        {
+            pool.writeByte(UTF8);
+            pool.writeUTF(text);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return add("U" + text, 1);
+    }
+
+    int integer(int value)
+    {
+        Integer index = entries.get("I" + value);
+        if(index != null) return index;
+        write(INTEGER, value);
+        return add("I" + value, 1);
+    }
+
+    int real(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = entries.get("D" + bits);
+        if(index != null) return index;
+        write(DOUBLE, (int)(bits >>> 32));
+        try
+        {
+            pool.writeInt((int)bits);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return add("D" + bits, 2);
+    }
+
+    int cls(String internalName)
+    {
+        return ref(CLASS, "C" + internalName, utf8(internalName), NONE_INDEX);
+    }
+
+    int string(String text)
+    {
+        return ref(STRING, "S" + text, utf8(text), NONE_INDEX);
+    }
+
+    int field(String owner, String name, String descriptor)
+    {
+        return ref(FIELDREF, "F" + owner + "." + name + ":" + descriptor, cls(owner), nameAndType(name, descriptor));
+    }
+
+    int method(String owner, String name, String descriptor)
+    {
+        return ref(METHODREF, "M" + owner + "." + name + descriptor, cls(owner), nameAndType(name, descriptor));
+    }
+
+    void addField(int access, String name, String descriptor)
+    {
+        try
+        {
+            fields.writeShort(access);
+            fields.writeShort(utf8(name));
+            fields.writeShort(utf8(descriptor));
+            fields.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code)
+    {
+        byte[] body = code.finish();
+        try
+        {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1);
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(12 + body.length);
+            methods.writeShort(code.maxStack);
+            methods.writeShort(code.maxLocals);
+            methods.writeInt(body.length);
+            methods.write(body);
+            methods.writeShort(0);
+            methods.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    byte[] toBytes()
+    {
+        if(poolCount > 65535) throw new IllegalStateException("the constant pool is too large for the JVM");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(Jvm.ACC_PUBLIC | Jvm.ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fieldCount);
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int nameAndType(String name, String descriptor)
+    {
+        return ref(NAME_AND_TYPE, "N" + name + ":" + descriptor, utf8(name), utf8(descriptor));
+    }
+
+    private int ref(int tag, String key, int first, int second)
+    {
+        Integer index = entries.get(key);
+        if(index != null) return index;
+        try
+        {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if(second != NONE_INDEX) pool.writeShort(second);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return add(key, 1);
+    }
+
+    private void write(int tag, int value)
+    {
+        try
+        {
+            pool.writeByte(tag);
+            pool.writeInt(value);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int add(String key, int slots)
+    {
+        int index = poolCount;
+        entries.put(key, index);
+        poolCount += slots;
+        return index;
+    }
+}
@@ -0,0 +1,1584 @@
+import java.util.*;
+
+class ClosureGen
+{
+    private static final int NONE = Ast.NONE;
+
+    private static final byte GLOBAL = 0;
+    private static final byte LOCAL = 1;
+    private static final byte REF = 2;
+    private static final byte INT = 3;
+    private static final byte REAL = 4;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Domain domain;
+    private final TypeCheck types;
+    private final Machine machine;
+    private final long[] memory;
+    private Layout layout;
+
+    private final DataSegment segment = new DataSegment();
+
+    private final byte[] places;
+    private final int[] addresses;
+    private final ClosureFunction[] functions;
+    private ClosureFunction main;
+
+    private ClosureFunction fn;
+    private int frame;
+    private int returnType;
+    private int returnBuffer;
+
+    public ClosureGen(TokenStore tokens, Ast ast, Domain domain, TypeCheck types)
+    {
+        this(tokens, ast, domain, types, 1 << 20);
+    }
+
+    public ClosureGen(TokenStore tokens, Ast ast, Domain domain, TypeCheck types, int memorySlots)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.domain = domain;
+        this.types = types;
+        this.machine = new Machine(memorySlots);
+        this.memory = machine.memory;
+        this.places = new byte[domain.size()];
+        this.addresses = new int[domain.size()];
+        this.functions = new ClosureFunction[domain.size()];
+    }
+
+    public ClosureProgram generate(int root)
+    {
+        layout = new Layout(ast, domain, types, root);
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            if(ast.kind(n) != NodeKind.FUNC) continue;
+            int sym = domain.symbol(n);
+            functions[sym] = new ClosureFunction(tokens.text(ast.token(n)));
+            functions[sym].returnType = types.symbolType(sym);
+            if(functions[sym].name.equals("main")) main = functions[sym];
+        }
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            switch(ast.kind(n))
+            {
+                case STRUCT: break;
+                case FUNC: func(n); break;
+                default:
+                    places[domain.symbol(n)] = GLOBAL;
+                    addresses[domain.symbol(n)] = segment.allocate(layout.slots(ast.a(n)));
+                    break;
+            }
+        }
+        if(segment.size() > memory.length) throw new IllegalStateException("the globals do not fit in memory");
+        return new ClosureProgram(machine, segment.image(), main);
+    }
+
+    private void local(int n)
+    {
+        int sym = domain.symbol(n);
+        int type = types.symbolType(sym);
+        if(Types.isScalar(type))
+        {
+            places[sym] = type == Types.DOUBLE ? REAL : INT;
+            addresses[sym] = type == Types.DOUBLE ? fn.reals++ : fn.ints++;
+            return;
+        }
+        places[sym] = LOCAL;
+        addresses[sym] = frame;
+        frame += layout.slots(ast.a(n));
+        fn.frame = Math.max(fn.frame, frame);
+    }
+
+    private void func(int n)
+    {
+        int sym = domain.symbol(n);
+        fn = functions[sym];
+        returnType = fn.returnType;
+        returnBuffer = Types.isStruct(returnType) ? segment.allocate(layout.size(returnType)) : 0;
+        frame = 0;
+
+        List<StmNode> body = new ArrayList<>();
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            int type = types.symbolType(p);
+            places[p] = type == Types.DOUBLE ? REAL : Types.isScalar(type) ? INT : REF;
+            addresses[p] = type == Types.DOUBLE ? fn.reals++ : fn.ints++;
+            if(Types.isArray(type)) fn.ints++;      // the element count follows the address
+        }
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            int type = types.symbolType(p);
+            if(!Types.isStruct(type) || Types.isArray(type)) continue;
+            int source = addresses[p];
+            local(param);
+            body.add(new IntStm(new CopyNode(memory, new AddressLocal(addresses[p]), new IntLocal(source), layout.size(type))));
+        }
+
+        block(ast.a(ast.c(n)), body);
+        if(Types.isStruct(returnType)) body.add(new ReturnI(new IntConst(returnBuffer)));
+        fn.body = new BlockNode(body.toArray(new StmNode[0]));
+    }
+
+    private StmNode block(int first)
+    {
+        List<StmNode> body = new ArrayList<>();
+        block(first, body);
+        return body.size() == 1 ? body.get(0) : new BlockNode(body.toArray(new StmNode[0]));
+    }
+
+    private void block(int first, List<StmNode> body)
+    {
+        int saved = frame;
+        for(int n = first; n != NONE; n = ast.next(n))
+        {
+            StmNode stm = stm(n);
+            if(stm != null) body.add(stm);
+        }
+        frame = saved;
+    }
+
+    private StmNode stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                return block(ast.a(n));
+            case VAR:
+                local(n);
+                return null;
+            case IF:
+            {
+                IntNode cond = condition(ast.a(n));
+                StmNode then = body(ast.b(n));
+                StmNode otherwise = ast.c(n) != NONE ? body(ast.c(n)) : null;
+                return new IfNode(cond, then, otherwise);
+            }
+            case WHILE:
+                return new LoopNode(condition(ast.a(n)), body(ast.b(n)), null);
+            case FOR:
+            {
+                int head = ast.a(n);
+                StmNode init = ast.a(head) != NONE ? effect(ast.a(head)) : null;
+                IntNode cond = ast.b(head) != NONE ? condition(ast.b(head)) : null;
+                StmNode body = body(ast.b(n));
+                StmNode step = ast.c(head) != NONE ? effect(ast.c(head)) : null;
+                LoopNode loop = new LoopNode(cond, body, step);
+                return init != null ? new BlockNode(new StmNode[] {init, loop}) : loop;
+            }
+            case BREAK:
+                return new BreakNode();
+            case RETURN:
+                return ret(ast.a(n));
+            case EXPR:
+                return effect(ast.a(n));
+            default:
+                return null;
+        }
+    }
+
+    private StmNode body(int n)
+    {
+        StmNode stm = stm(n);
+        return stm != null ? stm : new BlockNode(new StmNode[0]);
+    }
+
+    private StmNode ret(int value)
+    {
+        if(value == NONE) return new ReturnI(null);
+        if(Types.isStruct(returnType))
+        {
+            return new ReturnI(new CopyNode(memory, new IntConst(returnBuffer), intValue(value), layout.size(returnType)));
+        }
+        if(returnType == Types.DOUBLE) return new ReturnD(realOf(value));
+        return new ReturnI(intOf(value, returnType));
+    }
+
+    private StmNode effect(int n)
+    {
+        int type = types.type(n);
+        if(type == Types.VOID)
+        {
+            int sym = domain.symbol(n);
+            if(domain.kind(sym) == SymbolKind.BUILTIN) return print(n, domain.builtin(sym));
+            return new CallStm(machine, functions[sym], args(n));
+        }
+        if(type == Types.DOUBLE) return new RealStm(realValue(n));
+        return new IntStm(intValue(n));
+    }
+
+    private IntNode condition(int n)
+    {
+        return types.type(n) == Types.DOUBLE ? new TestD(realValue(n)) : intValue(n);
+    }
+
+    private IntNode intOf(int n, int to)
+    {
+        int from = types.type(n);
+        IntNode value = from == Types.DOUBLE ? new D2I(realValue(n)) : intValue(n);
+        return to == Types.CHAR && from != Types.CHAR ? new I2C(value) : value;
+    }
+
+    private RealNode realOf(int n)
+    {
+        return types.type(n) == Types.DOUBLE ? realValue(n) : new I2D(intValue(n));
+    }
+
+    private IntNode address(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                switch(places[sym])
+                {
+                    case GLOBAL: return new IntConst(addresses[sym]);
+                    case LOCAL: return new AddressLocal(addresses[sym]);
+                    default: return new IntLocal(addresses[sym]);
+                }
+            }
+            case FIELD:
+            {
+                IntNode base = intValue(ast.a(n));
+                int offset = layout.offset(types.type(ast.a(n)), tokens.symbol(ast.token(n)));
+                return offset != 0 ? new AddressOffset(base, offset) : base;
+            }
+            case INDEX:
+                return new AddressIndex(intValue(ast.a(n)), intOf(ast.b(n), Types.INT), layout.elementSize(types.type(ast.a(n))));
+            default:
+                return intValue(n);
+        }
+    }
+
+    private IntNode intValue(int n)
+    {
+        int type = types.type(n);
+        switch(ast.kind(n))
+        {
+            case CONST:
+                return new IntConst(ast.a(n));
+            case LITERAL:
+                return new IntConst(segment.string(tokens, ast.token(n)));
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                if(places[sym] == INT) return new IntLocal(addresses[sym]);
+                if(places[sym] == GLOBAL && Types.isScalar(type)) return new IntLoadGlobal(memory, addresses[sym]);
+                return address(n);
+            }
+            case FIELD:
+                return Types.isScalar(type) ? new IntLoad(memory, address(n)) : address(n);
+            case INDEX:
+            {
+                if(!Types.isScalar(type)) return address(n);
+                if(layout.elementSize(types.type(ast.a(n))) == 1)
+                {
+                    return new IntLoadIndex(memory, intValue(ast.a(n)), intOf(ast.b(n), Types.INT));
+                }
+                return new IntLoad(memory, address(n));
+            }
+            case CALL:
+            {
+                int sym = domain.symbol(n);
+                if(domain.kind(sym) == SymbolKind.BUILTIN) return new ReadI(machine, domain.builtin(sym) == Builtin.GET_C);
+                return new CallI(machine, functions[sym], args(n));
+            }
+            case CAST:
+                return intOf(ast.b(n), type);
+            case UNARY:
+            {
+                if(tokens.type(ast.token(n)) == TokenType.NOT) return new NotNode(condition(ast.a(n)));
+                IntNode neg = new NegI(intValue(ast.a(n)));
+                return type == Types.CHAR ? new I2C(neg) : neg;
+            }
+            case BINARY:
+                return binary(n, type);
+            case ASSIGN:
+                return assign(n);
+            default:
+                throw new IllegalStateException("cannot compile " + ast.kind(n) + " as an int");
+        }
+    }
+
+    private RealNode realValue(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case CONST:
+                return new RealConst(ast.real(n));
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                if(places[sym] == REAL) return new RealLocal(addresses[sym]);
+                return new RealLoad(memory, new IntConst(addresses[sym]));
+            }
+            case FIELD:
+            case INDEX:
+                return new RealLoad(memory, address(n));
+            case CALL:
+            {
+                int sym = domain.symbol(n);
+                if(domain.kind(sym) == SymbolKind.BUILTIN) return new ReadD(machine, domain.builtin(sym) == Builtin.SECONDS);
+                return new CallD(machine, functions[sym], args(n));
+            }
+            case CAST:
+                return realOf(ast.b(n));
+            case UNARY:
+                return new NegD(realValue(ast.a(n)));
+            case BINARY:
+            {
+                RealNode left = realOf(ast.a(n));
+                RealNode right = realOf(ast.b(n));
+                switch(tokens.type(ast.token(n)))
+                {
+                    case ADD: return new AddD(left, right);
+                    case SUB: return new SubD(left, right);
+                    case MUL: return new MulD(left, right);
+                    default: return new DivD(left, right);
+                }
+            }
+            case ASSIGN:
+            {
+                int dst = ast.a(n);
+                RealNode value = realOf(ast.b(n));
+                if(ast.kind(dst) == NodeKind.ID && places[domain.symbol(dst)] == REAL)
+                {
+                    return new RealSetLocal(addresses[domain.symbol(dst)], value);
+                }
+                return new RealStore(memory, address(dst), value);
+            }
+            default:
+                throw new IllegalStateException("cannot compile " + ast.kind(n) + " as a double");
+        }
+    }
+
+    private IntNode binary(int n, int type)
+    {
+        TokenType op = tokens.type(ast.token(n));
+        int left = ast.a(n);
+        int right = ast.b(n);
+        if(op == TokenType.AND) return new AndNode(condition(left), condition(right));
+        if(op == TokenType.OR) return new OrNode(condition(left), condition(right));
+
+        int operand = Types.isScalar(types.type(left)) && Types.isScalar(types.type(right)) ? Types.arith(types.type(left), types.type(right)) : Types.INT;
+        int compare;
+        switch(op)
+        {
+            case EQUAL: compare = CompareI.EQ; break;
+            case NOTEQ: compare = CompareI.NE; break;
+            case LESS: compare = CompareI.LT; break;
+            case LESSEQ: compare = CompareI.LE; break;
+            case GREATER: compare = CompareI.GT; break;
+            case GREATEREQ: compare = CompareI.GE; break;
+            default: compare = NONE; break;
+        }
+        if(operand == Types.DOUBLE)
+        {
+            if(compare != NONE) return new CompareD(compare, realOf(left), realOf(right));
+            return new D2I(realValue(n));
+        }
+
+        IntNode a = intValue(left);
+        IntNode b = intValue(right);
+        IntNode r;
+        if(compare == CompareI.LT && a instanceof IntLocal && b instanceof IntConst)
+        {
+            r = new LessLocalConst(((IntLocal)a).slot, ((IntConst)b).value);
+        }
+        else if(compare == CompareI.LT && a instanceof IntLocal && b instanceof IntLocal)
+        {
+            r = new LessLocalLocal(((IntLocal)a).slot, ((IntLocal)b).slot);
+        }
+        else if(compare != NONE)
+        {
+            r = new CompareI(compare, a, b);
+        }
+        else
+        {
+            switch(op)
+            {
+                case ADD: r = b instanceof IntConst ? new AddConstI(a, ((IntConst)b).value) : new AddI(a, b); break;
+                case SUB: r = b instanceof IntConst ? new AddConstI(a, -((IntConst)b).value) : new SubI(a, b); break;
+                case MUL: r = new MulI(a, b); break;
+                default: r = new DivI(a, b); break;
+            }
+        }
+        return type == Types.CHAR ? new I2C(r) : r;
+    }
+
+    private IntNode assign(int n)
+    {
+        int dst = ast.a(n);
+        int src = ast.b(n);
+        int type = types.type(dst);
+        if(type == Types.DOUBLE) return new D2I(realValue(n));
+        if(Types.isStruct(type)) return new CopyNode(memory, address(dst), intValue(src), layout.size(type));
+        IntNode value = intOf(src, type);
+        if(ast.kind(dst) == NodeKind.ID)
+        {
+            int sym = domain.symbol(dst);
+            if(places[sym] == INT)
+            {
+                if(value instanceof AddConstI && ((AddConstI)value).adds(addresses[sym])) return new IntIncLocal(addresses[sym], ((AddConstI)value).right);
+                return new IntSetLocal(addresses[sym], value);
+            }
+            if(places[sym] == GLOBAL) return new IntStoreGlobal(memory, addresses[sym], value);
+        }
+        return new IntStore(memory, address(dst), value);
+    }
+
+    private ArgNode[] args(int n)
+    {
+        List<ArgNode> args = new ArrayList<>();
+        int param = ast.b(domain.node(domain.symbol(n)));
+        int ints = 0;
+        int reals = 0;
+        for(int arg = ast.a(n); arg != NONE; arg = ast.next(arg), param = ast.next(param))
+        {
+            int type = types.symbolType(domain.symbol(param));
+            if(type == Types.DOUBLE) args.add(new RealArg(reals++, realOf(arg)));
+            else args.add(new IntArg(ints++, intOf(arg, type)));
+            if(Types.isArray(type)) args.add(new IntArg(ints++, length(arg)));
+        }
+        return args.toArray(new ArgNode[0]);
+    }
+
+    // the element count an array argument carries after its address
+    private IntNode length(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case LITERAL:
+                return new IntConst(DataSegment.length(tokens, ast.token(n)));
+            case CAST:
+                return length(ast.b(n));
+            default:
+            {
+                int sym = domain.symbol(n);
+                if(ast.kind(n) == NodeKind.ID && places[sym] == REF) return new IntLocal(addresses[sym] + 1);
+                return new IntConst(layout.length(n));
+            }
+        }
+    }
+
+    private StmNode print(int n, Builtin builtin)
+    {
+        int arg = ast.a(n);
+        switch(builtin)
+        {
+            case PUT_D: return new PrintStm(machine, builtin, null, null, realOf(arg));
+            case PUT_C: return new PrintStm(machine, builtin, intOf(arg, Types.CHAR), null, null);
+            case PUT_I: return new PrintStm(machine, builtin, intOf(arg, Types.INT), null, null);
+            default: return new PrintStm(machine, builtin, intValue(arg), length(arg), null);
+        }
+    }
+
+    static final class Frame
+    {
+        final int[] ints;
+        final double[] reals;
+        final int fp;
+        int retI;
+        double retD;
+
+        Frame(int ints, int reals, int fp)
+        {
+            this.ints = new int[ints];
+            this.reals = new double[reals];
+            this.fp = fp;
+        }
+    }
+
+    static final class Machine
+    {
+        final long[] memory;
+        int top;
+        int depth;
+        final BuiltinIo io = new BuiltinIo();
+
+        Machine(int memorySlots)
+        {
+            memory = new long[memorySlots];
+        }
+
+        Frame invoke(ClosureFunction fn, ArgNode[] args, Frame caller)
+        {
+            if(depth > DeepStack.MAX_DEPTH) throw new IllegalStateException("stack overflow");
+            Frame callee = new Frame(fn.ints, fn.reals, top);
+            for(ArgNode arg : args) arg.bind(caller, callee);
+            int saved = top;
+            top += fn.frame;
+            if(top > memory.length) throw new IllegalStateException("stack overflow");
+            depth++;
+            fn.body.exec(callee);
+            depth--;
+            top = saved;
+            return callee;
+        }
+    }
+
+    static final class ClosureFunction
+    {
+        final String name;
+        StmNode body;
+        int ints;
+        int reals;
+        int frame;
+        int returnType;
+
+        ClosureFunction(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    abstract static class IntNode
+    {
+        abstract int eval(Frame f);
+    }
+
+    abstract static class RealNode
+    {
+        abstract double eval(Frame f);
+    }
+
+    abstract static class StmNode
+    {
+        static final int NORMAL = 0;
+        static final int BREAK = 1;
+        static final int RETURN = 2;
+
+        abstract int exec(Frame f);
+    }
+
+    abstract static class ArgNode
+    {
+        abstract void bind(Frame caller, Frame callee);
+    }
+
+    static final class IntArg extends ArgNode
+    {
+        private final int slot;
+        private final IntNode value;
+
+        IntArg(int slot, IntNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        void bind(Frame caller, Frame callee)
+        {
+            callee.ints[slot] = value.eval(caller);
+        }
+    }
+
+    static final class RealArg extends ArgNode
+    {
+        private final int slot;
+        private final RealNode value;
+
+        RealArg(int slot, RealNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        void bind(Frame caller, Frame callee)
+        {
+            callee.reals[slot] = value.eval(caller);
+        }
+    }
+
+    static final class IntConst extends IntNode
+    {
+        final int value;
+
+        IntConst(int value)
+        {
+            this.value = value;
+        }
+
+        int eval(Frame f)
+        {
+            return value;
+        }
+    }
+
+    static final class IntLocal extends IntNode
+    {
+        final int slot;
+
+        IntLocal(int slot)
+        {
+            this.slot = slot;
+        }
+
+        int eval(Frame f)
+        {
+            return f.ints[slot];
+        }
+    }
+
+    static final class IntSetLocal extends IntNode
+    {
+        private final int slot;
+        private final IntNode value;
+
+        IntSetLocal(int slot, IntNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int eval(Frame f)
+        {
+            return f.ints[slot] = value.eval(f);
+        }
+    }
+
+    static final class IntIncLocal extends IntNode
+    {
+        private final int slot;
+        private final int delta;
+
+        IntIncLocal(int slot, int delta)
+        {
+            this.slot = slot;
+            this.delta = delta;
+        }
+
+        int eval(Frame f)
+        {
+            return f.ints[slot] += delta;
+        }
+    }
+
+    static final class IntLoad extends IntNode
+    {
+        private final long[] memory;
+        private final IntNode address;
+
+        IntLoad(long[] memory, IntNode address)
+        {
+            this.memory = memory;
+            this.address = address;
+        }
+
+        int eval(Frame f)
+        {
+            return (int)memory[address.eval(f)];
+        }
+    }
+
+    static final class IntLoadGlobal extends IntNode
+    {
+        private final long[] memory;
+        private final int address;
+
+        IntLoadGlobal(long[] memory, int address)
+        {
+            this.memory = memory;
+            this.address = address;
+        }
+
+        int eval(Frame f)
+        {
+            return (int)memory[address];
+        }
+    }
+
+    static final class IntLoadIndex extends IntNode
+    {
+        private final long[] memory;
+        private final IntNode base;
+        private final IntNode index;
+
+        IntLoadIndex(long[] memory, IntNode base, IntNode index)
+        {
+            this.memory = memory;
+            this.base = base;
+            this.index = index;
+        }
+
+        int eval(Frame f)
+        {
+            return (int)memory[base.eval(f) + index.eval(f)];
+        }
+    }
+
+    static final class IntStore extends IntNode
+    {
+        private final long[] memory;
+        private final IntNode address;
+        private final IntNode value;
+
+        IntStore(long[] memory, IntNode address, IntNode value)
+        {
+            this.memory = memory;
+            this.address = address;
+            this.value = value;
+        }
+
+        int eval(Frame f)
+        {
+            int a = address.eval(f);
+            int v = value.eval(f);
+            memory[a] = v;
+            return v;
+        }
+    }
+
+    static final class IntStoreGlobal extends IntNode
+    {
+        private final long[] memory;
+        private final int address;
+        private final IntNode value;
+
+        IntStoreGlobal(long[] memory, int address, IntNode value)
+        {
+            this.memory = memory;
+            this.address = address;
+            this.value = value;
+        }
+
+        int eval(Frame f)
+        {
+            int v = value.eval(f);
+            memory[address] = v;
+            return v;
+        }
+    }
+
+    static final class AddressLocal extends IntNode
+    {
+        private final int offset;
+
+        AddressLocal(int offset)
+        {
+            this.offset = offset;
+        }
+
+        int eval(Frame f)
+        {
+            return f.fp + offset;
+        }
+    }
+
+    static final class AddressOffset extends IntNode
+    {
+        private final IntNode base;
+        private final int offset;
+
+        AddressOffset(IntNode base, int offset)
+        {
+            this.base = base;
+            this.offset = offset;
+        }
+
+        int eval(Frame f)
+        {
+            return base.eval(f) + offset;
+        }
+    }
+
+    static final class AddressIndex extends IntNode
+    {
+        private final IntNode base;
+        private final IntNode index;
+        private final int size;
+
+        AddressIndex(IntNode base, IntNode index, int size)
+        {
+            this.base = base;
+            this.index = index;
+            this.size = size;
+        }
+
+        int eval(Frame f)
+        {
+            return base.eval(f) + index.eval(f) * size;
+        }
+    }
+
+    static final class CopyNode extends IntNode
+    {
+        private final long[] memory;
+        private final IntNode dst;
+        private final IntNode src;
+        private final int size;
+
+        CopyNode(long[] memory, IntNode dst, IntNode src, int size)
+        {
+            this.memory = memory;
+            this.dst = dst;
+            this.src = src;
+            this.size = size;
+        }
+
+        int eval(Frame f)
+        {
+            int to = dst.eval(f);
+            System.arraycopy(memory, src.eval(f), memory, to, size);
+            return to;
+        }
+    }
+
+    static final class AddI extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        AddI(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) + right.eval(f);
+        }
+    }
+
+    static final class AddConstI extends IntNode
+    {
+        private final IntNode left;
+        final int right;
+
+        AddConstI(IntNode left, int right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) + right;
+        }
+
+        boolean adds(int slot)
+        {
+            return left instanceof IntLocal && ((IntLocal)left).slot == slot;
+        }
+    }
+
+    static final class SubI extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        SubI(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) - right.eval(f);
+        }
+    }
+
+    static final class MulI extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        MulI(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) * right.eval(f);
+        }
+    }
+
+    static final class DivI extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        DivI(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) / right.eval(f);
+        }
+    }
+
+    static final class NegI extends IntNode
+    {
+        private final IntNode operand;
+
+        NegI(IntNode operand)
+        {
+            this.operand = operand;
+        }
+
+        int eval(Frame f)
+        {
+            return -operand.eval(f);
+        }
+    }
+
+    static final class CompareI extends IntNode
+    {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+
+        private final int op;
+        private final IntNode left;
+        private final IntNode right;
+
+        CompareI(int op, IntNode left, IntNode right)
+        {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            int a = left.eval(f);
+            int b = right.eval(f);
+            switch(op)
+            {
+                case EQ: return a == b ? 1 : 0;
+                case NE: return a != b ? 1 : 0;
+                case LT: return a < b ? 1 : 0;
+                case LE: return a <= b ? 1 : 0;
+                case GT: return a > b ? 1 : 0;
+                default: return a >= b ? 1 : 0;
+            }
+        }
+    }
+
+    static final class LessLocalConst extends IntNode
+    {
+        private final int slot;
+        private final int bound;
+
+        LessLocalConst(int slot, int bound)
+        {
+            this.slot = slot;
+            this.bound = bound;
+        }
+
+        int eval(Frame f)
+        {
+            return f.ints[slot] < bound ? 1 : 0;
+        }
+    }
+
+    static final class LessLocalLocal extends IntNode
+    {
+        private final int left;
+        private final int right;
+
+        LessLocalLocal(int left, int right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return f.ints[left] < f.ints[right] ? 1 : 0;
+        }
+    }
+
+    static final class CompareD extends IntNode
+    {
+        private final int op;
+        private final RealNode left;
+        private final RealNode right;
+
+        CompareD(int op, RealNode left, RealNode right)
+        {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            double a = left.eval(f);
+            double b = right.eval(f);
+            switch(op)
+            {
+                case CompareI.EQ: return a == b ? 1 : 0;
+                case CompareI.NE: return a != b ? 1 : 0;
+                case CompareI.LT: return a < b ? 1 : 0;
+                case CompareI.LE: return a <= b ? 1 : 0;
+                case CompareI.GT: return a > b ? 1 : 0;
+                default: return a >= b ? 1 : 0;
+            }
+        }
+    }
+
+    static final class AndNode extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        AndNode(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) != 0 && right.eval(f) != 0 ? 1 : 0;
+        }
+    }
+
+    static final class OrNode extends IntNode
+    {
+        private final IntNode left;
+        private final IntNode right;
+
+        OrNode(IntNode left, IntNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int eval(Frame f)
+        {
+            return left.eval(f) != 0 || right.eval(f) != 0 ? 1 : 0;
+        }
+    }
+
+    static final class NotNode extends IntNode
+    {
+        private final IntNode operand;
+
+        NotNode(IntNode operand)
+        {
+            this.operand = operand;
+        }
+
+        int eval(Frame f)
+        {
+            return operand.eval(f) == 0 ? 1 : 0;
+        }
+    }
+
+    static final class TestD extends IntNode
+    {
+        private final RealNode operand;
+
+        TestD(RealNode operand)
+        {
+            this.operand = operand;
+        }
+
+        int eval(Frame f)
+        {
+            return operand.eval(f) != 0 ? 1 : 0;
+        }
+    }
+
+    static final class D2I extends IntNode
+    {
+        private final RealNode operand;
+
+        D2I(RealNode operand)
+        {
+            this.operand = operand;
+        }
+
+        int eval(Frame f)
+        {
+            return (int)operand.eval(f);
+        }
+    }
+
+    static final class I2C extends IntNode
+    {
+        private final IntNode operand;
+
+        I2C(IntNode operand)
+        {
+            this.operand = operand;
+        }
+
+        int eval(Frame f)
+        {
+            return (byte)operand.eval(f);
+        }
+    }
+
+    static final class CallI extends IntNode
+    {
+        private final Machine machine;
+        private final ClosureFunction fn;
+        private final ArgNode[] args;
+
+        CallI(Machine machine, ClosureFunction fn, ArgNode[] args)
+        {
+            this.machine = machine;
+            this.fn = fn;
+            this.args = args;
+        }
+
+        int eval(Frame f)
+        {
+            return machine.invoke(fn, args, f).retI;
+        }
+    }
+
+    static final class ReadI extends IntNode
+    {
+        private final Machine machine;
+        private final boolean character;
+
+        ReadI(Machine machine, boolean character)
+        {
+            this.machine = machine;
+            this.character = character;
+        }
+
+        int eval(Frame f)
+        {
+            return character ? machine.io.getC() : machine.io.getI();
+        }
+    }
+
+    static final class RealConst extends RealNode
+    {
+        final double value;
+
+        RealConst(double value)
+        {
+            this.value = value;
+        }
+
+        double eval(Frame f)
+        {
+            return value;
+        }
+    }
+
+    static final class RealLocal extends RealNode
+    {
+        private final int slot;
+
+        RealLocal(int slot)
+        {
+            this.slot = slot;
+        }
+
+        double eval(Frame f)
+        {
+            return f.reals[slot];
+        }
+    }
+
+    static final class RealSetLocal extends RealNode
+    {
+        private final int slot;
+        private final RealNode value;
+
+        RealSetLocal(int slot, RealNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        double eval(Frame f)
+        {
+            return f.reals[slot] = value.eval(f);
+        }
+    }
+
+    static final class RealLoad extends RealNode
+    {
+        private final long[] memory;
+        private final IntNode address;
+
+        RealLoad(long[] memory, IntNode address)
+        {
+            this.memory = memory;
+            this.address = address;
+        }
+
+        double eval(Frame f)
+        {
+            return Double.longBitsToDouble(memory[address.eval(f)]);
+        }
+    }
+
+    static final class RealStore extends RealNode
+    {
+        private final long[] memory;
+        private final IntNode address;
+        private final RealNode value;
+
+        RealStore(long[] memory, IntNode address, RealNode value)
+        {
+            this.memory = memory;
+            this.address = address;
+            this.value = value;
+        }
+
+        double eval(Frame f)
+        {
+            int a = address.eval(f);
+            double v = value.eval(f);
+            memory[a] = Double.doubleToRawLongBits(v);
+            return v;
+        }
+    }
+
+    static final class AddD extends RealNode
+    {
+        private final RealNode left;
+        private final RealNode right;
+
+        AddD(RealNode left, RealNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        double eval(Frame f)
+        {
+            return left.eval(f) + right.eval(f);
+        }
+    }
+
+    static final class SubD extends RealNode
+    {
+        private final RealNode left;
+        private final RealNode right;
+
+        SubD(RealNode left, RealNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        double eval(Frame f)
+        {
+            return left.eval(f) - right.eval(f);
+        }
+    }
+
+    static final class MulD extends RealNode
+    {
+        private final RealNode left;
+        private final RealNode right;
+
+        MulD(RealNode left, RealNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        double eval(Frame f)
+        {
+            return left.eval(f) * right.eval(f);
+        }
+    }
+
+    static final class DivD extends RealNode
+    {
+        private final RealNode left;
+        private final RealNode right;
+
+        DivD(RealNode left, RealNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        double eval(Frame f)
+        {
+            return left.eval(f) / right.eval(f);
+        }
+    }
+
+    static final class NegD extends RealNode
+    {
+        private final RealNode operand;
+
+        NegD(RealNode operand)
+        {
+            this.operand = operand;
+        }
+
+        double eval(Frame f)
+        {
+            return -operand.eval(f);
+        }
+    }
+
+    static final class I2D extends RealNode
+    {
+        private final IntNode operand;
+
+        I2D(IntNode operand)
+        {
+            this.operand = operand;
+        }
+
+        double eval(Frame f)
+        {
+            return operand.eval(f);
+        }
+    }
+
+    static final class CallD extends RealNode
+    {
+        private final Machine machine;
+        private final ClosureFunction fn;
+        private final ArgNode[] args;
+
+        CallD(Machine machine, ClosureFunction fn, ArgNode[] args)
+        {
+            this.machine = machine;
+            this.fn = fn;
+            this.args = args;
+        }
+
+        double eval(Frame f)
+        {
+            return machine.invoke(fn, args, f).retD;
+        }
+    }
+
+    static final class ReadD extends RealNode
+    {
+        private final Machine machine;
+        private final boolean clock;
+
+        ReadD(Machine machine, boolean clock)
+        {
+            this.machine = machine;
+            this.clock = clock;
+        }
+
+        double eval(Frame f)
+        {
+            return clock ? BuiltinIo.seconds() : machine.io.getD();
+        }
+    }
+
+    static final class BlockNode extends StmNode
+    {
+        private final StmNode[] body;
+
+        BlockNode(StmNode[] body)
+        {
+            this.body = body;
+        }
+
+        int exec(Frame f)
+        {
+            for(StmNode stm : body)
+            {
+                int status = stm.exec(f);
+                if(status != NORMAL) return status;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class IfNode extends StmNode
+    {
+        private final IntNode cond;
+        private final StmNode then;
+        private final StmNode otherwise;
+
+        IfNode(IntNode cond, StmNode then, StmNode otherwise)
+        {
+            this.cond = cond;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        int exec(Frame f)
+        {
+            if(cond.eval(f) != 0) return then.exec(f);
+            return otherwise != null ? otherwise.exec(f) : NORMAL;
+        }
+    }
+
+    static final class LoopNode extends StmNode
+    {
+        private final IntNode cond;
+        private final StmNode body;
+        private final StmNode step;
+
+        LoopNode(IntNode cond, StmNode body, StmNode step)
+        {
+            this.cond = cond;
+            this.body = body;
+            this.step = step;
+        }
+
+        int exec(Frame f)
+        {
+            while(cond == null || cond.eval(f) != 0)
+            {
+                int status = body.exec(f);
+                if(status == BREAK) break;
+                if(status == RETURN) return RETURN;
+                if(step != null) step.exec(f);
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class BreakNode extends StmNode
+    {
+        int exec(Frame f)
+        {
+            return BREAK;
+        }
+    }
+
+    static final class ReturnI extends StmNode
+    {
+        private final IntNode value;
+
+        ReturnI(IntNode value)
+        {
+            this.value = value;
+        }
+
+        int exec(Frame f)
+        {
+            if(value != null) f.retI = value.eval(f);
+            return RETURN;
+        }
+    }
+
+    static final class ReturnD extends StmNode
+    {
+        private final RealNode value;
+
+        ReturnD(RealNode value)
+        {
+            this.value = value;
+        }
+
+        int exec(Frame f)
+        {
+            f.retD = value.eval(f);
+            return RETURN;
+        }
+    }
+
+    static final class IntStm extends StmNode
+    {
+        private final IntNode expr;
+
+        IntStm(IntNode expr)
+        {
+            this.expr = expr;
+        }
+
+        int exec(Frame f)
+        {
+            expr.eval(f);
+            return NORMAL;
+        }
+    }
+
+    static final class RealStm extends StmNode
+    {
+        private final RealNode expr;
+
+        RealStm(RealNode expr)
+        {
+            this.expr = expr;
+        }
+
+        int exec(Frame f)
+        {
+            expr.eval(f);
+            return NORMAL;
+        }
+    }
+
+    static final class CallStm extends StmNode
+    {
+        private final Machine machine;
+        private final ClosureFunction fn;
+        private final ArgNode[] args;
+
+        CallStm(Machine machine, ClosureFunction fn, ArgNode[] args)
+        {
+            this.machine = machine;
+            this.fn = fn;
+            this.args = args;
+        }
+
+        int exec(Frame f)
+        {
+            machine.invoke(fn, args, f);
+            return NORMAL;
+        }
+    }
+
+    static final class PrintStm extends StmNode
+    {
+        private final Machine machine;
+        private final Builtin builtin;
+        private final IntNode value;
+        private final IntNode count;        // the element count of put_s and get_s arrays
+        private final RealNode real;
+
+        PrintStm(Machine machine, Builtin builtin, IntNode value, IntNode count, RealNode real)
+        {
+            this.machine = machine;
+            this.builtin = builtin;
+            this.value = value;
+            this.count = count;
+            this.real = real;
+        }
+
+        int exec(Frame f)
+        {
+            BuiltinIo io = machine.io;
+            switch(builtin)
+            {
+                case PUT_S:
+                    io.putS(machine.memory, value.eval(f), count.eval(f));
+                    break;
+                case GET_S:
+                    io.getS(machine.memory, value.eval(f), count.eval(f));
+                    break;
+                case PUT_I:
+                    io.out.print(value.eval(f));
+                    break;
+                case PUT_C:
+                    io.putC(value.eval(f));
+                    break;
+                default:
+                    io.out.print(real.eval(f));
+                    break;
+            }
+            return NORMAL;
+        }
+    }
+}
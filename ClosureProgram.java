@@ -0,0 +1,48 @@
+import java.io.*;
+
+final class ClosureProgram
+{
+    private final ClosureGen.Machine machine;
+    private final long[] data;
+    private final ClosureGen.ClosureFunction main;
+
+    ClosureProgram(ClosureGen.Machine machine, long[] data, ClosureGen.ClosureFunction main)
+    {
+        this.machine = machine;
+        this.data = data;
+        this.main = main;
+    }
+
+    public ClosureProgram input(BufferedReader in)
+    {
+        machine.io.in = in;
+        return this;
+    }
+
+    public ClosureProgram output(PrintStream out)
+    {
+        machine.io.out = out;
+        return this;
+    }
+
+    public long run()
+    {
+        if(main == null) throw new IllegalStateException("the program has no main function");
+        java.util.Arrays.fill(machine.memory, 0, data.length, 0);
+        System.arraycopy(data, 0, machine.memory, 0, data.length);
+        machine.top = data.length;
+        machine.depth = 0;
+        try
+        {
+            return DeepStack.run("atomc-closures", () ->
+            {
+                ClosureGen.Frame frame = machine.invoke(main, new ClosureGen.ArgNode[0], null);
+                return main.returnType == Types.DOUBLE ? Double.doubleToRawLongBits(frame.retD) : frame.retI;
+            });
+        }
+        finally
+        {
+            machine.io.out.flush();
+        }
+    }
+}
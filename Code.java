@@ -0,0 +1,157 @@
+import java.util.*;
+
+final class Code
+{
+    private static final int NONE = -1;
+
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+    private int depth = 0;
+    private int[] labels = new int[16];
+    private int labelCount = 0;
+    private int[] fixups = new int[16];
+    private int[] fixupLabels = new int[16];
+    private int fixupCount = 0;
+    int maxStack = 0;
+    int maxLocals = 0;
+
+    void op(int op)
+    {
+        u1(op);
+        stack(Jvm.delta(op));
+    }
+
+    void stack(int delta)
+    {
+        depth += delta;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    void iconst(int value)
+    {
+        if(value >= -1 && value <= 5)
+        {
+            u1(Jvm.ICONST_0 + value);
+        }
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            u1(Jvm.BIPUSH);
+            u1(value);
+        }
+        else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+        {
+            u1(Jvm.SIPUSH);
+            u2(value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("the constant " + value + " needs ldc");
+        }
+        stack(1);
+    }
+
+    void ldc(int index)
+    {
+        if(index < 256)
+        {
+            u1(Jvm.LDC);
+            u1(index);
+        }
+        else
+        {
+            u1(Jvm.LDC_W);
+            u2(index);
+        }
+        stack(1);
+    }
+
+    void ldc2(int index)
+    {
+        u1(Jvm.LDC2_W);
+        u2(index);
+        stack(2);
+    }
+
+    void local(int op, int slot)
+    {
+        if(slot > 255)
+        {
+            u1(Jvm.WIDE);
+            u1(op);
+            u2(slot);
+        }
+        else
+        {
+            u1(op);
+            u1(slot);
+        }
+        int words = op == Jvm.DLOAD || op == Jvm.DSTORE ? 2 : 1;
+        stack(op == Jvm.ILOAD || op == Jvm.DLOAD || op == Jvm.ALOAD ? words : -words);
+        maxLocals = Math.max(maxLocals, slot + words);
+    }
+
+    void member(int op, int index, int delta)
+    {
+        u1(op);
+        u2(index);
+        stack(delta);
+    }
+
+    void newarray(int type)
+    {
+        u1(Jvm.NEWARRAY);
+        u1(type);
+    }
+
+    int label()
+    {
+        if(labelCount == labels.length) labels = Arrays.copyOf(labels, labelCount * 2);
+        labels[labelCount] = NONE;
+        return labelCount++;
+    }
+
+    void mark(int label)
+    {
+        labels[label] = length;
+    }
+
+    void jump(int op, int label)
+    {
+        if(fixupCount == fixups.length)
+        {
+            fixups = Arrays.copyOf(fixups, fixupCount * 2);
+            fixupLabels = Arrays.copyOf(fixupLabels, fixupCount * 2);
+        }
+        fixups[fixupCount] = length;
+        fixupLabels[fixupCount++] = label;
+        u1(op);
+        u2(0);
+        if(op >= Jvm.IFEQ && op <= Jvm.IFLE) stack(-1);
+        else if(op >= Jvm.IF_ICMPEQ && op <= Jvm.IF_ICMPLE) stack(-2);
+    }
+
+    byte[] finish()
+    {
+        if(length > 65535) throw new IllegalStateException("the method is too large for the JVM");
+        for(int i = 0; i < fixupCount; i++)
+        {
+            int offset = labels[fixupLabels[i]] - fixups[i];
+            if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) throw new IllegalStateException("a jump is too far for the JVM");
+            bytes[fixups[i] + 1] = (byte)(offset >> 8);
+            bytes[fixups[i] + 2] = (byte)offset;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private void u1(int value)
+    {
+        if(length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+        bytes[length++] = (byte)value;
+    }
+
+    private void u2(int value)
+    {
+        u1(value >> 8);
+        u1(value);
+    }
+}
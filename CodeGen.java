@@ -0,0 +1,514 @@
+import java.util.*;
+
+class CodeGen
+{
+    private static final int NONE = Ast.NONE;
+
+    private static final byte GLOBAL = 0;
+    private static final byte LOCAL = 1;
+    private static final byte REF = 2;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Domain domain;
+    private final TypeCheck types;
+    private Layout layout;
+
+    private int[] code = new int[256];
+    private int pc = 0;
+    private final DataSegment segment = new DataSegment();
+
+    private final byte[] places;
+    private final int[] addresses;
+    private final int[] functions;
+
+    private String[] names = new String[16];
+    private int[] entries = new int[16];
+    private int[] params = new int[16];
+    private int[] frames = new int[16];
+    private int functionCount = 0;
+    private int main = -1;
+
+    private int frame;
+    private int frameMax;
+    private int returnType;
+    private int returnBuffer;
+    private int[] breaks = new int[16];
+    private int breakCount = 0;
+
+    public CodeGen(TokenStore tokens, Ast ast, Domain domain, TypeCheck types)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.domain = domain;
+        this.types = types;
+        this.places = new byte[domain.size()];
+        this.addresses = new int[domain.size()];
+        this.functions = new int[domain.size()];
+    }
+
+    public Program generate(int root)
+    {
+        layout = new Layout(ast, domain, types, root);
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            switch(ast.kind(n))
+            {
+                case STRUCT: break;
+                case FUNC: func(n); break;
+                default: global(n); break;
+            }
+        }
+        return new Program(Arrays.copyOf(code, pc), segment.reals.toArray(), segment.image(),
+            Arrays.copyOf(names, functionCount), Arrays.copyOf(entries, functionCount), Arrays.copyOf(params, functionCount),
+            Arrays.copyOf(frames, functionCount), main);
+    }
+
+    private void global(int n)
+    {
+        int sym = domain.symbol(n);
+        places[sym] = GLOBAL;
+        addresses[sym] = segment.allocate(layout.slots(ast.a(n)));
+    }
+
+    private void local(int n)
+    {
+        int sym = domain.symbol(n);
+        places[sym] = LOCAL;
+        addresses[sym] = frame;
+        frame += layout.slots(ast.a(n));
+        frameMax = Math.max(frameMax, frame);
+    }
+
+    private void func(int n)
+    {
+        int sym = domain.symbol(n);
+        if(functionCount == entries.length)
+        {
+            int capacity = functionCount * 2;
+            names = Arrays.copyOf(names, capacity);
+            entries = Arrays.copyOf(entries, capacity);
+            params = Arrays.copyOf(params, capacity);
+            frames = Arrays.copyOf(frames, capacity);
+        }
+        int fn = functionCount++;
+        functions[sym] = fn;
+        names[fn] = tokens.text(ast.token(n));
+        entries[fn] = pc;
+        if(names[fn].equals("main")) main = fn;
+
+        returnType = types.symbolType(sym);
+        returnBuffer = Types.isStruct(returnType) ? segment.allocate(layout.size(returnType)) : 0;
+
+        frame = 0;
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            places[p] = Types.isArray(types.symbolType(p)) ? REF : LOCAL;
+            addresses[p] = frame++;
+            if(places[p] == REF) frame++;       // the element count follows the address
+        }
+        params[fn] = frame;
+        frameMax = frame;
+
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            int type = types.symbolType(p);
+            if(!Types.isStruct(type) || Types.isArray(type)) continue;
+            int slot = addresses[p];
+            local(param);
+            emit(Op.ADDR_L, addresses[p]);
+            emit(Op.LOAD_L, slot);
+            emit(Op.COPY, layout.size(type));
+            emit(Op.POP);
+        }
+
+        block(ast.a(ast.c(n)));
+        if(returnType == Types.VOID)
+        {
+            emit(Op.RET_V);
+        }
+        else
+        {
+            if(Types.isStruct(returnType)) emit(Op.PUSH_I, returnBuffer);
+            else if(returnType == Types.DOUBLE) emit(Op.PUSH_D, segment.real(0));
+            else emit(Op.PUSH_I, 0);
+            emit(Op.RET);
+        }
+        frames[fn] = frameMax;
+    }
+
+    private void block(int first)
+    {
+        int saved = frame;
+        for(int n = first; n != NONE; n = ast.next(n)) stm(n);
+        frame = saved;
+    }
+
+    private void stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                block(ast.a(n));
+                break;
+            case VAR:
+                local(n);
+                break;
+            case IF:
+            {
+                condition(ast.a(n));
+                int skip = jump(Op.JF);
+                stm(ast.b(n));
+                if(ast.c(n) != NONE)
+                {
+                    int end = jump(Op.JMP);
+                    patch(skip, pc);
+                    stm(ast.c(n));
+                    patch(end, pc);
+                }
+                else
+                {
+                    patch(skip, pc);
+                }
+                break;
+            }
+            case WHILE:
+                loop(ast.a(n), ast.b(n), NONE);
+                break;
+            case FOR:
+            {
+                int head = ast.a(n);
+                if(ast.a(head) != NONE) effect(ast.a(head));
+                loop(ast.b(head), ast.b(n), ast.c(head));
+                break;
+            }
+            case BREAK:
+                if(breakCount == breaks.length) breaks = Arrays.copyOf(breaks, breakCount * 2);
+                breaks[breakCount++] = jump(Op.JMP);
+                break;
+            case RETURN:
+                ret(ast.a(n));
+                break;
+            case EXPR:
+                effect(ast.a(n));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void loop(int cond, int body, int step)
+    {
+        int base = breakCount;
+        int test = cond != NONE ? jump(Op.JMP) : NONE;
+        int top = pc;
+        stm(body);
+        if(step != NONE) effect(step);
+        if(cond != NONE)
+        {
+            patch(test, pc);
+            condition(cond);
+            emit(Op.JT, top);
+        }
+        else
+        {
+            emit(Op.JMP, top);
+        }
+        while(breakCount > base) patch(breaks[--breakCount], pc);
+    }
+
+    private void ret(int value)
+    {
+        if(value == NONE)
+        {
+            emit(Op.RET_V);
+            return;
+        }
+        if(Types.isStruct(returnType))
+        {
+            emit(Op.PUSH_I, returnBuffer);
+            value(value);
+            emit(Op.COPY, layout.size(returnType));
+        }
+        else
+        {
+            value(value);
+            convert(types.type(value), returnType);
+        }
+        emit(Op.RET);
+    }
+
+    private void effect(int n)
+    {
+        if(ast.kind(n) == NodeKind.ASSIGN)
+        {
+            assign(n, false);
+            return;
+        }
+        value(n);
+        if(types.type(n) != Types.VOID) emit(Op.POP);
+    }
+
+    private void condition(int n)
+    {
+        value(n);
+        if(types.type(n) == Types.DOUBLE) emit(Op.TEST_D);
+    }
+
+    private void convert(int from, int to)
+    {
+        if(from == to || !Types.isScalar(from) || !Types.isScalar(to)) return;
+        if(to == Types.DOUBLE)
+        {
+            emit(Op.I2D);
+            return;
+        }
+        if(from == Types.DOUBLE) emit(Op.D2I);
+        if(to == Types.CHAR) emit(Op.I2C);
+    }
+
+    private boolean scalarVar(int n)
+    {
+        if(ast.kind(n) != NodeKind.ID) return false;
+        int sym = domain.symbol(n);
+        return places[sym] != REF && Types.isScalar(types.symbolType(sym));
+    }
+
+    private void address(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                switch(places[sym])
+                {
+                    case GLOBAL: emit(Op.PUSH_I, addresses[sym]); break;
+                    case LOCAL: emit(Op.ADDR_L, addresses[sym]); break;
+                    default: emit(Op.LOAD_L, addresses[sym]); break;
+                }
+                break;
+            }
+            case FIELD:
+            {
+                value(ast.a(n));
+                int offset = layout.offset(types.type(ast.a(n)), tokens.symbol(ast.token(n)));
+                if(offset != 0) emit(Op.OFFSET, offset);
+                break;
+            }
+            case INDEX:
+                value(ast.a(n));
+                value(ast.b(n));
+                convert(types.type(ast.b(n)), Types.INT);
+                emit(Op.INDEX, layout.elementSize(types.type(ast.a(n))));
+                break;
+            default:
+                value(n);
+                break;
+        }
+    }
+
+    private void value(int n)
+    {
+        int type = types.type(n);
+        switch(ast.kind(n))
+        {
+            case CONST:
+                if(type == Types.DOUBLE) emit(Op.PUSH_D, segment.real(ast.real(n)));
+                else emit(Op.PUSH_I, ast.a(n));
+                break;
+            case LITERAL:
+                emit(Op.PUSH_I, segment.string(tokens, ast.token(n)));
+                break;
+            case ID:
+                if(scalarVar(n))
+                {
+                    int sym = domain.symbol(n);
+                    emit(places[sym] == GLOBAL ? Op.LOAD_G : Op.LOAD_L, addresses[sym]);
+                }
+                else
+                {
+                    address(n);
+                }
+                break;
+            case FIELD:
+            case INDEX:
+                address(n);
+                if(Types.isScalar(type)) emit(Op.LOAD);
+                break;
+            case CALL:
+                call(n);
+                break;
+            case CAST:
+                value(ast.b(n));
+                convert(types.type(ast.b(n)), type);
+                break;
+            case UNARY:
+                if(tokens.type(ast.token(n)) == TokenType.NOT)
+                {
+                    condition(ast.a(n));
+                    emit(Op.NOT);
+                }
+                else
+                {
+                    value(ast.a(n));
+                    emit(type == Types.DOUBLE ? Op.NEG_D : Op.NEG_I);
+                    if(type == Types.CHAR) emit(Op.I2C);
+                }
+                break;
+            case BINARY:
+                binary(n, type);
+                break;
+            case ASSIGN:
+                assign(n, true);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void binary(int n, int type)
+    {
+        TokenType op = tokens.type(ast.token(n));
+        int left = ast.a(n);
+        int right = ast.b(n);
+        if(op == TokenType.AND || op == TokenType.OR)
+        {
+            boolean and = op == TokenType.AND;
+            condition(left);
+            int shortLeft = jump(and ? Op.JF : Op.JT);
+            condition(right);
+            int shortRight = jump(and ? Op.JF : Op.JT);
+            emit(Op.PUSH_I, and ? 1 : 0);
+            int end = jump(Op.JMP);
+            patch(shortLeft, pc);
+            patch(shortRight, pc);
+            emit(Op.PUSH_I, and ? 0 : 1);
+            patch(end, pc);
+            return;
+        }
+
+        int operand = Types.isScalar(types.type(left)) && Types.isScalar(types.type(right)) ? Types.arith(types.type(left), types.type(right)) : Types.INT;
+        value(left);
+        convert(types.type(left), operand);
+        value(right);
+        convert(types.type(right), operand);
+        boolean real = operand == Types.DOUBLE;
+        switch(op)
+        {
+            case ADD: emit(real ? Op.ADD_D : Op.ADD_I); break;
+            case SUB: emit(real ? Op.SUB_D : Op.SUB_I); break;
+            case MUL: emit(real ? Op.MUL_D : Op.MUL_I); break;
+            case DIV: emit(real ? Op.DIV_D : Op.DIV_I); break;
+            case EQUAL: emit(real ? Op.EQ_D : Op.EQ_I); break;
+            case NOTEQ: emit(real ? Op.NE_D : Op.NE_I); break;
+            case LESS: emit(real ? Op.LT_D : Op.LT_I); break;
+            case LESSEQ: emit(real ? Op.LE_D : Op.LE_I); break;
+            case GREATER: emit(real ? Op.GT_D : Op.GT_I); break;
+            case GREATEREQ: emit(real ? Op.GE_D : Op.GE_I); break;
+            default: break;
+        }
+        if(type == Types.CHAR) emit(Op.I2C);
+    }
+
+    private void assign(int n, boolean keep)
+    {
+        int dst = ast.a(n);
+        int src = ast.b(n);
+        int type = types.type(dst);
+        if(Types.isStruct(type))
+        {
+            address(dst);
+            value(src);
+            emit(Op.COPY, layout.size(type));
+            if(!keep) emit(Op.POP);
+            return;
+        }
+        if(scalarVar(dst))
+        {
+            int sym = domain.symbol(dst);
+            value(src);
+            convert(types.type(src), type);
+            if(keep) emit(Op.DUP);
+            emit(places[sym] == GLOBAL ? Op.STORE_G : Op.STORE_L, addresses[sym]);
+            return;
+        }
+        address(dst);
+        value(src);
+        convert(types.type(src), type);
+        emit(keep ? Op.TEE : Op.STORE);
+    }
+
+    private void call(int n)
+    {
+        int sym = domain.symbol(n);
+        int arg = ast.a(n);
+        if(domain.kind(sym) == SymbolKind.BUILTIN)
+        {
+            int[] formal = domain.builtin(sym).params;
+            for(int i = 0; arg != NONE; arg = ast.next(arg), i++)
+            {
+                value(arg);
+                convert(types.type(arg), formal[i]);
+                if(Types.isArray(formal[i])) length(arg);
+            }
+            emit(Op.BUILTIN, domain.builtin(sym).ordinal());
+            return;
+        }
+
+        for(int param = ast.b(domain.node(sym)); arg != NONE; arg = ast.next(arg), param = ast.next(param))
+        {
+            int type = types.symbolType(domain.symbol(param));
+            value(arg);
+            convert(types.type(arg), type);
+            if(Types.isArray(type)) length(arg);
+        }
+        emit(Op.CALL, functions[sym]);
+    }
+
+    // pushes the element count an array argument carries after its address
+    private void length(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case LITERAL:
+                emit(Op.PUSH_I, DataSegment.length(tokens, ast.token(n)));
+                break;
+            case CAST:
+                length(ast.b(n));
+                break;
+            default:
+            {
+                int sym = domain.symbol(n);
+                if(ast.kind(n) == NodeKind.ID && places[sym] == REF) emit(Op.LOAD_L, addresses[sym] + 1);
+                else emit(Op.PUSH_I, layout.length(n));
+                break;
+            }
+        }
+    }
+
+    private void emit(int op)
+    {
+        if(pc + 2 > code.length) code = Arrays.copyOf(code, code.length * 2);
+        code[pc++] = op;
+    }
+
+    private void emit(int op, int operand)
+    {
+        emit(op);
+        code[pc++] = operand;
+    }
+
+    private int jump(int op)
+    {
+        emit(op, -1);
+        return pc - 1;
+    }
+
+    private void patch(int at, int target)
+    {
+        code[at] = target;
+    }
+}
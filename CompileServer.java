@@ -0,0 +1,236 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+class CompileServer
+{
+    static final byte PATH = 0;
+    static final byte SOURCE = 1;
+    static final byte STOP = 2;
+    // a length beyond this is taken as a broken request rather than allocated
+    static final int MAX_STRING = 1 << 26;
+
+    static class Response
+    {
+        int status;
+        String out;
+        String err;
+    }
+
+    private static final ThreadLocal<Ast> ARENAS = ThreadLocal.withInitial(Ast::new);
+
+    private final Path socket;
+    private final ExecutorService pool;
+    private boolean tables = false;
+    private boolean recover = false;
+    private ServerSocketChannel server;
+
+    public CompileServer(Path socket, ExecutorService pool)
+    {
+        this.socket = socket;
+        this.pool = pool;
+    }
+
+    public CompileServer useTables(boolean tables)
+    {
+        this.tables = tables;
+        return this;
+    }
+
+    public CompileServer recover(boolean recover)
+    {
+        this.recover = recover;
+        return this;
+    }
+
+    // accepts connections until a STOP request arrives; each connection is served on the pool and may send many requests
+    public void serve() throws IOException
+    {
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try
+        {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            while(true)
+            {
+                SocketChannel channel;
+                try
+                {
+                    channel = server.accept();
+                }
+                catch(ClosedChannelException e)
+                {
+                    break;
+                }
+                pool.execute(() -> handle(channel));
+            }
+        }
+        finally
+        {
+            server.close();
+            pool.shutdown();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void handle(SocketChannel channel)
+    {
+        try(channel;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))))
+        {
+            while(true)
+            {
+                byte kind;
+                try
+                {
+                    kind = in.readByte();
+                }
+                catch(EOFException e)
+                {
+                    return;
+                }
+                int length = in.readInt();
+                if(length < 0 || length > MAX_STRING)
+                {
+                    // what follows can no longer be framed, so the connection ends with the error
+                    write(out, failure("bad request length " + length));
+                    out.flush();
+                    return;
+                }
+                String payload = readString(in, length);
+                if(kind == STOP)
+                {
+                    server.close();
+                    return;
+                }
+                write(out, kind == PATH || kind == SOURCE ? compile(kind, payload) : failure("unknown request kind " + kind));
+                out.flush();
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("Error serving request: " + e.getMessage());
+        }
+    }
+
+    private static Response failure(String message)
+    {
+        Response response = new Response();
+        response.status = 2;
+        response.out = "";
+        response.err = message + "\n";
+        return response;
+    }
+
+    Response compile(byte kind, String payload)
+    {
+        Response response = new Response();
+        StringWriter outText = new StringWriter();
+        StringWriter errText = new StringWriter();
+        PrintWriter out = new PrintWriter(outText);
+        PrintWriter err = new PrintWriter(errText);
+        try
+        {
+            Diagnostics diagnostics = recover ? new Diagnostics() : null;
+            Lex lex = new Lex(kind == PATH ? MappedSource.map(Paths.get(payload)) : new StringSource(payload));
+            // warnings belong to the client, not the server's stderr
+            TokenStore tokens = lex.useTables(tables).recover(diagnostics).warnings((message, at) -> err.println(message)).tokenizeCompact();
+
+            for(int i = 0; i < tokens.size(); i++)
+            {
+                out.println(tokens.token(i));
+            }
+
+            Ast ast = ARENAS.get();
+            Syntactic parser = new Syntactic(tokens, ast).recover(diagnostics);
+            // lexical errors are already in diagnostics, so a clean parse alone does not make a clean compile
+            if(parser.parse() && (diagnostics == null || diagnostics.size() == 0))
+            {
+                out.println("Parsed successfully");
+                Diagnostics semantic = new Diagnostics();
+                Domain domain = new Domain(tokens, ast, semantic);
+                if(!domain.analyze(parser.root()) || !new TypeCheck(tokens, ast, domain, semantic).check(parser.root()))
+                {
+                    for(int i = 0; i < semantic.size(); i++) err.println(semantic.format(i));
+                    response.status = 1;
+                }
+            }
+            else
+            {
+                if(diagnostics != null && diagnostics.size() > 0)
+                {
+                    for(int i = 0; i < diagnostics.size(); i++) err.println(diagnostics.format(i));
+                }
+                else err.println(parser.error());
+                response.status = 1;
+            }
+        }
+        catch(IOException e)
+        {
+            err.println("Error reading file: " + e.getMessage());
+            response.status = 2;
+        }
+        catch(RuntimeException e)
+        {
+            err.println(e.getMessage());
+            response.status = 1;
+        }
+        out.flush();
+        err.flush();
+        response.out = outText.toString();
+        response.err = errText.toString();
+        return response;
+    }
+
+    // the thin client: one request over a fresh connection
+    public static Response request(Path socket, byte kind, String payload) throws IOException
+    {
+        try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))))
+        {
+            out.writeByte(kind);
+            writeString(out, payload);
+            out.flush();
+            if(kind == STOP) return null;
+
+            Response response = new Response();
+            response.status = in.readInt();
+            response.out = readString(in);
+            response.err = readString(in);
+            return response;
+        }
+    }
+
+    private static void write(DataOutputStream out, Response response) throws IOException
+    {
+        out.writeInt(response.status);
+        writeString(out, response.out);
+        writeString(out, response.err);
+    }
+
+    // strings travel as a byte count and UTF-8 bytes, since writeUTF stops at 64 KB
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        return readString(in, in.readInt());
+    }
+
+    private static String readString(DataInputStream in, int length) throws IOException
+    {
+        if(length < 0 || length > MAX_STRING) throw new IOException("bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,812 +1,356 @@
-
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ObjIntConsumer;
 
-enum TokenType
-{
-    ID, BREAK, CHAR, DOUBLE, ELSE, FOR, IF, INT, RETURN, STRUCT, VOID, WHILE,
-    CT_INT, CT_REAL, CT_STRING, CT_CHAR,
-    COMMA, SEMICOLON, LPAR, RPAR, LBRACKET, RBRACKET, LACC, RACC,
-    ADD, SUB, MUL, DIV, DOT, AND, OR, NOT, ASSIGN, EQUAL, NOTEQ,
-    LESS, LESSEQ, GREATER, GREATEREQ,
-    SPACE, LINECOMMENT, COMMENT,
-    END 
-}
-
-class Token
-{
-    TokenType type;
-    String text;
-    int line;
-    Token next;
-
-    public Token(TokenType type, String text, int line)
-    {
-        this.type = type;
-        this.text = text;
-        this.line = line;
-    }
-
-    public String toString()
-    {
-        return String.format("Token(%s, \"%s\", Line: %d)", type, text, line);
-    }
-}
-
-class Lex
+public class Compiler
 {
-    private final String input;
-    private int pos = 0;
-    private int line = 1;
-    private final List<Token> tokens = new ArrayList<>();
-
-    public Lex(String input)
-    {
-        this.input = input+"\0";
-    }
-
-    private char peek()
-    {
-        return input.charAt(pos);
-    }
-
-    private char advance()
-    {
-        return input.charAt(pos++);
-    }
-
-    private boolean match(char expected)
+    private static void store(TokenCache cache, String key, TokenStore tokens, List<String> warnings, Ast ast, int root)
     {
-        if(peek()==expected)
+        if(cache == null) return;
+        try
         {
-            advance();
-            return true;
+            cache.store(key, tokens, warnings, ast, root);
         }
-        return false;
-    }
-
-    private void consumeWhitespace()
-    {
-        while(Character.isWhitespace(peek()))
+        catch(IOException e)
         {
-            if(peek() =='\n') line++;
-            advance();
+            System.err.println("Error writing cache: " + e.getMessage());
         }
     }
 
-    private void tokenizeIdentifierOrKeyword()
+    private static void dump(TokenStore tokens, Metrics metrics)
     {
-        int start=pos;
-
-        while(Character.isLetterOrDigit(peek()) || peek()=='_') advance();
+        metrics.end();
+        metrics.tokens(tokens);
 
-        String text = input.substring(start,pos);
-        TokenType type;
-        switch(text)
+        metrics.phase("dump");
+        for(int i = 0; i < tokens.size(); i++)
         {
-            case "break": 
-                type = TokenType.BREAK; 
-                break;
-            case "char": 
-                type = TokenType.CHAR; 
-                break;
-            case "double": 
-                type = TokenType.DOUBLE; 
-                break;
-            case "else": 
-                type = TokenType.ELSE; 
-                break;
-            case "for": 
-                type = TokenType.FOR; 
-                break;
-            case "if": 
-                type = TokenType.IF; 
-                break;
-            case "int": 
-                type = TokenType.INT; 
-                break;
-            case "return": 
-                type = TokenType.RETURN; 
-                break;
-            case "struct": 
-                type = TokenType.STRUCT; 
-                break;
-            case "void": 
-                type = TokenType.VOID; 
-                break;
-            case "while": 
-                type = TokenType.WHILE; 
-                break;
-            default: 
-                type = TokenType.ID; 
-                break;
-        };
-        tokens.add(new Token(type, text, line));
+            System.out.println(tokens.token(i));
+        }
     }
 
-    private void tokenizeNumber()
+    public static void main(String[] args) 
     {
-        int start =pos;
-        boolean isReal =false;
-
-        if(match('0'))
-        {
-            if(match('x') || match('X'))
+        TokenStore tokens;
+        boolean tables = Arrays.asList(args).contains("--dfa");
+        boolean parallel = Arrays.asList(args).contains("--parallel");
+        boolean pipelined = Arrays.asList(args).contains("--pipeline");
+        boolean memoize = Arrays.asList(args).contains("--memo");
+        boolean predictive = Arrays.asList(args).contains("--predictive");
+        boolean precedence = Arrays.asList(args).contains("--pratt");
+        boolean dumpAst = Arrays.asList(args).contains("--ast");
+        boolean recover = Arrays.asList(args).contains("--recover");
+        boolean run = Arrays.asList(args).contains("--run");
+        boolean dumpCode = Arrays.asList(args).contains("--bytecode");
+        boolean dumpIr = Arrays.asList(args).contains("--ir");
+        boolean runIr = Arrays.asList(args).contains("--run-ir");
+        boolean runClosures = Arrays.asList(args).contains("--run-closures");
+        boolean runJvm = Arrays.asList(args).contains("--run-jvm");
+        boolean writeClass = Arrays.asList(args).contains("--class");
+        EnumSet<IrPass> passes = EnumSet.allOf(IrPass.class);
+        for(String arg : args)
+        {
+            if(arg.startsWith("--passes=")) passes = IrPass.parse(arg.substring("--passes=".length()));
+        }
+        int batch = Arrays.asList(args).indexOf("--batch");
+        int cacheDir = Arrays.asList(args).indexOf("--cache");
+        long cacheSize = 64L << 20;
+        for(String arg : args)
+        {
+            if(arg.startsWith("--cache-size=")) cacheSize = Long.parseLong(arg.substring("--cache-size=".length()));
+        }
+        boolean allocation = Arrays.asList(args).contains("--metrics-alloc");
+        boolean instrument = allocation || Arrays.asList(args).contains("--metrics");
+        Path metricsFile = null;
+        for(String arg : args)
+        {
+            if(arg.startsWith("--metrics=")) metricsFile = Paths.get(arg.substring("--metrics=".length()));
+        }
+        Metrics metrics = instrument || metricsFile != null ? new Metrics(true, allocation) : Metrics.OFF;
+        if(metrics.enabled())
+        {
+            Path summary = metricsFile;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> metrics.finish(summary)));
+        }
+
+        int serve = Arrays.asList(args).indexOf("--serve");
+        int connect = Arrays.asList(args).indexOf("--connect");
+        if(serve >= 0 && serve + 1 < args.length)
+        {
+            try
             {
-                while(Character.isDigit(peek()) || "abcdefABCDEF".indexOf(peek())!=-1) advance();
-                tokens.add(new Token(TokenType.CT_INT, input.substring(start, pos), line));
-                return;
+                new CompileServer(Paths.get(args[serve + 1]), Executors.newCachedThreadPool()).useTables(tables).recover(recover).serve();
             }
-            else if(Character.isDigit(peek()))
+            catch(IOException e)
             {
-                while(Character.isDigit(peek())) advance();
-                tokens.add(new Token(TokenType.CT_INT, input.substring(start, pos), line));
-                return;
+                System.err.println("Error serving: " + e.getMessage());
             }
+            return;
         }
-
-        while(Character.isDigit(peek())) advance();
-
-        if(match('.'))
-        {
-            isReal=true;
-            while(Character.isDigit(peek())) advance();
-        }
-        if(match('e') || match('E'))
-        {
-            isReal =true;
-            if(match('-') || match('+')) advance();
-            while(Character.isDigit(peek())) advance();
-        }
-
-        TokenType type=isReal?TokenType.CT_REAL:TokenType.CT_INT;
-
-        tokens.add(new Token(type, input.substring(start, pos), line));
-    }
-
-    private void tokenizeString()
-    {
-        int start=pos;
-        advance();
-        while(peek() != '"' && peek()!='\0') advance();
-        advance();
-        tokens.add(new Token(TokenType.CT_STRING, input.substring(start+1, pos-1), line));
-    }
-
-    private void tokenizeChar()
-    {
-        int start=pos;
-        advance();
-        while(peek()!='\'' && peek()!='\0') advance();
-        advance();
-        tokens.add(new Token(TokenType.CT_CHAR, input.substring(start+1, pos-1), line));
-    }
-
-    private void consumeLineComment()
-    {
-        while(peek()!='\n' && peek()!='\0') advance();
-    }
-
-    private void consumeBlockComment()
-    {
-        while(pos < input.length()-1)
-        {
-            if(match('*') && match('/')) return;
-            advance();
-        }
-    }
-
-    private void tokenizeSymbol()
-    {
-        char ch=advance();
-        switch (ch) 
+        if(connect >= 0 && connect + 1 < args.length)
         {
-            case '+':
-                tokens.add(new Token(TokenType.ADD, "+", line));
-                break;
-            case '-':
-                tokens.add(new Token(TokenType.SUB, "-", line));
-                break;
-            case '*':
-                tokens.add(new Token(TokenType.MUL, "*", line));
-                break;
-            case ',':
-                tokens.add(new Token(TokenType.COMMA, ",", line));
-                break;
-            case ';':
-                tokens.add(new Token(TokenType.SEMICOLON, "", line));
-                break;
-            case '(':
-                tokens.add(new Token(TokenType.LPAR, "(", line));
-                break;
-            case ')':
-                tokens.add(new Token(TokenType.RPAR, ")", line));
-                break;
-            case '[':
-                tokens.add(new Token(TokenType.LBRACKET, "[", line));
-                break;
-            case ']':
-                tokens.add(new Token(TokenType.RBRACKET, "]", line));
-                break;
-            case '{':
-                tokens.add(new Token(TokenType.LACC, "{", line));
-                break;
-            case '}':
-                tokens.add(new Token(TokenType.RACC, "}", line));
-                break;
-            case '<':
-                tokens.add(match('=')? new Token(TokenType.LESSEQ, "<=", line) :new Token(TokenType.LESS, "<", line));
-                break;
-            case '>':
-                tokens.add(match('=')? new Token(TokenType.GREATEREQ, ">=", line) :new Token(TokenType.GREATER, ">", line));
-                break;
-            case '=':
-                tokens.add(match('=')? new Token(TokenType.EQUAL, "==", line) : new Token(TokenType.ASSIGN, "=", line));
-                break;
-            default:
-                System.err.println("Unknown character "+ch);
-                break;
-        }
-    }
-
-    public List<Token> tokenize()
-    {
-        while(pos< input.length()-1)
-        {
-            char c = peek();
+            try
             {
-                if(Character.isWhitespace(c))
-                {
-                    consumeWhitespace();
-                }
-                else if(Character.isLetter(c) || c=='_')
-                {
-                    tokenizeIdentifierOrKeyword();
-                }
-                else if(Character.isDigit(c))
-                {
-                    tokenizeNumber();
-                }
-                else if(c=='"')
-                {
-                    tokenizeString();
-                }
-                else if(c=='\'')
-                {
-                    tokenizeChar();
-                }
-                else if(c=='/')
-                {
-                    if(match('/'))
-                    {
-                        consumeLineComment();
-                    }
-                    else if(match('*'))
-                    {
-                        consumeBlockComment();
-                    }
-                }
-                else
+                Path socket = Paths.get(args[connect + 1]);
+                if(Arrays.asList(args).contains("--stop"))
                 {
-                    tokenizeSymbol();
+                    CompileServer.request(socket, CompileServer.STOP, "");
+                    return;
                 }
+                CompileServer.Response response = Arrays.asList(args).contains("--stdin")
+                    ? CompileServer.request(socket, CompileServer.SOURCE, new String(System.in.readAllBytes(), StandardCharsets.UTF_8))
+                    : CompileServer.request(socket, CompileServer.PATH, Paths.get("0.c").toAbsolutePath().toString());
+                System.out.print(response.out);
+                System.err.print(response.err);
+                System.out.flush();
+                System.err.flush();
+                if(response.status != 0) System.exit(response.status);
             }
-        }
-        tokens.add(new Token(TokenType.END, "EOF", line));
-        return tokens;
-    }
-}
-
-class Syntactic
-{
-    static Token crtTk;
-    static Token consumedTk;
-
-    public static void parse(List<Token> tokens)
-    {
-        crtTk=tokens.get(0);
-
-        if(!unit())
-        {
-            System.err.println("Syntax error at token: " + crtTk);
-        }
-        else
-        {
-            System.out.println("Parsed successfully");
-        }
-    }
-
-    static boolean consume(TokenType code)
-    {
-        if(crtTk.type==code)
-        {
-            consumedTk=crtTk;
-            crtTk=crtTk.next;
-            return true;
-        }
-
-        return false;
-    }
-
-    static void tkerr(Token tk, String msg)
-    {
-        throw new RuntimeException("Syntax error at token: " + tk.line + " " + msg);
-    }
-
-    static boolean unit()
-    {
-        while(true)
-        {
-            if(declStruct() || declFunc() || declVar())
+            catch(IOException e)
             {
-                continue;
+                System.err.println("Error contacting server: " + e.getMessage());
+                System.exit(2);
             }
-            break;
+            return;
         }
 
-        return consume(TokenType.END);
-    }
-
-    static boolean declStruct()
-    {
-        Token startTk=crtTk;
-
-        if(consume(TokenType.STRUCT))
+        if(batch >= 0 && batch + 1 < args.length)
         {
-            if(consume(TokenType.ID))
+            try
             {
-                if(consume(TokenType.LACC))
-                {
-                    while(declVar()) {}
-                    if(consume(TokenType.RACC))
-                    {
-                        if(consume(TokenType.SEMICOLON))
-                        {
-                            return true;
-                        }
-                        else tkerr(crtTk, "missing ';' after struct declaration");
-                    }
-                    else tkerr(crtTk, "missing '}' in struct declaration");
-                }
-                else tkerr(crtTk, "missing '{' in struct declaration");
+                long start = System.nanoTime();
+                metrics.phase("batch");
+                TokenCache cache = cacheDir >= 0 && cacheDir + 1 < args.length ? new TokenCache(Paths.get(args[cacheDir + 1]), cacheSize) : null;
+                List<BatchCompiler.Result> results = new BatchCompiler(ForkJoinPool.commonPool()).useTables(tables).recover(recover).cache(cache).compile(Paths.get(args[batch + 1]));
+                metrics.end();
+                BatchCompiler.report(results, System.nanoTime() - start, System.out);
+                if(cache != null) cache.report(System.out);
             }
-            else tkerr(crtTk, "missing ID after 'struct'");
-        }
-
-        crtTk=startTk;
-        return false;
-    }
-
-    static boolean declVar()
-    {
-        Token startTk=crtTk;
-        
-        if(typeBase())
-        {
-            if(consume(TokenType.ID))
-            {
-                arrayDecl();
-                while(true)
-                {
-                    if(consume(TokenType.COMMA))
-                    {
-                        if(!consume(TokenType.ID)) tkerr(crtTk, "missing ID after ',' in variable list");
-                        arrayDecl();
-                    }
-                    else
-                    {
-                        break;
-                    }
-                }
-                if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after variable declaration");
-                return true;
-            }
-            else
+            catch(IOException e)
             {
-                crtTk=startTk;
-                return false;
+                System.err.println("Error reading directory: " + e.getMessage());
             }
+            return;
         }
-        crtTk=startTk;
-        return false;
-    }
 
-    static boolean declFunc()
-    {
-        Token startTk=crtTk;
+        TokenCache cache = null;
+        TokenCache.Entry cached = null;
+        String key = null;
+        TokenPipe pipe = null;
+        // the pipelined lexer runs on its own thread, so its errors are kept apart from the parser's
+        Diagnostics lexical = recover ? new Diagnostics() : null;
+        // kept for the cache, so a hit prints the same warnings lexing did
+        List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        ObjIntConsumer<String> warn = (message, at) ->
+        {
+            warnings.add(message);
+            System.err.println(message);
+        };
 
-        if(typeBase())
+        try
         {
-            if(!consume(TokenType.ID))
+            metrics.phase("read");
+            MappedSource src = MappedSource.map(Paths.get("0.c"));
+            if(cacheDir >= 0 && cacheDir + 1 < args.length)
             {
-                crtTk=startTk;
-                return false;
+                metrics.phase("cache");
+                cache = new TokenCache(Paths.get(args[cacheDir + 1]), cacheSize);
+                key = TokenCache.key(src);
+                cached = cache.load(key, src);
             }
-        }
-        else if(consume(TokenType.VOID))
-        {
-            if(!consume(TokenType.ID))
+            metrics.phase("lex");
+            if(cached != null)
             {
-                crtTk=startTk;
-                return false;
+                tokens = cached.tokens;
+                for(String warning : cached.warnings) System.err.println(warning);
             }
-        }
-        else
-        {
-            crtTk=startTk;
-            return false;
-        }
-
-        if(!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' in function declaration");
-
-        if(funcArg())
-        {
-            while(consume(TokenType.COMMA))
+            else if(parallel)
             {
-                if(!funcArg()) tkerr(crtTk, "invalid funcArg after ','");
+                tokens = new ParallelLex(src, ForkJoinPool.commonPool()).useTables(tables).recover(lexical).warnings(warn).tokenize();
             }
-        }
-
-        if(!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' in function declaration");
-
-        if(!stmCompound()) tkerr(crtTk, "invalid function body");
-
-        return true;
-    }
-
-    static boolean funcArg()
-    {
-        Token startTk=crtTk;
-
-        if(typeBase())
-        {
-            if(consume(TokenType.ID))
+            else if(pipelined)
             {
-                arrayDecl();
-                return true;
+                pipe = new TokenPipe(src, tables).recover(lexical).warnings(warn).start();
+                tokens = pipe.tokens();
             }
-        }
-
-        crtTk=startTk;
-        return false;
-    }
-
-    static boolean typeBase()
-    {
-        if(consume(TokenType.INT)) return true;
-        if(consume(TokenType.DOUBLE)) return true;
-        if(consume(TokenType.CHAR)) return true;
-        if(consume(TokenType.STRUCT))
-        {
-            if(!consume(TokenType.ID)) tkerr(crtTk, "missing ID after 'struct'");
-            return false;
-        }
-        return false;
-    }
-
-    static boolean arrayDecl()
-    {
-        Token startTk=crtTk;
-
-        if(consume(TokenType.LBRACKET))
-        {
-            if(!consume(TokenType.RBRACKET)) tkerr(crtTk, "missing ']' in array declaration");
-            return true;
-        }
-
-        crtTk=startTk;
-        return false;
-    }
-
-    static boolean typeName() 
-    {
-        if (!typeBase()) return false;
-        return true;
-    }
-
-    static boolean stm()
-    {
-        Token startToken=crtTk;
-
-        if(stmCompound())
-        {
-            return true;
-        }
-
-        if(consume(TokenType.IF))
-        {
-            if(!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after if");
-            if(!expr()) tkerr(crtTk, "missing '(' after if");
-            if(!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after if condition");
-            if(!stm()) tkerr(crtTk, "missing statement after if");
-            if(consume(TokenType.ELSE))
-                if(!stm()) tkerr(crtTk, "missing statement after else");
-
-            return true;
-        }
-
-        if (consume(TokenType.WHILE)) 
-        {
-            if (!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after while");
-            if (!expr()) tkerr(crtTk, "invalid expression inside while");
-            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after while condition");
-            if (!stm()) tkerr(crtTk, "missing statement after while");
-
-            return true;
-        }
-
-        if (consume(TokenType.FOR)) 
-        {
-            if (!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after for");
-            if (!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after first for expression");
-            if (!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after second for expression");
-            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after for expressions");
-            if (!stm()) tkerr(crtTk, "missing statement after for");
-
-            return true;
-        }
-
-        if(consume(TokenType.BREAK))
-        {
-            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after break");
-            return true;
-        }
-
-        if(consume(TokenType.RETURN))
-        {
-            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after return");
-            return true;
-        }
-
-        if(expr())
-        {
-            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after expression");
-            return true;
-        }
-
-        if(consume(TokenType.SEMICOLON))
-        {
-            return true;
-        }
-
-        crtTk=startToken;
-
-        return false;
-    }
-
-    static boolean stmCompound()
-    {
-        if(!consume(TokenType.LACC)) return false;
-
-        while (true) 
-        {
-            if(declVar()) {}
-            else if(stm()) {}
             else
             {
-                break;
-            }    
-        }
-
-        if(!consume(TokenType.RACC)) tkerr(crtTk, "missing '}' or syntax error in stmCompound");
-
-        return true;
-    }
-
-    static boolean expr()
-    {
-        return exprAssign();
-    }
-
-    static boolean exprAssign()
-    {
-        Token startToken=crtTk;
-
-        if(exprUnary())
-        {
-            if(consume(TokenType.ASSIGN))
-            {
-                if(!exprAssign()) tkerr(crtTk, "invalid assignment");
-                return true;
+                tokens = new Lex(src).useTables(tables).recover(lexical).warnings(warn).tokenizeCompact();
             }
-
-            crtTk=startToken;
-        }
-
-        return exprOr();
-    }
-
-    static boolean exprOr()
-    {
-        if(!exprAnd()) return false;
-
-        while(consume(TokenType.OR))
-        {
-            if(!exprAnd()) tkerr(crtTk, "invalid expression after ||");
         }
-
-        return true;
-    }
-
-    static boolean exprAnd()
-    {
-        if(!exprEq()) return false;
-        while (consume(TokenType.AND)) 
+        catch(IOException e)
         {
-            if (!exprEq()) tkerr(crtTk, "invalid expression after &&");    
+            System.err.println("Error reading file: " + e.getMessage());
+            return;
         }
-
-        return true;
-    }
-
-    static boolean exprEq() 
-    {
-        if (!exprRel()) return false;
-        while (true) 
+        catch(RuntimeException e)
         {
-            if (consume(TokenType.EQUAL) || consume(TokenType.NOTEQ)) 
-            {
-                if (!exprRel()) tkerr(crtTk, "invalid expression after == or !=");
-            } 
-            else break;
+            metrics.end();
+            System.err.println(e.getMessage());
+            return;
         }
-        return true;
-    }
 
-    static boolean exprRel() 
-    {
-        if (!exprAdd()) return false;
-        while (true) 
-        {
-            if (consume(TokenType.LESS) || consume(TokenType.LESSEQ) || consume(TokenType.GREATER) || consume(TokenType.GREATEREQ)) 
-            {
-                if (!exprAdd()) tkerr(crtTk, "invalid expression after relational operator");
-            } 
-            else break;
-        }
-        return true;
-    }
+        // a pipelined parse lexes as it goes, so its tokens are only all there to dump once it is done
+        if(pipe == null) dump(tokens, metrics);
 
-    static boolean exprAdd() 
-    {
-        if (!exprMul()) return false;
-        while (true) 
+        Diagnostics diagnostics = recover ? new Diagnostics() : null;
+        Syntactic parser = new Syntactic(tokens).memoize(memoize).predictive(predictive).pratt(precedence).recover(diagnostics).feed(pipe);
+        Ast ast;
+        int root;
+        boolean parsed;
+        if(cached != null && cached.ast != null)
         {
-            if (consume(TokenType.ADD) || consume(TokenType.SUB)) 
-            {
-                if (!exprMul()) tkerr(crtTk, "invalid expression after '+' or '-'");
-            } 
-            else break;
+            ast = cached.ast;
+            root = cached.root;
+            parsed = true;
         }
-        return true;
-    }
-
-    static boolean exprMul() 
-    {
-        if (!exprCast()) return false;
-
-        while (true) 
+        else
         {
-            if (consume(TokenType.MUL) || consume(TokenType.DIV)) 
+            metrics.phase("parse");
+            try
             {
-                if (!exprCast()) tkerr(crtTk, "invalid expression after '*' or '/'");
-            } 
-            else break;
-        }
-        return true;
-    }
-
-    static boolean exprCast() 
-    {
-        Token startTk = crtTk;
-        if (consume(TokenType.LPAR)) 
-        {
-            if (typeName()) 
+                parsed = parser.parse();
+            }
+            catch(RuntimeException e)
             {
-                if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after cast");
-                if (!exprCast()) tkerr(crtTk, "invalid expression after cast");
-                return true;
+                metrics.parse(parser);
+                // a lexical error on the lexer thread surfaces once the parser reads up to it
+                if(pipe != null && e == pipe.failure())
+                {
+                    metrics.end();
+                    System.err.println(e.getMessage());
+                    return;
+                }
+                if(pipe != null) dump(tokens, metrics);
+                if(cache != null) metrics.phase("cache");
+                if(cached == null) store(cache, key, tokens, warnings, null, Ast.NONE);
+                throw e;
             }
-            crtTk = startTk;
-        }
-        return exprUnary();
-    }
-
-    static boolean exprUnary() 
-    {
-        if (consume(TokenType.SUB) || consume(TokenType.NOT)) 
-        {
-            if (!exprUnary()) tkerr(crtTk, "invalid expression after unary '-' or '!'");
-            return true;
+            metrics.parse(parser);
+            if(pipe != null) dump(tokens, metrics);
+            ast = parser.ast();
+            root = parser.root();
+            // tokens with lexical errors are not cached, since a hit would skip reporting them
+            boolean clean = lexical == null || lexical.size() == 0;
+            if(!clean) parsed = false;
+            if(cache != null && clean) metrics.phase("cache");
+            if(cached == null && clean) store(cache, key, tokens, warnings, parsed && (diagnostics == null || diagnostics.size() == 0) ? ast : null, root);
         }
-        return exprPostfix();
-    }
 
-    static boolean exprPostfix() 
-    {
-        if (!exprPrimary()) return false;
-        while (true) 
+        if(parsed)
         {
-            if (consume(TokenType.LBRACKET)) 
+            metrics.end();
+            System.out.println("Parsed successfully");
+            if(dumpAst) ast.dump(root, tokens, System.out);
+
+            Diagnostics semantic = new Diagnostics();
+            Domain domain = new Domain(tokens, ast, semantic);
+            TypeCheck types = new TypeCheck(tokens, ast, domain, semantic);
+            metrics.phase("domain");
+            boolean analyzed = domain.analyze(root);
+            metrics.phase("types");
+            boolean checked = analyzed && types.check(root);
+            metrics.end();
+            if(!checked)
             {
-                if (!expr()) tkerr(crtTk, "invalid index expression in array access");
-                if (!consume(TokenType.RBRACKET)) tkerr(crtTk, "missing ']' in array access");
-            } 
-            else if (consume(TokenType.DOT)) 
+                semantic.print("", System.err);
+            }
+            else if(run || dumpCode)
             {
-                if (!consume(TokenType.ID)) tkerr(crtTk, "missing field name after '.'");
-            } 
-            else 
+                metrics.phase("codegen");
+                Program program = new CodeGen(tokens, ast, domain, types).generate(root);
+                metrics.end();
+                if(dumpCode) program.dump(System.out);
+                if(run)
+                {
+                    metrics.phase("run");
+                    try
+                    {
+                        System.out.println("Program exited with " + new Vm(program).run());
+                    }
+                    catch(RuntimeException e)
+                    {
+                        System.out.flush();
+                        System.err.println("Runtime error: " + e);
+                    }
+                }
+            }
+            if(semantic.size() == 0 && (dumpIr || runIr))
             {
-                break;
+                metrics.phase("ir");
+                IrPipeline pipeline = new IrPipeline(passes);
+                IrModule module = pipeline.run(new IrGen(tokens, ast, domain, types).generate(root));
+                metrics.end();
+                if(dumpIr)
+                {
+                    module.dump(System.out);
+                    pipeline.report(System.out);
+                }
+                if(runIr)
+                {
+                    metrics.phase("run-ir");
+                    try
+                    {
+                        System.out.println("Program exited with " + new IrVm(module).run());
+                    }
+                    catch(RuntimeException e)
+                    {
+                        System.out.flush();
+                        System.err.println("Runtime error: " + e);
+                    }
+                }
             }
-        }
-        return true;
-    }
-
-    static boolean exprPrimary() 
-    {
-        Token startTk = crtTk;
-    
-        if (consume(TokenType.ID)) 
-        {
-            if (consume(TokenType.LPAR)) 
+            if(semantic.size() == 0 && (runJvm || writeClass))
             {
-                if (expr()) 
+                try
                 {
-                    while (consume(TokenType.COMMA)) 
+                    metrics.phase("jvmgen");
+                    JvmProgram program = new JvmGen(tokens, ast, domain, types).generate(root);
+                    if(writeClass) Files.write(Paths.get(JvmGen.CLASS + ".class"), program.bytes());
+                    if(runJvm)
                     {
-                        if (!expr()) tkerr(crtTk, "invalid expression after ',' in call");
+                        metrics.phase("run-jvm");
+                        System.out.println("Program exited with " + program.run());
                     }
                 }
-                if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after function call arguments");
+                catch(IOException e)
+                {
+                    System.err.println("cannot write " + JvmGen.CLASS + ".class: " + e.getMessage());
+                }
+                catch(RuntimeException e)
+                {
+                    System.out.flush();
+                    System.err.println("Runtime error: " + e);
+                }
             }
-            return true;
-        }
-        if (consume(TokenType.CT_INT)) return true;
-        if (consume(TokenType.CT_REAL)) return true;
-        if (consume(TokenType.CT_CHAR)) return true;
-        if (consume(TokenType.CT_STRING)) return true;
-        if (consume(TokenType.LPAR)) 
-        {
-            if (!expr()) tkerr(crtTk, "invalid expression inside '(' ')'");
-            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after expression");
-            return true;
-        }
-    
-        crtTk = startTk;
-        return false;
-    }
-}
-
-public class Compiler
-{
-    public static void main(String[] args) 
-    {
-        StringBuilder sourceCode = new StringBuilder();
-
-        try(BufferedReader reader = new BufferedReader(new FileReader("0.c")))
-        {
-            String line;
-            while ((line = reader.readLine()) != null) 
+            if(semantic.size() == 0 && runClosures)
             {
-                sourceCode.append(line).append("\n");
+                metrics.phase("run-closures");
+                try
+                {
+                    System.out.println("Program exited with " + new ClosureGen(tokens, ast, domain, types).generate(root).run());
+                }
+                catch(RuntimeException e)
+                {
+                    System.out.flush();
+                    System.err.println("Runtime error: " + e);
+                }
             }
         }
-        catch(IOException e)
+        else if(diagnostics != null)
         {
-            System.err.println("Error reading file: " + e.getMessage());
-            return;
+            lexical.print("", System.err);
+            diagnostics.print("", System.err);
         }
-
-        Lex lexer=new Lex(sourceCode.toString());
-        List<Token> tokens = lexer.tokenize();
-
-        for(Token token : tokens)
+        else
         {
-            System.out.println(token);
+            System.err.println(parser.error());
         }
-
-        Syntactic.parse(tokens);
+        metrics.end();
+        if(cache != null) cache.report(System.out);
     }
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+class Corpus
+{
+    enum Shape
+    {
+        EXPRESSIONS, STRUCTS, FUNCTIONS, COMMENTS, MIXED
+    }
+
+    private final SplittableRandom random;
+    private final StringBuilder out = new StringBuilder();
+    private int structs = 0;
+    private int functions = 0;
+
+    private Corpus(long seed)
+    {
+        this.random = new SplittableRandom(seed);
+    }
+
+    public static String generate(Shape shape, int bytes, long seed)
+    {
+        Corpus corpus = new Corpus(seed);
+        corpus.prelude();
+        Shape[] mix = { Shape.EXPRESSIONS, Shape.STRUCTS, Shape.FUNCTIONS, Shape.COMMENTS };
+        for(int unit = 0; corpus.out.length() < bytes; unit++)
+        {
+            switch(shape == Shape.MIXED ? mix[unit % mix.length] : shape)
+            {
+                case EXPRESSIONS: corpus.expressions(); break;
+                case STRUCTS: corpus.struct(); break;
+                case FUNCTIONS: corpus.longFunction(); break;
+                default: corpus.commented(); break;
+            }
+        }
+        corpus.out.append("int main()\n{\n    return f0(1, 0.5);\n}\n");
+        return corpus.out.toString();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 3)
+        {
+            System.err.println("usage: Corpus <expressions|structs|functions|comments|mixed> <bytes> <file> [seed]");
+            return;
+        }
+        Shape shape = Shape.valueOf(args[0].toUpperCase());
+        int bytes = Integer.parseInt(args[1]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        Files.write(Paths.get(args[2]), generate(shape, bytes, seed).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void prelude()
+    {
+        out.append("struct P0 { int x; int y; double w[4]; };\n");
+        out.append("double g0[16];\n");
+        out.append("int f0(int n, double v)\n{\n    if(n > 0) return n - 1;\n    return (int)v;\n}\n");
+        structs = 1;
+        functions = 1;
+    }
+
+    private int pick(int bound)
+    {
+        return random.nextInt(bound);
+    }
+
+    private String intExpr(int depth, String[] ints)
+    {
+        if(depth == 0 || pick(8) == 0)
+        {
+            switch(pick(4))
+            {
+                case 0: return Integer.toString(pick(1000));
+                case 1: return "(int)g0[" + pick(16) + "]";
+                default: return ints[pick(ints.length)];
+            }
+        }
+        switch(pick(7))
+        {
+            case 0: return "(" + intExpr(depth - 1, ints) + " + " + intExpr(depth - 1, ints) + ")";
+            case 1: return "(" + intExpr(depth - 1, ints) + " - " + intExpr(depth - 1, ints) + ")";
+            case 2: return intExpr(depth - 1, ints) + " * " + intExpr(depth - 1, ints);
+            case 3: return "(" + intExpr(depth - 1, ints) + " < " + intExpr(depth - 1, ints) + " && " + intExpr(depth - 1, ints) + " != 0)";
+            case 4: return "-(" + intExpr(depth - 1, ints) + ")";
+            case 5: return "f" + pick(functions) + "(" + intExpr(depth - 1, ints) + ", " + realExpr(depth - 1, ints) + ")";
+            default: return "(" + intExpr(depth - 1, ints) + " / (" + ints[0] + " * " + ints[0] + " + 1))";
+        }
+    }
+
+    private String realExpr(int depth, String[] ints)
+    {
+        if(depth == 0 || pick(6) == 0)
+        {
+            switch(pick(3))
+            {
+                case 0: return pick(100) + "." + pick(100);
+                case 1: return "g0[" + pick(16) + "]";
+                default: return "1.5e" + pick(4);
+            }
+        }
+        switch(pick(4))
+        {
+            case 0: return "(" + realExpr(depth - 1, ints) + " + " + intExpr(depth - 1, ints) + ")";
+            case 1: return realExpr(depth - 1, ints) + " * " + realExpr(depth - 1, ints);
+            case 2: return "(double)" + ints[pick(ints.length)];
+            default: return "(" + realExpr(depth - 1, ints) + " - " + realExpr(depth - 1, ints) + " / 2.0)";
+        }
+    }
+
+    private void header(String name)
+    {
+        out.append("int ").append(name).append("(int n, double v)\n{\n    int a, b, c;\n    double d;\n");
+        out.append("    a = n;\n    b = a + 1;\n    c = 2;\n    d = v;\n");
+    }
+
+    private void footer()
+    {
+        out.append("    return a + b + c;\n}\n");
+        functions++;
+    }
+
+    private void expressions()
+    {
+        String[] ints = { "a", "b", "c", "n" };
+        header("f" + functions);
+        for(int i = 0; i < 4; i++)
+        {
+            out.append("    a = ").append(intExpr(10 + pick(6), ints)).append(";\n");
+            out.append("    d = ").append(realExpr(8, ints)).append(";\n");
+        }
+        footer();
+    }
+
+    private void struct()
+    {
+        int id = structs++;
+        out.append("struct P").append(id).append("\n{\n");
+        int fields = 3 + pick(6);
+        for(int i = 0; i < fields; i++)
+        {
+            switch(pick(4))
+            {
+                case 0: out.append("    double m").append(i).append(";\n"); break;
+                case 1: out.append("    char m").append(i).append("[").append(4 + pick(28)).append("];\n"); break;
+                case 2: out.append("    struct P").append(pick(id)).append(" m").append(i).append(";\n"); break;
+                default: out.append("    int m").append(i).append(";\n"); break;
+            }
+        }
+        out.append("    struct P0 base;\n};\n");
+        out.append("int f").append(functions).append("(int n, double v)\n{\n    struct P").append(id).append(" s;\n    int k;\n");
+        out.append("    s.base.x = n;\n    s.base.w[n / 4 * 0] = v;\n");
+        out.append("    for(k = 0; k < 4; k = k + 1) s.base.w[k] = s.base.w[k] + k * v;\n");
+        out.append("    return s.base.x + (int)s.base.w[3];\n}\n");
+        functions++;
+    }
+
+    private void longFunction()
+    {
+        String[] ints = { "a", "b", "c" };
+        header("f" + functions);
+        out.append("    int i, j;\n    char buf[32];\n");
+        int statements = 40 + pick(40);
+        for(int s = 0; s < statements; s++)
+        {
+            switch(pick(6))
+            {
+                case 0:
+                    out.append("    for(i = 0; i < ").append(2 + pick(30)).append("; i = i + 1)\n    {\n");
+                    out.append("        b = b + ").append(intExpr(3, ints)).append(";\n");
+                    out.append("        if(b > 1000) break;\n    }\n");
+                    break;
+                case 1:
+                    out.append("    if(").append(intExpr(2, ints)).append(" >= ").append(intExpr(2, ints)).append(")\n    {\n");
+                    out.append("        c = c - 1;\n    }\n    else\n    {\n        d = d * 0.5;\n    }\n");
+                    break;
+                case 2:
+                    out.append("    j = 0;\n    while(j < ").append(1 + pick(8)).append(")\n    {\n");
+                    out.append("        buf[j] = 'a' + j;\n        j = j + 1;\n    }\n");
+                    break;
+                case 3:
+                    out.append("    g0[").append(pick(16)).append("] = ").append(realExpr(3, ints)).append(";\n");
+                    break;
+                case 4:
+                    out.append("    a = f").append(pick(functions)).append("(").append(intExpr(2, ints)).append(", d);\n");
+                    break;
+                default:
+                    out.append("    c = ").append(intExpr(4, ints)).append(";\n");
+                    break;
+            }
+        }
+        footer();
+    }
+
+    private void commented()
+    {
+        String[] ints = { "a", "b", "c", "n" };
+        out.append("/*\n");
+        int lines = 4 + pick(12);
+        for(int i = 0; i < lines; i++) out.append(" * ").append(words(6 + pick(8))).append('\n');
+        out.append(" */\n");
+        header("f" + functions);
+        int statements = 6 + pick(10);
+        for(int s = 0; s < statements; s++)
+        {
+            if(pick(2) == 0) out.append("    // ").append(words(4 + pick(10))).append('\n');
+            out.append("    b = ").append(intExpr(3, ints)).append("; /* ").append(words(2 + pick(4))).append(" */\n");
+        }
+        footer();
+    }
+
+    private static final String[] WORDS = {
+        "the", "value", "is", "kept", "in", "range", "before", "we", "update", "state", "loop", "index",
+        "counter", "buffer", "returns", "zero", "when", "input", "ends", "see", "note", "above", "todo", "fix"
+    };
+
+    private String words(int n)
+    {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < n; i++)
+        {
+            if(i > 0) text.append(' ');
+            text.append(WORDS[pick(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
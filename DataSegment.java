@@ -0,0 +1,61 @@
+import java.util.*;
+
+// the static data image and real constants a flat-memory backend builds its program from; strings take one
+// slot per character and end with a zero slot
+class DataSegment
+{
+    private long[] data = new long[256];
+    private int size = 0;
+    final RealPool reals = new RealPool();
+
+    int allocate(int slots)
+    {
+        while(size + slots > data.length) data = Arrays.copyOf(data, data.length * 2);
+        int address = size;
+        size += slots;
+        return address;
+    }
+
+    // each literal gets its own copy, since get_s may write into it
+    int string(TokenStore tokens, int tk)
+    {
+        String text = tokens.text(tk);
+        int address = allocate(length(tokens, tk));
+        int p = address;
+        for(int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if(c == '\\' && i + 1 < text.length()) c = Lex.escape(text.charAt(++i));
+            data[p++] = (byte)c;
+        }
+        data[p] = 0;
+        return address;
+    }
+
+    // the slots a literal takes: its characters once escapes are decoded, then the terminator
+    static int length(TokenStore tokens, int tk)
+    {
+        String text = tokens.text(tk);
+        int length = 1;
+        for(int i = 0; i < text.length(); i++, length++)
+        {
+            if(text.charAt(i) == '\\' && i + 1 < text.length()) i++;
+        }
+        return length;
+    }
+
+    int real(double value)
+    {
+        return reals.intern(value);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    long[] image()
+    {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.function.LongSupplier;
+
+// runs a program whose calls nest on the Java stack on a thread with room for MAX_DEPTH of them, the call depth the
+// Vm and IrVm allow, so every backend overflows at the same call
+final class DeepStack
+{
+    static final int MAX_DEPTH = 1 << 16;
+
+    // only reserved: pages are touched as deep as the program goes
+    private static final long STACK_BYTES = 1L << 30;
+
+    private DeepStack()
+    {
+    }
+
+    static long run(String name, LongSupplier body)
+    {
+        long[] result = new long[1];
+        Throwable[] failure = new Throwable[1];
+        Thread runner = new Thread(null, () ->
+        {
+            try
+            {
+                result[0] = body.getAsLong();
+            }
+            catch(RuntimeException | Error e)
+            {
+                failure[0] = e;
+            }
+        }, name, STACK_BYTES);
+        runner.start();
+        try
+        {
+            runner.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while running", e);
+        }
+
+        // a JVM may ignore the requested stack size, so the Java stack can still run out first
+        if(failure[0] instanceof StackOverflowError) throw new IllegalStateException("stack overflow");
+        if(failure[0] instanceof RuntimeException) throw (RuntimeException)failure[0];
+        if(failure[0] != null) throw (Error)failure[0];
+        return result[0];
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.util.*;
+
+class Diagnostics
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] tks = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private String[] phases = new String[INITIAL_CAPACITY];
+    private int count = 0;
+
+    void add(int tk, int line, String message)
+    {
+        add("Syntax", tk, line, message);
+    }
+
+    void add(String phase, int tk, int line, String message)
+    {
+        if(count == tks.length)
+        {
+            int capacity = count * 2;
+            tks = Arrays.copyOf(tks, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+        }
+        tks[count] = tk;
+        lines[count] = line;
+        messages[count] = message;
+        phases[count] = phase;
+        count++;
+    }
+
+    public void clear()
+    {
+        count = 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public int token(int i)
+    {
+        return tks[i];
+    }
+
+    public int line(int i)
+    {
+        return lines[i];
+    }
+
+    public String message(int i)
+    {
+        return messages[i];
+    }
+
+    public String format(int i)
+    {
+        return phases[i] + " error at token: " + lines[i] + " " + messages[i];
+    }
+
+    public void print(String prefix, PrintStream out)
+    {
+        for(int i = 0; i < count; i++) out.println(prefix + format(i));
+    }
+}
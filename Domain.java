@@ -0,0 +1,394 @@
+import java.util.*;
+
+class Domain
+{
+    static final int NONE = -1;
+
+    private static final SymbolKind[] KINDS = SymbolKind.values();
+    private static final Builtin[] BUILTINS = Builtin.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_DEPTH = 1 << 12;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Diagnostics diagnostics;
+
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    private int[] nodes = new int[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] scopes = new int[INITIAL_CAPACITY];
+    private int[] shadows = new int[INITIAL_CAPACITY];
+    private int[] owners = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    private final int[] heads;
+    private final int[] scopeIds = new int[MAX_DEPTH];
+    private int depth = -1;
+    private int nextScope = 0;
+
+    private long[] memberKeys = new long[INITIAL_CAPACITY];
+    private int[] members = new int[INITIAL_CAPACITY];
+    private int memberCount = 0;
+
+    private int[] bindings;
+    private int owner = NONE;
+    private int errors = 0;
+
+    public Domain(TokenStore tokens, Ast ast, Diagnostics diagnostics)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.diagnostics = diagnostics;
+        for(Builtin builtin : BUILTINS) tokens.symbols.intern(builtin.spelling);
+        this.heads = new int[tokens.symbols.size()];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(members, NONE);
+    }
+
+    public boolean analyze(int root)
+    {
+        bindings = new int[ast.size()];
+        Arrays.fill(bindings, NONE);
+
+        push();
+        for(Builtin builtin : BUILTINS) add(SymbolKind.BUILTIN, tokens.symbols.lookup(builtin.spelling), NONE);
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            switch(ast.kind(n))
+            {
+                case STRUCT: declStruct(n); break;
+                case FUNC: declFunc(n); break;
+                default: declVar(n, SymbolKind.VAR); break;
+            }
+        }
+        pop();
+        return errors == 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public SymbolKind kind(int sym)
+    {
+        return KINDS[kinds[sym]];
+    }
+
+    public String name(int sym)
+    {
+        return tokens.symbols.name(names[sym]);
+    }
+
+    public int node(int sym)
+    {
+        return nodes[sym];
+    }
+
+    public int depth(int sym)
+    {
+        return depths[sym];
+    }
+
+    public int owner(int sym)
+    {
+        return owners[sym];
+    }
+
+    public Builtin builtin(int sym)
+    {
+        return BUILTINS[sym];
+    }
+
+    public int symbol(int node)
+    {
+        return bindings[node];
+    }
+
+    public int member(int struct, int name)
+    {
+        long key = key(struct, name);
+        int mask = memberKeys.length - 1;
+        for(int i = slot(key, mask); members[i] != NONE; i = (i + 1) & mask)
+        {
+            if(memberKeys[i] == key) return members[i];
+        }
+        return NONE;
+    }
+
+    private void push()
+    {
+        if(depth + 1 == MAX_DEPTH) throw new IllegalStateException("blocks nested too deeply");
+        scopeIds[++depth] = nextScope++;
+    }
+
+    private void pop()
+    {
+        depth--;
+    }
+
+    private boolean live(int sym)
+    {
+        return depths[sym] <= depth && scopeIds[depths[sym]] == scopes[sym];
+    }
+
+    private int lookup(int name)
+    {
+        int sym = heads[name];
+        while(sym != NONE && !live(sym)) sym = shadows[sym];
+        heads[name] = sym;
+        return sym;
+    }
+
+    private int add(SymbolKind kind, int name, int node)
+    {
+        if(count == kinds.length) grow();
+        kinds[count] = (byte)kind.ordinal();
+        names[count] = name;
+        nodes[count] = node;
+        depths[count] = depth;
+        scopes[count] = scopeIds[depth];
+        shadows[count] = lookup(name);
+        owners[count] = owner;
+        heads[name] = count;
+        return count++;
+    }
+
+    private void grow()
+    {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        scopes = Arrays.copyOf(scopes, capacity);
+        shadows = Arrays.copyOf(shadows, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+    }
+
+    private int declare(SymbolKind kind, int node)
+    {
+        int tk = ast.token(node);
+        int name = tokens.symbol(tk);
+        int old = lookup(name);
+        if(old != NONE && depths[old] == depth) error(tk, "symbol redefinition: " + tokens.text(tk));
+
+        int sym = add(kind, name, node);
+        bindings[node] = sym;
+        return sym;
+    }
+
+    private void error(int tk, String message)
+    {
+        errors++;
+        diagnostics.add("Semantic", tk, tokens.line(tk), message);
+    }
+
+    private void declStruct(int n)
+    {
+        int struct = declare(SymbolKind.STRUCT, n);
+        for(int field = ast.a(n); field != NONE; field = ast.next(field))
+        {
+            type(ast.a(field));
+            int tk = ast.token(field);
+            int name = tokens.symbol(tk);
+            if(member(struct, name) != NONE)
+            {
+                error(tk, "symbol redefinition: " + tokens.text(tk));
+                continue;
+            }
+
+            if(count == kinds.length) grow();
+            kinds[count] = (byte)SymbolKind.MEMBER.ordinal();
+            names[count] = name;
+            nodes[count] = field;
+            depths[count] = depth;
+            scopes[count] = NONE;
+            shadows[count] = NONE;
+            owners[count] = struct;
+            bindings[field] = count;
+            putMember(struct, name, count++);
+        }
+    }
+
+    private void declFunc(int n)
+    {
+        type(ast.a(n));
+        int func = declare(SymbolKind.FUNC, n);
+
+        owner = func;
+        push();
+        for(int param = ast.b(n); param != NONE; param = ast.next(param)) declVar(param, SymbolKind.PARAM);
+        block(ast.a(ast.c(n)));
+        pop();
+        owner = NONE;
+    }
+
+    private void declVar(int n, SymbolKind kind)
+    {
+        type(ast.a(n));
+        declare(kind, n);
+    }
+
+    private void type(int n)
+    {
+        int tk = ast.token(n);
+        if(tokens.type(tk) == TokenType.ID)
+        {
+            int struct = lookup(tokens.symbol(tk));
+            if(struct == NONE || kind(struct) != SymbolKind.STRUCT) error(tk, "undefined struct: " + tokens.text(tk));
+            else bindings[n] = struct;
+        }
+        if(ast.kind(n) == NodeKind.ARRAY && ast.a(n) != NONE) expr(ast.a(n));
+    }
+
+    private void block(int first)
+    {
+        for(int n = first; n != NONE; n = ast.next(n)) stm(n);
+    }
+
+    private void stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                push();
+                block(ast.a(n));
+                pop();
+                break;
+            case VAR:
+                declVar(n, SymbolKind.VAR);
+                break;
+            case IF:
+                expr(ast.a(n));
+                stm(ast.b(n));
+                if(ast.c(n) != NONE) stm(ast.c(n));
+                break;
+            case WHILE:
+                expr(ast.a(n));
+                stm(ast.b(n));
+                break;
+            case FOR:
+                int head = ast.a(n);
+                if(ast.a(head) != NONE) expr(ast.a(head));
+                if(ast.b(head) != NONE) expr(ast.b(head));
+                if(ast.c(head) != NONE) expr(ast.c(head));
+                stm(ast.b(n));
+                break;
+            case RETURN:
+            case EXPR:
+                if(ast.a(n) != NONE) expr(ast.a(n));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void expr(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case ID:
+            case CALL:
+                int tk = ast.token(n);
+                int sym = lookup(tokens.symbol(tk));
+                if(sym == NONE || kind(sym) == SymbolKind.STRUCT) error(tk, "undefined symbol: " + tokens.text(tk));
+                else bindings[n] = sym;
+                for(int arg = ast.kind(n) == NodeKind.CALL ? ast.a(n) : NONE; arg != NONE; arg = ast.next(arg)) expr(arg);
+                break;
+            case FIELD:
+                expr(ast.a(n));
+                int struct = structOf(ast.a(n));
+                if(struct != NONE)
+                {
+                    int field = ast.token(n);
+                    int member = member(struct, tokens.symbol(field));
+                    if(member == NONE) error(field, "struct " + name(struct) + " does not have a member " + tokens.text(field));
+                    else bindings[n] = member;
+                }
+                break;
+            case CAST:
+                type(ast.a(n));
+                expr(ast.b(n));
+                break;
+            case LITERAL:
+            case CONST:
+                break;
+            default:
+                expr(ast.a(n));
+                if(ast.b(n) != NONE) expr(ast.b(n));
+                break;
+        }
+    }
+
+    private int structOf(int n)
+    {
+        int type;
+        int sym;
+        switch(ast.kind(n))
+        {
+            case ID:
+            case CALL:
+            case FIELD:
+                sym = bindings[n];
+                if(sym == NONE || nodes[sym] == NONE) return NONE;
+                type = ast.a(nodes[sym]);
+                if(ast.kind(type) == NodeKind.ARRAY) return NONE;
+                break;
+            case INDEX:
+                int array = ast.a(n);
+                if(ast.kind(array) != NodeKind.ID && ast.kind(array) != NodeKind.FIELD) return NONE;
+                sym = bindings[array];
+                if(sym == NONE || nodes[sym] == NONE) return NONE;
+                type = ast.a(nodes[sym]);
+                if(ast.kind(type) != NodeKind.ARRAY) return NONE;
+                break;
+            case CAST:
+                type = ast.a(n);
+                if(ast.kind(type) == NodeKind.ARRAY) return NONE;
+                break;
+            default:
+                return NONE;
+        }
+        return bindings[type];
+    }
+
+    private void putMember(int struct, int name, int sym)
+    {
+        if((memberCount + 1) * 2 > memberKeys.length)
+        {
+            long[] oldKeys = memberKeys;
+            int[] oldMembers = members;
+            memberKeys = new long[oldKeys.length * 2];
+            members = new int[oldKeys.length * 2];
+            Arrays.fill(members, NONE);
+            for(int j = 0; j < oldKeys.length; j++)
+            {
+                if(oldMembers[j] != NONE) insertMember(oldKeys[j], oldMembers[j]);
+            }
+        }
+        insertMember(key(struct, name), sym);
+        memberCount++;
+    }
+
+    private void insertMember(long key, int sym)
+    {
+        int mask = memberKeys.length - 1;
+        int i = slot(key, mask);
+        while(members[i] != NONE) i = (i + 1) & mask;
+        memberKeys[i] = key;
+        members[i] = sym;
+    }
+
+    private static long key(int struct, int name)
+    {
+        return ((long)struct << 32) | (name & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h >>> 32) & mask;
+    }
+}
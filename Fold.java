@@ -0,0 +1,105 @@
+class Fold
+{
+    private static final int NONE = Ast.NONE;
+
+    private final Ast ast;
+
+    public Fold(Ast ast)
+    {
+        this.ast = ast;
+    }
+
+    int literal(int tk, TokenType type, long value)
+    {
+        switch(type)
+        {
+            case CT_INT: return number(tk, Types.INT, (int)value);
+            case CT_CHAR: return number(tk, Types.CHAR, (int)value);
+            default: return real(tk, Double.longBitsToDouble(value));
+        }
+    }
+
+    int unary(int tk, TokenType op, int operand)
+    {
+        if(ast.kind(operand) != NodeKind.CONST) return NONE;
+
+        int type = ast.c(operand);
+        if(op == TokenType.NOT) return number(tk, Types.INT, truth(operand) ? 0 : 1);
+        if(type == Types.DOUBLE) return real(tk, -ast.real(operand));
+        return number(tk, type, -ast.a(operand));
+    }
+
+    int cast(int tk, TokenType base, int value)
+    {
+        if(ast.kind(value) != NodeKind.CONST) return NONE;
+
+        int type = Types.of(base);
+        if(type == Types.DOUBLE) return real(tk, ast.real(value));
+        if(type != Types.INT && type != Types.CHAR) return NONE;
+        return number(tk, type, ast.c(value) == Types.DOUBLE ? (int)ast.real(value) : ast.a(value));
+    }
+
+    int binary(int tk, TokenType op, int left, int right)
+    {
+        if(ast.kind(left) != NodeKind.CONST || ast.kind(right) != NodeKind.CONST) return NONE;
+
+        if(op == TokenType.AND) return number(tk, Types.INT, truth(left) && truth(right) ? 1 : 0);
+        if(op == TokenType.OR) return number(tk, Types.INT, truth(left) || truth(right) ? 1 : 0);
+
+        int type = Types.arith(ast.c(left), ast.c(right));
+        if(type == Types.DOUBLE)
+        {
+            double a = ast.real(left);
+            double b = ast.real(right);
+            switch(op)
+            {
+                case ADD: return real(tk, a + b);
+                case SUB: return real(tk, a - b);
+                case MUL: return real(tk, a * b);
+                case DIV: return real(tk, a / b);
+                default: return compare(tk, op, Double.compare(a, b), a == b);
+            }
+        }
+
+        int a = ast.a(left);
+        int b = ast.a(right);
+        switch(op)
+        {
+            case ADD: return number(tk, type, a + b);
+            case SUB: return number(tk, type, a - b);
+            case MUL: return number(tk, type, a * b);
+            case DIV: return b != 0 ? number(tk, type, a / b) : NONE;
+            default: return compare(tk, op, Integer.compare(a, b), a == b);
+        }
+    }
+
+    private int compare(int tk, TokenType op, int order, boolean equal)
+    {
+        switch(op)
+        {
+            case EQUAL: return number(tk, Types.INT, equal ? 1 : 0);
+            case NOTEQ: return number(tk, Types.INT, equal ? 0 : 1);
+            case LESS: return number(tk, Types.INT, order < 0 ? 1 : 0);
+            case LESSEQ: return number(tk, Types.INT, order <= 0 ? 1 : 0);
+            case GREATER: return number(tk, Types.INT, order > 0 ? 1 : 0);
+            case GREATEREQ: return number(tk, Types.INT, order >= 0 ? 1 : 0);
+            default: return NONE;
+        }
+    }
+
+    private boolean truth(int n)
+    {
+        return ast.c(n) == Types.DOUBLE ? ast.real(n) != 0 : ast.a(n) != 0;
+    }
+
+    private int number(int tk, int type, int value)
+    {
+        return ast.add(NodeKind.CONST, tk, type == Types.CHAR ? (byte)value : value, 0, type);
+    }
+
+    private int real(int tk, double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        return ast.add(NodeKind.CONST, tk, (int)bits, (int)(bits >>> 32), Types.DOUBLE);
+    }
+}
@@ -0,0 +1,81 @@
+// editable text kept as a gap buffer: an edit moves the gap to the edit offset and costs the distance moved plus
+// the characters inserted, so nearby edits never copy the whole file
+class GapSource extends Source
+{
+    private char[] buf;
+    private int gapStart;
+    private int gapEnd;
+
+    public GapSource(String text)
+    {
+        buf = new char[Math.max(64, text.length() * 2)];
+        text.getChars(0, text.length(), buf, 0);
+        gapStart = text.length();
+        gapEnd = buf.length;
+    }
+
+    char charAt(int pos)
+    {
+        if(pos < gapStart) return buf[pos];
+        pos += gapEnd - gapStart;
+        return pos < buf.length ? buf[pos] : '\0';
+    }
+
+    boolean atEnd(int pos)
+    {
+        return pos >= length();
+    }
+
+    int length()
+    {
+        return buf.length - (gapEnd - gapStart);
+    }
+
+    String text(int start, int end)
+    {
+        end = Math.min(end, length());
+        if(end <= gapStart) return new String(buf, start, end - start);
+        int gap = gapEnd - gapStart;
+        if(start >= gapStart) return new String(buf, start + gap, end - start);
+        StringBuilder text = new StringBuilder(end - start);
+        text.append(buf, start, gapStart - start);
+        text.append(buf, gapEnd, end - gapStart);
+        return text.toString();
+    }
+
+    boolean retains()
+    {
+        return true;
+    }
+
+    void replace(int offset, int removed, String inserted)
+    {
+        moveGap(offset);
+        gapEnd += removed;
+        int n = inserted.length();
+        if(gapEnd - gapStart < n)
+        {
+            int tail = buf.length - gapEnd;
+            char[] grown = new char[Math.max(buf.length * 2, gapStart + n + tail + 64)];
+            System.arraycopy(buf, 0, grown, 0, gapStart);
+            System.arraycopy(buf, gapEnd, grown, grown.length - tail, tail);
+            buf = grown;
+            gapEnd = grown.length - tail;
+        }
+        inserted.getChars(0, n, buf, gapStart);
+        gapStart += n;
+    }
+
+    private void moveGap(int to)
+    {
+        if(to < gapStart) System.arraycopy(buf, to, buf, gapEnd - (gapStart - to), gapStart - to);
+        else System.arraycopy(buf, gapEnd, buf, gapStart, to - gapStart);
+        gapEnd += to - gapStart;
+        gapStart = to;
+    }
+
+    public String toString()
+    {
+        return text(0, length());
+    }
+}
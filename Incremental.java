@@ -0,0 +1,300 @@
+// keeps one file's text, tokens and top-level unit starts up to date under edits. The text, the token arrays and the
+// unit starts are all gap buffers parked at the last edit: entries past a gap are stored relative to the end (start
+// minus text length, line minus the END line, unit minus token count), so an edit ahead of them never touches them
+// and moving a gap costs only the distance it moves
+class Incremental implements TokenFeed
+{
+    private static final int PULL = 64;
+
+    private final GapSource src;
+    private final SymbolTable symbols = new SymbolTable();
+    private final TokenStore tokens;
+    private final TokenStore fresh;
+    private final Syntactic parser;
+    private int gapEnd;                 // tokens [tokens.count, gapEnd) are the gap
+    private int lastLine;               // line of the END token
+    private int[] units = new int[64];
+    private int unitCount = 0;          // units [unitCount, unitGapEnd) are the gap
+    private int unitGapEnd = units.length;
+    private String error;
+    private int stuck;                  // while error is set, the token parsing failed at minus the token count
+
+    int relexed;
+    int reparsed;
+
+    public Incremental(String text)
+    {
+        this.src = new GapSource(text);
+        this.tokens = new Lex(src, symbols).tokenizeCompact();
+        this.fresh = new TokenStore(src, symbols);
+        this.parser = new Syntactic(tokens).buildTree(false).memoize(true).feed(this);
+        this.gapEnd = tokens.types.length;
+        this.lastLine = tokens.line(tokens.size() - 1);
+        this.relexed = tokens.size();
+        reparse(0, 0);
+    }
+
+    public String text()
+    {
+        return src.toString();
+    }
+
+    // closes the gap at the end so the store holds every token in order; the next edit reopens it
+    public TokenStore tokens()
+    {
+        moveGap(size());
+        return tokens;
+    }
+
+    public int size()
+    {
+        return tokens.count + tokens.types.length - gapEnd;
+    }
+
+    public int units()
+    {
+        return unitCount + units.length - unitGapEnd;
+    }
+
+    public int unit(int k)
+    {
+        return k < unitCount ? units[k] : units[k - unitCount + unitGapEnd] + size();
+    }
+
+    public String error()
+    {
+        return error;
+    }
+
+    public boolean edit(int offset, int removed, String inserted)
+    {
+        int first = firstEnding(offset);
+        int at = reopenUnits(first);
+        moveGap(first);
+        int restart = first > 0 ? end(first - 1) : 0;
+        int line = first > 0 ? tokens.line(first - 1) : 1;
+
+        src.replace(offset, removed, inserted);
+        int length = src.length();
+        int editEnd = offset + inserted.length();
+
+        fresh.truncate(0);
+        Lex lexer = new Lex(src, symbols, restart, line);
+        int last = tokens.types.length - 1;
+        int old = gapEnd;
+        boolean synced = false;
+        try
+        {
+            while(lexer.next(fresh, Integer.MAX_VALUE))
+            {
+                int mark = fresh.size() - 1;
+                int start = fresh.start(mark);
+                while(old < last && tokens.starts[old] + length < Math.max(start, editEnd)) old++;
+                if(old < last && tokens.starts[old] + length == start && tokens.types[old] == fresh.types[mark])
+                {
+                    fresh.truncate(mark);
+                    lastLine = fresh.line(mark) - tokens.lines[old];
+                    synced = true;
+                    break;
+                }
+            }
+        }
+        catch(RuntimeException e)
+        {
+            // the tokens stop with an END where the damage starts, so the next edit re-lexes from there to the end
+            fresh.truncate(0);
+            fresh.add(TokenType.END, restart, 0, line, -1);
+            lastLine = line;
+            gapEnd = tokens.types.length;
+            insert(fresh);
+            unitGapEnd = units.length;
+            relexed = 0;
+            reparsed = 0;
+            error = e.getMessage();
+            stuck = -1;
+            return false;
+        }
+        if(!synced)
+        {
+            fresh.add(TokenType.END, lexer.position(), 0, lexer.line(), -1);
+            lastLine = lexer.line();
+            old = tokens.types.length;
+        }
+
+        gapEnd = old;
+        insert(fresh);
+        relexed = fresh.size();
+        return reparse(at, tokens.count);
+    }
+
+    public void fill(int i)
+    {
+        if(i >= tokens.count) moveGap(Math.min(size(), i + PULL));
+    }
+
+    public boolean ended()
+    {
+        return gapEnd == tokens.types.length;
+    }
+
+    // the first token that ends at or after offset, or END
+    private int firstEnding(int offset)
+    {
+        int lo = 0;
+        int hi = size() - 1;
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(end(mid) < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int end(int i)
+    {
+        int at = i < tokens.count ? i : i - tokens.count + gapEnd;
+        int start = i < tokens.count ? tokens.starts[at] : tokens.starts[at] + src.length();
+        int type = tokens.types[at];
+        int quote = type == TokenType.CT_STRING.ordinal() || type == TokenType.CT_CHAR.ordinal() ? 1 : 0;
+        return start + tokens.lengths[at] + quote;
+    }
+
+    private void moveGap(int to)
+    {
+        int length = src.length();
+        while(tokens.count > to) moveToken(--tokens.count, --gapEnd, -length, -lastLine);
+        while(tokens.count < to) moveToken(gapEnd++, tokens.count++, length, lastLine);
+    }
+
+    private void moveToken(int from, int to, int startDelta, int lineDelta)
+    {
+        tokens.types[to] = tokens.types[from];
+        tokens.starts[to] = tokens.starts[from] + startDelta;
+        tokens.lengths[to] = tokens.lengths[from];
+        tokens.lines[to] = tokens.lines[from] + lineDelta;
+        tokens.syms[to] = tokens.syms[from];
+        tokens.values[to] = tokens.values[from];
+    }
+
+    private void insert(TokenStore add)
+    {
+        int n = add.size();
+        if(gapEnd - tokens.count < n)
+        {
+            int capacity = Math.max(tokens.types.length * 2, size() + n + PULL);
+            int tail = tokens.types.length - gapEnd;
+            int to = capacity - tail;
+            tokens.types = regap(tokens.types, new byte[capacity], tail, to);
+            tokens.starts = regap(tokens.starts, new int[capacity], tail, to);
+            tokens.lengths = regap(tokens.lengths, new int[capacity], tail, to);
+            tokens.lines = regap(tokens.lines, new int[capacity], tail, to);
+            tokens.syms = regap(tokens.syms, new int[capacity], tail, to);
+            tokens.values = regap(tokens.values, new long[capacity], tail, to);
+            gapEnd = to;
+        }
+        System.arraycopy(add.types, 0, tokens.types, tokens.count, n);
+        System.arraycopy(add.starts, 0, tokens.starts, tokens.count, n);
+        System.arraycopy(add.lengths, 0, tokens.lengths, tokens.count, n);
+        System.arraycopy(add.lines, 0, tokens.lines, tokens.count, n);
+        System.arraycopy(add.syms, 0, tokens.syms, tokens.count, n);
+        System.arraycopy(add.values, 0, tokens.values, tokens.count, n);
+        tokens.count += n;
+    }
+
+    private <T> T regap(T from, T to, int tail, int at)
+    {
+        System.arraycopy(from, 0, to, 0, tokens.count);
+        System.arraycopy(from, gapEnd, to, at, tail);
+        return to;
+    }
+
+    // parks the unit gap at the unit holding the first damaged token and returns where re-parsing starts; units
+    // past the gap keep their place relative to the token count, which the token splice then shifts for them
+    private int reopenUnits(int first)
+    {
+        int lo = 0;
+        int hi = units();
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(unit(mid) <= first) lo = mid + 1;
+            else hi = mid;
+        }
+        int keep = Math.max(0, lo - 1);
+        int total = size();
+        while(unitCount > keep) units[--unitGapEnd] = units[--unitCount] - total;
+        while(unitCount < keep) units[unitCount++] = units[unitGapEnd++] + total;
+        return unitGapEnd < units.length ? units[unitGapEnd] + total : 0;
+    }
+
+    private boolean reparse(int at, int damageEnd)
+    {
+        int resume = error != null ? stuck + size() : -1;
+        reparsed = 0;
+        error = null;
+        boolean synced = false;
+        while(true)
+        {
+            fill(at);
+            if(tokens.types[at] == TokenType.END.ordinal()) break;
+            if(at >= damageEnd)
+            {
+                int total = size();
+                while(unitGapEnd < units.length && units[unitGapEnd] + total < at) unitGapEnd++;
+                if(unitGapEnd < units.length && units[unitGapEnd] + total == at)
+                {
+                    synced = true;
+                    break;
+                }
+            }
+
+            int next = parseDecl(at);
+            if(next < 0) break;
+            addUnit(at);
+            reparsed++;
+            at = next;
+        }
+
+        // past a sync the tokens are unchanged, so a failure the last parse met there still stands; without a sync
+        // every unit past the gap is stale
+        if(synced && resume >= 0)
+        {
+            fill(resume);
+            parseDecl(resume);
+        }
+        if(!synced) unitGapEnd = units.length;
+        return error == null;
+    }
+
+    private int parseDecl(int at)
+    {
+        int next;
+        try
+        {
+            next = parser.parseDecl(at);
+            if(next < 0) error = "Syntax error at token: " + tokens.token(at);
+        }
+        catch(RuntimeException e)
+        {
+            next = -1;
+            error = e.getMessage();
+        }
+        if(next < 0) stuck = at - size();
+        return next;
+    }
+
+    private void addUnit(int at)
+    {
+        if(unitCount == unitGapEnd)
+        {
+            int tail = units.length - unitGapEnd;
+            int[] grown = new int[units.length * 2];
+            System.arraycopy(units, 0, grown, 0, unitCount);
+            System.arraycopy(units, unitGapEnd, grown, grown.length - tail, tail);
+            units = grown;
+            unitGapEnd = grown.length - tail;
+        }
+        units[unitCount++] = at;
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.*;
+import java.util.*;
+
+class Ir
+{
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    final String name;
+    final int params;
+    int[] ops = new int[INITIAL_CAPACITY];
+    int[] ds = new int[INITIAL_CAPACITY];
+    int[] as = new int[INITIAL_CAPACITY];
+    int[] bs = new int[INITIAL_CAPACITY];
+    int[] cs = new int[INITIAL_CAPACITY];
+    int count = 0;
+    int registers;
+    int labels;
+    int frame;
+
+    Ir(String name, int params)
+    {
+        this.name = name;
+        this.params = params;
+    }
+
+    int add(int op, int d, int a, int b, int c)
+    {
+        if(count == ops.length)
+        {
+            int capacity = count * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            ds = Arrays.copyOf(ds, capacity);
+            as = Arrays.copyOf(as, capacity);
+            bs = Arrays.copyOf(bs, capacity);
+            cs = Arrays.copyOf(cs, capacity);
+        }
+        ops[count] = op;
+        ds[count] = d;
+        as[count] = a;
+        bs[count] = b;
+        cs[count] = c;
+        return count++;
+    }
+
+    void set(int i, int op, int d, int a, int b, int c)
+    {
+        ops[i] = op;
+        ds[i] = d;
+        as[i] = a;
+        bs[i] = b;
+        cs[i] = c;
+    }
+
+    void kill(int i)
+    {
+        set(i, IrOp.NOP, NONE, NONE, NONE, 0);
+    }
+
+    int compact()
+    {
+        int out = 0;
+        for(int i = 0; i < count; i++)
+        {
+            if(ops[i] == IrOp.NOP) continue;
+            set(out++, ops[i], ds[i], as[i], bs[i], cs[i]);
+        }
+        int removed = count - out;
+        count = out;
+        return removed;
+    }
+
+    int[] labelTargets()
+    {
+        int[] targets = new int[labels];
+        Arrays.fill(targets, NONE);
+        for(int i = 0; i < count; i++)
+        {
+            if(ops[i] == IrOp.LABEL) targets[cs[i]] = i;
+        }
+        return targets;
+    }
+
+    int[] reads()
+    {
+        int[] reads = new int[registers];
+        for(int i = 0; i < count; i++)
+        {
+            if(IrOp.readsA(ops[i])) reads[as[i]]++;
+            if(IrOp.readsB(ops[i])) reads[bs[i]]++;
+        }
+        return reads;
+    }
+
+    void dump(IrModule module, PrintStream out)
+    {
+        out.println(name + ": params " + params + ", registers " + registers + ", frame " + frame);
+        for(int i = 0; i < count; i++)
+        {
+            int op = ops[i];
+            String text;
+            switch(op)
+            {
+                case IrOp.LABEL: out.println("  L" + cs[i] + ":"); continue;
+                case IrOp.CONST_I: text = "r" + ds[i] + " = " + cs[i]; break;
+                case IrOp.CONST_D: text = "r" + ds[i] + " = " + module.reals.get(cs[i]); break;
+                case IrOp.MOV: text = "r" + ds[i] + " = r" + as[i]; break;
+                case IrOp.LOAD_G: text = "r" + ds[i] + " = load_g " + cs[i]; break;
+                case IrOp.ADDR_L: text = "r" + ds[i] + " = addr_l " + cs[i]; break;
+                case IrOp.OFFSET: text = "r" + ds[i] + " = offset r" + as[i] + " " + cs[i]; break;
+                case IrOp.INDEX: text = "r" + ds[i] + " = index r" + as[i] + " r" + bs[i] + " " + cs[i]; break;
+                case IrOp.STORE: text = "store r" + as[i] + " r" + bs[i]; break;
+                case IrOp.STORE_G: text = "store_g " + cs[i] + " r" + as[i]; break;
+                case IrOp.COPY: text = "copy r" + as[i] + " r" + bs[i] + " " + cs[i]; break;
+                case IrOp.JMP: text = "jmp L" + cs[i]; break;
+                case IrOp.JF: case IrOp.JT: text = IrOp.NAMES[op] + " r" + as[i] + " L" + cs[i]; break;
+                case IrOp.ARG: case IrOp.RET: text = IrOp.NAMES[op] + " r" + as[i]; break;
+                case IrOp.RET_V: text = "ret_v"; break;
+                case IrOp.CALL: text = (ds[i] != NONE ? "r" + ds[i] + " = " : "") + "call " + module.functions[cs[i]].name; break;
+                case IrOp.BUILTIN: text = (ds[i] != NONE ? "r" + ds[i] + " = " : "") + Builtin.values()[cs[i]].spelling; break;
+                default:
+                    text = "r" + ds[i] + " = " + IrOp.NAMES[op] + " r" + as[i] + (IrOp.binary(op) ? " r" + bs[i] : "");
+                    break;
+            }
+            out.println("    " + text);
+        }
+    }
+}
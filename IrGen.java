@@ -0,0 +1,483 @@
+import java.util.*;
+
+class IrGen
+{
+    private static final int NONE = Ast.NONE;
+
+    private static final byte GLOBAL = 0;
+    private static final byte LOCAL = 1;
+    private static final byte REF = 2;
+    private static final byte REG = 3;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Domain domain;
+    private final TypeCheck types;
+    private Layout layout;
+
+    private final DataSegment segment = new DataSegment();
+
+    private final byte[] places;
+    private final int[] addresses;
+    private final int[] functions;
+    private final List<Ir> irs = new ArrayList<>();
+    private int main = -1;
+
+    private Ir ir;
+    private int frame;
+    private int returnType;
+    private int returnBuffer;
+    private int[] breaks = new int[16];
+    private int breakCount = 0;
+
+    public IrGen(TokenStore tokens, Ast ast, Domain domain, TypeCheck types)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.domain = domain;
+        this.types = types;
+        this.places = new byte[domain.size()];
+        this.addresses = new int[domain.size()];
+        this.functions = new int[domain.size()];
+    }
+
+    public IrModule generate(int root)
+    {
+        layout = new Layout(ast, domain, types, root);
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            switch(ast.kind(n))
+            {
+                case STRUCT: break;
+                case FUNC: func(n); break;
+                default:
+                    places[domain.symbol(n)] = GLOBAL;
+                    addresses[domain.symbol(n)] = segment.allocate(layout.slots(ast.a(n)));
+                    break;
+            }
+        }
+        return new IrModule(irs.toArray(new Ir[0]), segment.reals, segment.image(), main);
+    }
+
+    private int reg()
+    {
+        return ir.registers++;
+    }
+
+    private int label()
+    {
+        return ir.labels++;
+    }
+
+    private int emit(int op, int d, int a, int b, int c)
+    {
+        ir.add(op, d, a, b, c);
+        return d;
+    }
+
+    private void local(int n)
+    {
+        int sym = domain.symbol(n);
+        if(Types.isScalar(types.symbolType(sym)))
+        {
+            places[sym] = REG;
+            addresses[sym] = reg();
+            return;
+        }
+        places[sym] = LOCAL;
+        addresses[sym] = frame;
+        frame += layout.slots(ast.a(n));
+        ir.frame = Math.max(ir.frame, frame);
+    }
+
+    private void func(int n)
+    {
+        int sym = domain.symbol(n);
+        int params = 0;
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            params += Types.isArray(types.symbolType(domain.symbol(param))) ? 2 : 1;
+        }
+
+        ir = new Ir(tokens.text(ast.token(n)), params);
+        functions[sym] = irs.size();
+        if(ir.name.equals("main")) main = irs.size();
+        irs.add(ir);
+
+        returnType = types.symbolType(sym);
+        returnBuffer = Types.isStruct(returnType) ? segment.allocate(layout.size(returnType)) : 0;
+        frame = 0;
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            places[p] = Types.isScalar(types.symbolType(p)) ? REG : REF;
+            addresses[p] = reg();
+            if(Types.isArray(types.symbolType(p))) reg();      // the element count follows the address
+        }
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            int type = types.symbolType(p);
+            if(!Types.isStruct(type) || Types.isArray(type)) continue;
+            int source = addresses[p];
+            local(param);
+            emit(IrOp.COPY, NONE, emit(IrOp.ADDR_L, reg(), NONE, NONE, addresses[p]), source, layout.size(type));
+        }
+
+        block(ast.a(ast.c(n)));
+        if(returnType == Types.VOID)
+        {
+            emit(IrOp.RET_V, NONE, NONE, NONE, 0);
+        }
+        else
+        {
+            int r;
+            if(Types.isStruct(returnType)) r = emit(IrOp.CONST_I, reg(), NONE, NONE, returnBuffer);
+            else if(returnType == Types.DOUBLE) r = emit(IrOp.CONST_D, reg(), NONE, NONE, segment.real(0));
+            else r = emit(IrOp.CONST_I, reg(), NONE, NONE, 0);
+            emit(IrOp.RET, NONE, r, NONE, 0);
+        }
+    }
+
+    private void block(int first)
+    {
+        int saved = frame;
+        for(int n = first; n != NONE; n = ast.next(n)) stm(n);
+        frame = saved;
+    }
+
+    private void stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                block(ast.a(n));
+                break;
+            case VAR:
+                local(n);
+                break;
+            case IF:
+            {
+                int otherwise = label();
+                branch(ast.a(n), false, otherwise);
+                stm(ast.b(n));
+                if(ast.c(n) != NONE)
+                {
+                    int end = label();
+                    emit(IrOp.JMP, NONE, NONE, NONE, end);
+                    emit(IrOp.LABEL, NONE, NONE, NONE, otherwise);
+                    stm(ast.c(n));
+                    emit(IrOp.LABEL, NONE, NONE, NONE, end);
+                }
+                else
+                {
+                    emit(IrOp.LABEL, NONE, NONE, NONE, otherwise);
+                }
+                break;
+            }
+            case WHILE:
+                loop(ast.a(n), ast.b(n), NONE);
+                break;
+            case FOR:
+            {
+                int head = ast.a(n);
+                if(ast.a(head) != NONE) effect(ast.a(head));
+                loop(ast.b(head), ast.b(n), ast.c(head));
+                break;
+            }
+            case BREAK:
+                if(breakCount == breaks.length) breaks = Arrays.copyOf(breaks, breakCount * 2);
+                breaks[breakCount++] = ir.add(IrOp.JMP, NONE, NONE, NONE, NONE);
+                break;
+            case RETURN:
+                ret(ast.a(n));
+                break;
+            case EXPR:
+                effect(ast.a(n));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void loop(int cond, int body, int step)
+    {
+        int base = breakCount;
+        int top = label();
+        int test = label();
+        int end = label();
+        if(cond != NONE) emit(IrOp.JMP, NONE, NONE, NONE, test);
+        emit(IrOp.LABEL, NONE, NONE, NONE, top);
+        stm(body);
+        if(step != NONE) effect(step);
+        emit(IrOp.LABEL, NONE, NONE, NONE, test);
+        if(cond != NONE) branch(cond, true, top);
+        else emit(IrOp.JMP, NONE, NONE, NONE, top);
+        emit(IrOp.LABEL, NONE, NONE, NONE, end);
+        while(breakCount > base) ir.cs[breaks[--breakCount]] = end;
+    }
+
+    private void branch(int n, boolean when, int target)
+    {
+        if(ast.kind(n) == NodeKind.UNARY && tokens.type(ast.token(n)) == TokenType.NOT)
+        {
+            branch(ast.a(n), !when, target);
+            return;
+        }
+        if(ast.kind(n) == NodeKind.BINARY)
+        {
+            TokenType op = tokens.type(ast.token(n));
+            if(op == TokenType.AND || op == TokenType.OR)
+            {
+                boolean and = op == TokenType.AND;
+                if(and != when)
+                {
+                    branch(ast.a(n), when, target);
+                    branch(ast.b(n), when, target);
+                }
+                else
+                {
+                    int skip = label();
+                    branch(ast.a(n), !when, skip);
+                    branch(ast.b(n), when, target);
+                    emit(IrOp.LABEL, NONE, NONE, NONE, skip);
+                }
+                return;
+            }
+        }
+        emit(when ? IrOp.JT : IrOp.JF, NONE, condition(n), NONE, target);
+    }
+
+    private void ret(int value)
+    {
+        if(value == NONE)
+        {
+            emit(IrOp.RET_V, NONE, NONE, NONE, 0);
+            return;
+        }
+        int r;
+        if(Types.isStruct(returnType))
+        {
+            r = emit(IrOp.CONST_I, reg(), NONE, NONE, returnBuffer);
+            emit(IrOp.COPY, NONE, r, value(value), layout.size(returnType));
+        }
+        else
+        {
+            r = convert(value(value), types.type(value), returnType);
+        }
+        emit(IrOp.RET, NONE, r, NONE, 0);
+    }
+
+    private void effect(int n)
+    {
+        if(ast.kind(n) == NodeKind.ASSIGN) assign(n);
+        else value(n);
+    }
+
+    private int condition(int n)
+    {
+        int r = value(n);
+        return types.type(n) == Types.DOUBLE ? emit(IrOp.TEST_D, reg(), r, NONE, 0) : r;
+    }
+
+    private int convert(int r, int from, int to)
+    {
+        if(from == to || !Types.isScalar(from) || !Types.isScalar(to)) return r;
+        if(to == Types.DOUBLE) return emit(IrOp.I2D, reg(), r, NONE, 0);
+        if(from == Types.DOUBLE) r = emit(IrOp.D2I, reg(), r, NONE, 0);
+        if(to == Types.CHAR) r = emit(IrOp.I2C, reg(), r, NONE, 0);
+        return r;
+    }
+
+    private int address(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                switch(places[sym])
+                {
+                    case GLOBAL: return emit(IrOp.CONST_I, reg(), NONE, NONE, addresses[sym]);
+                    case LOCAL: return emit(IrOp.ADDR_L, reg(), NONE, NONE, addresses[sym]);
+                    default: return addresses[sym];
+                }
+            }
+            case FIELD:
+            {
+                int base = value(ast.a(n));
+                int offset = layout.offset(types.type(ast.a(n)), tokens.symbol(ast.token(n)));
+                return offset != 0 ? emit(IrOp.OFFSET, reg(), base, NONE, offset) : base;
+            }
+            case INDEX:
+            {
+                int base = value(ast.a(n));
+                int index = convert(value(ast.b(n)), types.type(ast.b(n)), Types.INT);
+                return emit(IrOp.INDEX, reg(), base, index, layout.elementSize(types.type(ast.a(n))));
+            }
+            default:
+                return value(n);
+        }
+    }
+
+    private int value(int n)
+    {
+        int type = types.type(n);
+        switch(ast.kind(n))
+        {
+            case CONST:
+                if(type == Types.DOUBLE) return emit(IrOp.CONST_D, reg(), NONE, NONE, segment.real(ast.real(n)));
+                return emit(IrOp.CONST_I, reg(), NONE, NONE, ast.a(n));
+            case LITERAL:
+                return emit(IrOp.CONST_I, reg(), NONE, NONE, segment.string(tokens, ast.token(n)));
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                if(places[sym] == REG) return addresses[sym];
+                if(places[sym] == GLOBAL && Types.isScalar(type)) return emit(IrOp.LOAD_G, reg(), NONE, NONE, addresses[sym]);
+                return address(n);
+            }
+            case FIELD:
+            case INDEX:
+            {
+                int r = address(n);
+                return Types.isScalar(type) ? emit(IrOp.LOAD, reg(), r, NONE, 0) : r;
+            }
+            case CALL:
+                return call(n);
+            case CAST:
+                return convert(value(ast.b(n)), types.type(ast.b(n)), type);
+            case UNARY:
+            {
+                if(tokens.type(ast.token(n)) == TokenType.NOT) return emit(IrOp.NOT, reg(), condition(ast.a(n)), NONE, 0);
+                int r = emit(type == Types.DOUBLE ? IrOp.NEG_D : IrOp.NEG_I, reg(), value(ast.a(n)), NONE, 0);
+                return type == Types.CHAR ? emit(IrOp.I2C, reg(), r, NONE, 0) : r;
+            }
+            case BINARY:
+                return binary(n, type);
+            case ASSIGN:
+                return assign(n);
+            default:
+                return NONE;
+        }
+    }
+
+    private int binary(int n, int type)
+    {
+        TokenType op = tokens.type(ast.token(n));
+        int left = ast.a(n);
+        int right = ast.b(n);
+        if(op == TokenType.AND || op == TokenType.OR)
+        {
+            int r = reg();
+            int other = label();
+            int end = label();
+            branch(n, false, other);
+            emit(IrOp.CONST_I, r, NONE, NONE, 1);
+            emit(IrOp.JMP, NONE, NONE, NONE, end);
+            emit(IrOp.LABEL, NONE, NONE, NONE, other);
+            emit(IrOp.CONST_I, r, NONE, NONE, 0);
+            emit(IrOp.LABEL, NONE, NONE, NONE, end);
+            return r;
+        }
+
+        int operand = Types.isScalar(types.type(left)) && Types.isScalar(types.type(right)) ? Types.arith(types.type(left), types.type(right)) : Types.INT;
+        int a = convert(value(left), types.type(left), operand);
+        int b = convert(value(right), types.type(right), operand);
+        boolean real = operand == Types.DOUBLE;
+        int code;
+        switch(op)
+        {
+            case ADD: code = real ? IrOp.ADD_D : IrOp.ADD_I; break;
+            case SUB: code = real ? IrOp.SUB_D : IrOp.SUB_I; break;
+            case MUL: code = real ? IrOp.MUL_D : IrOp.MUL_I; break;
+            case DIV: code = real ? IrOp.DIV_D : IrOp.DIV_I; break;
+            case EQUAL: code = real ? IrOp.EQ_D : IrOp.EQ_I; break;
+            case NOTEQ: code = real ? IrOp.NE_D : IrOp.NE_I; break;
+            case LESS: code = real ? IrOp.LT_D : IrOp.LT_I; break;
+            case LESSEQ: code = real ? IrOp.LE_D : IrOp.LE_I; break;
+            case GREATER: code = real ? IrOp.GT_D : IrOp.GT_I; break;
+            default: code = real ? IrOp.GE_D : IrOp.GE_I; break;
+        }
+        int r = emit(code, reg(), a, b, 0);
+        return type == Types.CHAR ? emit(IrOp.I2C, reg(), r, NONE, 0) : r;
+    }
+
+    private int assign(int n)
+    {
+        int dst = ast.a(n);
+        int src = ast.b(n);
+        int type = types.type(dst);
+        if(Types.isStruct(type))
+        {
+            int to = address(dst);
+            emit(IrOp.COPY, NONE, to, value(src), layout.size(type));
+            return to;
+        }
+        if(ast.kind(dst) == NodeKind.ID)
+        {
+            int sym = domain.symbol(dst);
+            if(places[sym] == REG)
+            {
+                return emit(IrOp.MOV, addresses[sym], convert(value(src), types.type(src), type), NONE, 0);
+            }
+            if(places[sym] == GLOBAL)
+            {
+                int r = convert(value(src), types.type(src), type);
+                emit(IrOp.STORE_G, NONE, r, NONE, addresses[sym]);
+                return r;
+            }
+        }
+        int to = address(dst);
+        int r = convert(value(src), types.type(src), type);
+        emit(IrOp.STORE, NONE, to, r, 0);
+        return r;
+    }
+
+    private int call(int n)
+    {
+        int sym = domain.symbol(n);
+        int[] args = new int[8];
+        int count = 0;
+        if(domain.kind(sym) == SymbolKind.BUILTIN)
+        {
+            Builtin builtin = domain.builtin(sym);
+            for(int arg = ast.a(n), i = 0; arg != NONE; arg = ast.next(arg), i++)
+            {
+                args[count++] = convert(value(arg), types.type(arg), builtin.params[i]);
+                if(Types.isArray(builtin.params[i])) args[count++] = length(arg);
+            }
+            for(int i = 0; i < count; i++) emit(IrOp.ARG, NONE, args[i], NONE, 0);
+            return emit(IrOp.BUILTIN, builtin.ret != Types.VOID ? reg() : NONE, NONE, NONE, builtin.ordinal());
+        }
+
+        int param = ast.b(domain.node(sym));
+        for(int arg = ast.a(n); arg != NONE; arg = ast.next(arg), param = ast.next(param))
+        {
+            if(count + 2 > args.length) args = Arrays.copyOf(args, args.length * 2);
+            int type = types.symbolType(domain.symbol(param));
+            args[count++] = convert(value(arg), types.type(arg), type);
+            if(Types.isArray(type)) args[count++] = length(arg);
+        }
+        for(int i = 0; i < count; i++) emit(IrOp.ARG, NONE, args[i], NONE, 0);
+        return emit(IrOp.CALL, types.symbolType(sym) != Types.VOID ? reg() : NONE, NONE, NONE, functions[sym]);
+    }
+
+    // the register holding the element count an array argument carries after its address
+    private int length(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case LITERAL:
+                return emit(IrOp.CONST_I, reg(), NONE, NONE, DataSegment.length(tokens, ast.token(n)));
+            case CAST:
+                return length(ast.b(n));
+            default:
+            {
+                int sym = domain.symbol(n);
+                if(ast.kind(n) == NodeKind.ID && places[sym] == REF) return addresses[sym] + 1;
+                return emit(IrOp.CONST_I, reg(), NONE, NONE, layout.length(n));
+            }
+        }
+    }
+}
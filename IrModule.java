@@ -0,0 +1,34 @@
+import java.io.*;
+
+class IrModule
+{
+    final Ir[] functions;
+    final RealPool reals;
+    final long[] data;
+    final int main;
+
+    IrModule(Ir[] functions, RealPool reals, long[] data, int main)
+    {
+        this.functions = functions;
+        this.reals = reals;
+        this.data = data;
+        this.main = main;
+    }
+
+    int real(double value)
+    {
+        return reals.intern(value);
+    }
+
+    int size()
+    {
+        int size = 0;
+        for(Ir fn : functions) size += fn.count;
+        return size;
+    }
+
+    void dump(PrintStream out)
+    {
+        for(Ir fn : functions) fn.dump(this, out);
+    }
+}
@@ -0,0 +1,94 @@
+final class IrOp
+{
+    static final int NOP = 0;
+    static final int CONST_I = 1;   // d = c
+    static final int CONST_D = 2;   // d = reals[c]
+    static final int MOV = 3;       // d = a
+    static final int ADD_I = 4;     // d = a op b, through GE_D
+    static final int SUB_I = 5;
+    static final int MUL_I = 6;
+    static final int DIV_I = 7;
+    static final int ADD_D = 8;
+    static final int SUB_D = 9;
+    static final int MUL_D = 10;
+    static final int DIV_D = 11;
+    static final int EQ_I = 12;
+    static final int NE_I = 13;
+    static final int LT_I = 14;
+    static final int LE_I = 15;
+    static final int GT_I = 16;
+    static final int GE_I = 17;
+    static final int EQ_D = 18;
+    static final int NE_D = 19;
+    static final int LT_D = 20;
+    static final int LE_D = 21;
+    static final int GT_D = 22;
+    static final int GE_D = 23;
+    static final int NEG_I = 24;    // d = op a, through I2C
+    static final int NEG_D = 25;
+    static final int NOT = 26;
+    static final int TEST_D = 27;
+    static final int I2D = 28;
+    static final int D2I = 29;
+    static final int I2C = 30;
+    static final int LOAD = 31;     // d = memory[a]
+    static final int LOAD_G = 32;   // d = memory[c]
+    static final int ADDR_L = 33;   // d = frame + c
+    static final int OFFSET = 34;   // d = a + c
+    static final int INDEX = 35;    // d = a + b * c
+    static final int STORE = 36;    // memory[a] = b
+    static final int STORE_G = 37;  // memory[c] = a
+    static final int COPY = 38;     // c slots from memory[b] to memory[a]
+    static final int LABEL = 39;    // c
+    static final int JMP = 40;      // to label c
+    static final int JF = 41;       // to label c if a == 0
+    static final int JT = 42;       // to label c if a != 0
+    static final int ARG = 43;      // a
+    static final int CALL = 44;     // d = function c, d may be NONE
+    static final int BUILTIN = 45;  // d = Builtin c, d may be NONE
+    static final int RET = 46;      // a
+    static final int RET_V = 47;
+
+    static final String[] NAMES = {
+        "nop", "const_i", "const_d", "mov", "add_i", "sub_i", "mul_i", "div_i", "add_d", "sub_d", "mul_d", "div_d",
+        "eq_i", "ne_i", "lt_i", "le_i", "gt_i", "ge_i", "eq_d", "ne_d", "lt_d", "le_d", "gt_d", "ge_d",
+        "neg_i", "neg_d", "not", "test_d", "i2d", "d2i", "i2c", "load", "load_g", "addr_l", "offset", "index",
+        "store", "store_g", "copy", "label", "jmp", "jf", "jt", "arg", "call", "builtin", "ret", "ret_v"
+    };
+
+    static boolean binary(int op)
+    {
+        return op >= ADD_I && op <= GE_D;
+    }
+
+    static boolean unary(int op)
+    {
+        return op >= NEG_I && op <= I2C;
+    }
+
+    static boolean jump(int op)
+    {
+        return op >= JMP && op <= JT;
+    }
+
+    static boolean pure(int op)
+    {
+        return op >= CONST_I && op <= INDEX && op != DIV_I;
+    }
+
+    static boolean writesD(int op)
+    {
+        return op >= CONST_I && op <= INDEX || op == CALL || op == BUILTIN;
+    }
+
+    static boolean readsA(int op)
+    {
+        return op == MOV || binary(op) || unary(op) || op == LOAD || op == OFFSET || op == INDEX || op == STORE || op == STORE_G
+            || op == COPY || op == JF || op == JT || op == ARG || op == RET;
+    }
+
+    static boolean readsB(int op)
+    {
+        return binary(op) || op == INDEX || op == STORE || op == COPY;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.*;
+
+enum IrPass
+{
+    CONSTANTS("constants"),
+    PEEPHOLE("peephole"),
+    JUMPS("jumps"),
+    DEAD_CODE("dead");
+
+    final String flag;
+
+    IrPass(String flag)
+    {
+        this.flag = flag;
+    }
+
+    static EnumSet<IrPass> parse(String list)
+    {
+        EnumSet<IrPass> passes = EnumSet.noneOf(IrPass.class);
+        for(String name : list.split(","))
+        {
+            if(name.isEmpty() || name.equals("none")) continue;
+            if(name.equals("all")) return EnumSet.allOf(IrPass.class);
+            boolean found = false;
+            for(IrPass pass : values())
+            {
+                if(pass.flag.equals(name))
+                {
+                    passes.add(pass);
+                    found = true;
+                }
+            }
+            if(!found) throw new IllegalArgumentException("unknown pass: " + name);
+        }
+        return passes;
+    }
+}
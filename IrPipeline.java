@@ -0,0 +1,498 @@
+import java.io.*;
+import java.util.*;
+
+class IrPipeline
+{
+    private static final IrPass[] PASSES = IrPass.values();
+
+    private final EnumSet<IrPass> enabled;
+    private final long[] nanos = new long[PASSES.length];
+    private final int[] removed = new int[PASSES.length];
+    private final int[] rewritten = new int[PASSES.length];
+
+    public IrPipeline(EnumSet<IrPass> enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public IrModule run(IrModule module)
+    {
+        for(IrPass pass : PASSES)
+        {
+            if(!enabled.contains(pass)) continue;
+            long start = System.nanoTime();
+            int changes = 0;
+            int before = module.size();
+            for(Ir fn : module.functions)
+            {
+                switch(pass)
+                {
+                    case CONSTANTS: changes += constants(module, fn); break;
+                    case PEEPHOLE: changes += peephole(fn); break;
+                    case JUMPS: changes += jumps(fn); break;
+                    case DEAD_CODE: changes += deadCode(fn); break;
+                }
+                fn.compact();
+            }
+            nanos[pass.ordinal()] += System.nanoTime() - start;
+            removed[pass.ordinal()] += before - module.size();
+            rewritten[pass.ordinal()] += changes;
+        }
+        return module;
+    }
+
+    public long nanos(IrPass pass)
+    {
+        return nanos[pass.ordinal()];
+    }
+
+    public void report(PrintStream out)
+    {
+        for(IrPass pass : PASSES)
+        {
+            if(!enabled.contains(pass)) continue;
+            int i = pass.ordinal();
+            out.printf("%-10s %9.3f ms  %6d rewritten  %6d removed%n", pass.flag, nanos[i] / 1e6, rewritten[i], removed[i]);
+        }
+    }
+
+    static int constants(IrModule module, Ir fn)
+    {
+        boolean[] known = new boolean[fn.registers];
+        boolean[] real = new boolean[fn.registers];
+        long[] values = new long[fn.registers];
+        int changes = 0;
+        for(int i = 0; i < fn.count; i++)
+        {
+            int op = fn.ops[i];
+            int d = fn.ds[i];
+            if(op == IrOp.LABEL)
+            {
+                Arrays.fill(known, false);
+                continue;
+            }
+            if((op == IrOp.JF || op == IrOp.JT) && known[fn.as[i]])
+            {
+                boolean taken = (values[fn.as[i]] != 0) == (op == IrOp.JT);
+                if(taken) fn.set(i, IrOp.JMP, Ir.NONE, Ir.NONE, Ir.NONE, fn.cs[i]);
+                else fn.kill(i);
+                changes++;
+                continue;
+            }
+            if(!IrOp.writesD(op) || d == Ir.NONE) continue;
+
+            boolean a = IrOp.readsA(op) && known[fn.as[i]];
+            boolean b = IrOp.readsB(op) && known[fn.bs[i]];
+            long x = a ? values[fn.as[i]] : 0;
+            long y = b ? values[fn.bs[i]] : 0;
+            known[d] = false;
+            switch(op)
+            {
+                case IrOp.CONST_I:
+                    known[d] = true;
+                    real[d] = false;
+                    values[d] = fn.cs[i];
+                    continue;
+                case IrOp.CONST_D:
+                    known[d] = true;
+                    real[d] = true;
+                    values[d] = Double.doubleToRawLongBits(module.reals.get(fn.cs[i]));
+                    continue;
+                case IrOp.MOV:
+                    if(!a) continue;
+                    boolean isReal = real[fn.as[i]];
+                    known[d] = true;
+                    real[d] = isReal;
+                    values[d] = x;
+                    if(isReal) fn.set(i, IrOp.CONST_D, d, Ir.NONE, Ir.NONE, module.real(Double.longBitsToDouble(x)));
+                    else fn.set(i, IrOp.CONST_I, d, Ir.NONE, Ir.NONE, (int)x);
+                    changes++;
+                    continue;
+                default:
+                    break;
+            }
+
+            if(IrOp.binary(op) && a && b || IrOp.unary(op) && a)
+            {
+                long folded;
+                if(op == IrOp.DIV_I && y == 0) continue;
+                folded = fold(op, x, y);
+                known[d] = true;
+                real[d] = producesReal(op);
+                values[d] = folded;
+                if(real[d]) fn.set(i, IrOp.CONST_D, d, Ir.NONE, Ir.NONE, module.real(Double.longBitsToDouble(folded)));
+                else fn.set(i, IrOp.CONST_I, d, Ir.NONE, Ir.NONE, (int)folded);
+                changes++;
+                continue;
+            }
+
+            if((op == IrOp.ADD_I || op == IrOp.SUB_I) && b && y == 0 || op == IrOp.MUL_I && b && y == 1)
+            {
+                fn.set(i, IrOp.MOV, d, fn.as[i], Ir.NONE, 0);
+                changes++;
+            }
+            else if((op == IrOp.ADD_I || op == IrOp.MUL_I) && a && x == (op == IrOp.ADD_I ? 0 : 1))
+            {
+                fn.set(i, IrOp.MOV, d, fn.bs[i], Ir.NONE, 0);
+                changes++;
+            }
+            else if(op == IrOp.OFFSET && fn.cs[i] == 0)
+            {
+                fn.set(i, IrOp.MOV, d, fn.as[i], Ir.NONE, 0);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static boolean producesReal(int op)
+    {
+        return op >= IrOp.ADD_D && op <= IrOp.DIV_D || op == IrOp.NEG_D || op == IrOp.I2D;
+    }
+
+    private static long fold(int op, long x, long y)
+    {
+        double p = Double.longBitsToDouble(x);
+        double q = Double.longBitsToDouble(y);
+        switch(op)
+        {
+            case IrOp.ADD_I: return (int)(x + y);
+            case IrOp.SUB_I: return (int)(x - y);
+            case IrOp.MUL_I: return (int)(x * y);
+            case IrOp.DIV_I: return (int)x / (int)y;
+            case IrOp.ADD_D: return Double.doubleToRawLongBits(p + q);
+            case IrOp.SUB_D: return Double.doubleToRawLongBits(p - q);
+            case IrOp.MUL_D: return Double.doubleToRawLongBits(p * q);
+            case IrOp.DIV_D: return Double.doubleToRawLongBits(p / q);
+            case IrOp.EQ_I: return x == y ? 1 : 0;
+            case IrOp.NE_I: return x != y ? 1 : 0;
+            case IrOp.LT_I: return x < y ? 1 : 0;
+            case IrOp.LE_I: return x <= y ? 1 : 0;
+            case IrOp.GT_I: return x > y ? 1 : 0;
+            case IrOp.GE_I: return x >= y ? 1 : 0;
+            case IrOp.EQ_D: return p == q ? 1 : 0;
+            case IrOp.NE_D: return p != q ? 1 : 0;
+            case IrOp.LT_D: return p < q ? 1 : 0;
+            case IrOp.LE_D: return p <= q ? 1 : 0;
+            case IrOp.GT_D: return p > q ? 1 : 0;
+            case IrOp.GE_D: return p >= q ? 1 : 0;
+            case IrOp.NEG_I: return -(int)x;
+            case IrOp.NEG_D: return Double.doubleToRawLongBits(-p);
+            case IrOp.NOT: return x == 0 ? 1 : 0;
+            case IrOp.TEST_D: return p != 0 ? 1 : 0;
+            case IrOp.I2D: return Double.doubleToRawLongBits(x);
+            case IrOp.D2I: return (int)p;
+            default: return (byte)x;
+        }
+    }
+
+    static int peephole(Ir fn)
+    {
+        int changes = 0;
+        int[] reads = fn.reads();
+        int[] defs = new int[fn.registers];
+        for(int i = 0; i < fn.count; i++)
+        {
+            if(IrOp.writesD(fn.ops[i]) && fn.ds[i] != Ir.NONE) defs[fn.ds[i]]++;
+        }
+        int[] copies = new int[fn.registers];
+        Arrays.fill(copies, Ir.NONE);
+        int[] copied = new int[16];
+        int copyCount = 0;
+        int[] addrs = new int[16];
+        int[] regs = new int[16];
+        boolean[] global = new boolean[16];
+        int known = 0;
+        for(int i = 0; i < fn.count; i++)
+        {
+            int op = fn.ops[i];
+            if(op == IrOp.LABEL)
+            {
+                known = 0;
+                for(int k = 0; k < copyCount; k++) copies[copied[k]] = Ir.NONE;
+                copyCount = 0;
+                continue;
+            }
+            if(IrOp.readsA(op) && copies[fn.as[i]] != Ir.NONE)
+            {
+                reads[fn.as[i]]--;
+                fn.as[i] = copies[fn.as[i]];
+                reads[fn.as[i]]++;
+                changes++;
+            }
+            if(IrOp.readsB(op) && copies[fn.bs[i]] != Ir.NONE)
+            {
+                reads[fn.bs[i]]--;
+                fn.bs[i] = copies[fn.bs[i]];
+                reads[fn.bs[i]]++;
+                changes++;
+            }
+            if(op == IrOp.MOV && fn.ds[i] == fn.as[i])
+            {
+                fn.kill(i);
+                changes++;
+                continue;
+            }
+
+            int d = IrOp.writesD(op) ? fn.ds[i] : Ir.NONE;
+            if(op == IrOp.MOV && i > 0 && reads[fn.as[i]] == 1 && defs[fn.as[i]] == 1 && fn.ds[i - 1] == fn.as[i]
+                && IrOp.writesD(fn.ops[i - 1]))
+            {
+                int temp = fn.as[i];
+                reads[temp]--;
+                defs[temp]--;
+                fn.ds[i - 1] = d;
+                fn.kill(i);
+                changes++;
+                copyCount = uncopy(copies, copied, copyCount, d);
+                known = forget(addrs, regs, global, known, d);
+                for(int k = 0; k < known; k++)
+                {
+                    if(regs[k] == temp) regs[k] = d;
+                    if(!global[k] && addrs[k] == temp) addrs[k] = d;
+                }
+                continue;
+            }
+
+            if(d != Ir.NONE)
+            {
+                copyCount = uncopy(copies, copied, copyCount, d);
+                known = forget(addrs, regs, global, known, d);
+            }
+
+            switch(op)
+            {
+                case IrOp.MOV:
+                    if(copyCount < copied.length)
+                    {
+                        copies[d] = fn.as[i];
+                        copied[copyCount++] = d;
+                    }
+                    break;
+                case IrOp.CALL:
+                case IrOp.BUILTIN:
+                case IrOp.COPY:
+                    known = 0;
+                    break;
+                case IrOp.LOAD:
+                case IrOp.LOAD_G:
+                {
+                    boolean g = op == IrOp.LOAD_G;
+                    int addr = g ? fn.cs[i] : fn.as[i];
+                    int hit = find(addrs, global, known, addr, g);
+                    if(hit >= 0)
+                    {
+                        fn.set(i, IrOp.MOV, d, regs[hit], Ir.NONE, 0);
+                        reads[regs[hit]]++;
+                        if(!g) reads[addr]--;
+                        if(copyCount < copied.length)
+                        {
+                            copies[d] = regs[hit];
+                            copied[copyCount++] = d;
+                        }
+                        changes++;
+                    }
+                    else if(addr != d && known < addrs.length)
+                    {
+                        addrs[known] = addr;
+                        regs[known] = d;
+                        global[known++] = g;
+                    }
+                    break;
+                }
+                case IrOp.STORE:
+                case IrOp.STORE_G:
+                {
+                    boolean g = op == IrOp.STORE_G;
+                    int addr = g ? fn.cs[i] : fn.as[i];
+                    int value = g ? fn.as[i] : fn.bs[i];
+                    int hit = find(addrs, global, known, addr, g);
+                    if(hit >= 0 && regs[hit] == value)
+                    {
+                        reads[value]--;
+                        if(!g) reads[addr]--;
+                        fn.kill(i);
+                        changes++;
+                        break;
+                    }
+                    int k = 0;
+                    for(int j = 0; j < known; j++)
+                    {
+                        if(g && global[j] && addrs[j] != addr)
+                        {
+                            addrs[k] = addrs[j];
+                            regs[k] = regs[j];
+                            global[k++] = true;
+                        }
+                    }
+                    known = k;
+                    if(known < addrs.length)
+                    {
+                        addrs[known] = addr;
+                        regs[known] = value;
+                        global[known++] = g;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        for(int i = 0; i < fn.count; i++)
+        {
+            if(fn.ops[i] == IrOp.STORE_G && overwritten(fn, i))
+            {
+                fn.kill(i);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static int uncopy(int[] copies, int[] copied, int count, int reg)
+    {
+        int k = 0;
+        for(int j = 0; j < count; j++)
+        {
+            int target = copied[j];
+            if(target == reg || copies[target] == reg) copies[target] = Ir.NONE;
+            else copied[k++] = target;
+        }
+        return k;
+    }
+
+    private static boolean overwritten(Ir fn, int store)
+    {
+        int addr = fn.cs[store];
+        for(int i = store + 1; i < fn.count; i++)
+        {
+            int op = fn.ops[i];
+            if(op == IrOp.STORE_G && fn.cs[i] == addr) return true;
+            if(op == IrOp.LOAD_G && fn.cs[i] == addr || op == IrOp.LOAD || op == IrOp.COPY || op == IrOp.CALL || op == IrOp.BUILTIN
+                || op == IrOp.LABEL || IrOp.jump(op) || op == IrOp.RET || op == IrOp.RET_V) return false;
+        }
+        return false;
+    }
+
+    private static int find(int[] addrs, boolean[] global, int known, int addr, boolean g)
+    {
+        for(int k = 0; k < known; k++)
+        {
+            if(addrs[k] == addr && global[k] == g) return k;
+        }
+        return -1;
+    }
+
+    private static int forget(int[] addrs, int[] regs, boolean[] global, int known, int reg)
+    {
+        int k = 0;
+        for(int j = 0; j < known; j++)
+        {
+            if(regs[j] == reg || !global[j] && addrs[j] == reg) continue;
+            addrs[k] = addrs[j];
+            regs[k] = regs[j];
+            global[k++] = global[j];
+        }
+        return k;
+    }
+
+    static int deadCode(Ir fn)
+    {
+        int changes = 0;
+        boolean progress = true;
+        while(progress)
+        {
+            progress = false;
+            boolean[] referenced = new boolean[fn.labels];
+            for(int i = 0; i < fn.count; i++)
+            {
+                if(IrOp.jump(fn.ops[i])) referenced[fn.cs[i]] = true;
+            }
+
+            boolean reachable = true;
+            for(int i = 0; i < fn.count; i++)
+            {
+                int op = fn.ops[i];
+                if(op == IrOp.LABEL)
+                {
+                    if(referenced[fn.cs[i]])
+                    {
+                        reachable = true;
+                        continue;
+                    }
+                    fn.kill(i);
+                    changes++;
+                    progress = true;
+                    continue;
+                }
+                if(!reachable && op != IrOp.NOP)
+                {
+                    fn.kill(i);
+                    changes++;
+                    progress = true;
+                    continue;
+                }
+                if(op == IrOp.JMP || op == IrOp.RET || op == IrOp.RET_V) reachable = false;
+            }
+
+            int[] reads = fn.reads();
+            for(int i = 0; i < fn.count; i++)
+            {
+                int op = fn.ops[i];
+                if(IrOp.pure(op) && reads[fn.ds[i]] == 0)
+                {
+                    fn.kill(i);
+                    changes++;
+                    progress = true;
+                }
+            }
+        }
+        return changes;
+    }
+
+    static int jumps(Ir fn)
+    {
+        int changes = 0;
+        int[] targets = fn.labelTargets();
+        for(int i = 0; i < fn.count; i++)
+        {
+            int op = fn.ops[i];
+            if(!IrOp.jump(op)) continue;
+
+            int label = fn.cs[i];
+            for(int hops = 0; hops < 8; hops++)
+            {
+                int next = skipLabels(fn, targets[label]);
+                if(next >= fn.count || fn.ops[next] != IrOp.JMP || fn.cs[next] == label) break;
+                label = fn.cs[next];
+            }
+            if(label != fn.cs[i])
+            {
+                fn.cs[i] = label;
+                changes++;
+            }
+
+            int next = skipLabels(fn, i + 1);
+            if(targets[label] < next && targets[label] > i)
+            {
+                fn.kill(i);
+                changes++;
+            }
+            else if(op != IrOp.JMP && next == i + 1 && next < fn.count && fn.ops[next] == IrOp.JMP && targets[label] > next
+                && skipLabels(fn, next + 1) > targets[label])
+            {
+                fn.set(i, op == IrOp.JF ? IrOp.JT : IrOp.JF, Ir.NONE, fn.as[i], Ir.NONE, fn.cs[next]);
+                fn.kill(next);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static int skipLabels(Ir fn, int i)
+    {
+        while(i < fn.count && (fn.ops[i] == IrOp.LABEL || fn.ops[i] == IrOp.NOP)) i++;
+        return i;
+    }
+}
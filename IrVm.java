@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.*;
+
+class IrVm
+{
+    private static final Builtin[] BUILTINS = Builtin.values();
+    private static final int NONE = Ir.NONE;
+
+    private final IrModule module;
+    private final int[][] codes;
+    private final int[] registerCounts;
+    private final long[] memory;
+    private final long[] registers;
+    private final long[] args = new long[1 << 10];
+    private final int[] returns;
+    private final BuiltinIo io = new BuiltinIo();
+
+    public IrVm(IrModule module)
+    {
+        this(module, 1 << 20, 1 << 16);
+    }
+
+    public IrVm(IrModule module, int memorySlots, int maxDepth)
+    {
+        this.module = module;
+        int n = module.functions.length;
+        codes = new int[n][];
+        registerCounts = new int[n];
+        for(int f = 0; f < n; f++)
+        {
+            Ir fn = module.functions[f];
+            int[] targets = new int[fn.labels];
+            int size = 0;
+            for(int i = 0; i < fn.count; i++)
+            {
+                if(fn.ops[i] == IrOp.LABEL) targets[fn.cs[i]] = size * 5;
+                else if(fn.ops[i] != IrOp.NOP) size++;
+            }
+            int[] code = new int[size * 5];
+            int pc = 0;
+            for(int i = 0; i < fn.count; i++)
+            {
+                if(fn.ops[i] == IrOp.LABEL || fn.ops[i] == IrOp.NOP) continue;
+                code[pc] = fn.ops[i];
+                code[pc + 1] = fn.ds[i];
+                code[pc + 2] = fn.as[i];
+                code[pc + 3] = fn.bs[i];
+                code[pc + 4] = IrOp.jump(fn.ops[i]) ? targets[fn.cs[i]] : fn.cs[i];
+                pc += 5;
+            }
+            codes[f] = code;
+            registerCounts[f] = fn.registers;
+        }
+        this.memory = new long[memorySlots];
+        this.registers = new long[memorySlots];
+        this.returns = new int[maxDepth * 6];
+    }
+
+    public IrVm input(BufferedReader in)
+    {
+        io.in = in;
+        return this;
+    }
+
+    public IrVm output(PrintStream out)
+    {
+        io.out = out;
+        return this;
+    }
+
+    public long run()
+    {
+        if(module.main < 0) throw new IllegalStateException("the program has no main function");
+
+        final double[] reals = module.reals.toArray();
+        final long[] memory = this.memory;
+        final long[] r = this.registers;
+        final long[] args = this.args;
+        final int[] returns = this.returns;
+
+        Arrays.fill(memory, 0, module.data.length, 0);
+        System.arraycopy(module.data, 0, memory, 0, module.data.length);
+
+        int f = module.main;
+        int[] code = codes[f];
+        int fp = module.data.length;
+        int top = fp + module.functions[f].frame;
+        int rp = 0;
+        int argc = 0;
+        int depth = 0;
+        int pc = 0;
+
+        while(true)
+        {
+            int i = pc;
+            pc += 5;
+            switch(code[i])
+            {
+                case IrOp.NOP: case IrOp.LABEL: break;
+                case IrOp.CONST_I: r[rp + code[i + 1]] = code[i + 4]; break;
+                case IrOp.CONST_D: r[rp + code[i + 1]] = Double.doubleToRawLongBits(reals[code[i + 4]]); break;
+                case IrOp.MOV: r[rp + code[i + 1]] = r[rp + code[i + 2]]; break;
+                case IrOp.ADD_I: r[rp + code[i + 1]] = (int)(r[rp + code[i + 2]] + r[rp + code[i + 3]]); break;
+                case IrOp.SUB_I: r[rp + code[i + 1]] = (int)(r[rp + code[i + 2]] - r[rp + code[i + 3]]); break;
+                case IrOp.MUL_I: r[rp + code[i + 1]] = (int)(r[rp + code[i + 2]] * r[rp + code[i + 3]]); break;
+                case IrOp.DIV_I: r[rp + code[i + 1]] = (int)r[rp + code[i + 2]] / (int)r[rp + code[i + 3]]; break;
+                case IrOp.ADD_D: r[rp + code[i + 1]] = bits(real(r[rp + code[i + 2]]) + real(r[rp + code[i + 3]])); break;
+                case IrOp.SUB_D: r[rp + code[i + 1]] = bits(real(r[rp + code[i + 2]]) - real(r[rp + code[i + 3]])); break;
+                case IrOp.MUL_D: r[rp + code[i + 1]] = bits(real(r[rp + code[i + 2]]) * real(r[rp + code[i + 3]])); break;
+                case IrOp.DIV_D: r[rp + code[i + 1]] = bits(real(r[rp + code[i + 2]]) / real(r[rp + code[i + 3]])); break;
+                case IrOp.EQ_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] == r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.NE_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] != r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.LT_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] < r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.LE_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] <= r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.GT_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] > r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.GE_I: r[rp + code[i + 1]] = r[rp + code[i + 2]] >= r[rp + code[i + 3]] ? 1 : 0; break;
+                case IrOp.EQ_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) == real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.NE_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) != real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.LT_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) < real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.LE_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) <= real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.GT_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) > real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.GE_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) >= real(r[rp + code[i + 3]]) ? 1 : 0; break;
+                case IrOp.NEG_I: r[rp + code[i + 1]] = -(int)r[rp + code[i + 2]]; break;
+                case IrOp.NEG_D: r[rp + code[i + 1]] = bits(-real(r[rp + code[i + 2]])); break;
+                case IrOp.NOT: r[rp + code[i + 1]] = r[rp + code[i + 2]] == 0 ? 1 : 0; break;
+                case IrOp.TEST_D: r[rp + code[i + 1]] = real(r[rp + code[i + 2]]) != 0 ? 1 : 0; break;
+                case IrOp.I2D: r[rp + code[i + 1]] = bits(r[rp + code[i + 2]]); break;
+                case IrOp.D2I: r[rp + code[i + 1]] = (int)real(r[rp + code[i + 2]]); break;
+                case IrOp.I2C: r[rp + code[i + 1]] = (byte)r[rp + code[i + 2]]; break;
+                case IrOp.LOAD: r[rp + code[i + 1]] = memory[(int)r[rp + code[i + 2]]]; break;
+                case IrOp.LOAD_G: r[rp + code[i + 1]] = memory[code[i + 4]]; break;
+                case IrOp.ADDR_L: r[rp + code[i + 1]] = fp + code[i + 4]; break;
+                case IrOp.OFFSET: r[rp + code[i + 1]] = r[rp + code[i + 2]] + code[i + 4]; break;
+                case IrOp.INDEX: r[rp + code[i + 1]] = r[rp + code[i + 2]] + r[rp + code[i + 3]] * code[i + 4]; break;
+                case IrOp.STORE: memory[(int)r[rp + code[i + 2]]] = r[rp + code[i + 3]]; break;
+                case IrOp.STORE_G: memory[code[i + 4]] = r[rp + code[i + 2]]; break;
+                case IrOp.COPY: System.arraycopy(memory, (int)r[rp + code[i + 3]], memory, (int)r[rp + code[i + 2]], code[i + 4]); break;
+                case IrOp.JMP: pc = code[i + 4]; break;
+                case IrOp.JF: if(r[rp + code[i + 2]] == 0) pc = code[i + 4]; break;
+                case IrOp.JT: if(r[rp + code[i + 2]] != 0) pc = code[i + 4]; break;
+                case IrOp.ARG: args[argc++] = r[rp + code[i + 2]]; break;
+                case IrOp.BUILTIN:
+                {
+                    long result = io.call(BUILTINS[code[i + 4]], memory, args, argc);
+                    argc -= BUILTINS[code[i + 4]].arity;
+                    if(code[i + 1] != NONE) r[rp + code[i + 1]] = result;
+                    break;
+                }
+                case IrOp.CALL:
+                {
+                    if(depth * 6 == returns.length) throw new IllegalStateException("stack overflow");
+                    int callee = code[i + 4];
+                    Ir fn = module.functions[callee];
+                    int base = depth * 6;
+                    returns[base] = f;
+                    returns[base + 1] = pc;
+                    returns[base + 2] = rp;
+                    returns[base + 3] = fp;
+                    returns[base + 4] = top;
+                    returns[base + 5] = code[i + 1];
+                    depth++;
+                    rp += registerCounts[f];
+                    if(rp + fn.registers > r.length) throw new IllegalStateException("stack overflow");
+                    argc -= fn.params;
+                    System.arraycopy(args, argc, r, rp, fn.params);
+                    fp = top;
+                    top = fp + fn.frame;
+                    if(top > memory.length) throw new IllegalStateException("stack overflow");
+                    f = callee;
+                    code = codes[f];
+                    pc = 0;
+                    break;
+                }
+                case IrOp.RET:
+                case IrOp.RET_V:
+                {
+                    long result = code[i] == IrOp.RET ? r[rp + code[i + 2]] : 0;
+                    if(depth == 0)
+                    {
+                        io.out.flush();
+                        return result;
+                    }
+                    depth--;
+                    int base = depth * 6;
+                    f = returns[base];
+                    pc = returns[base + 1];
+                    rp = returns[base + 2];
+                    fp = returns[base + 3];
+                    top = returns[base + 4];
+                    code = codes[f];
+                    if(returns[base + 5] != NONE) r[rp + returns[base + 5]] = result;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("bad IR opcode " + code[i] + " in " + module.functions[f].name);
+            }
+        }
+    }
+
+    private static double real(long bits)
+    {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value)
+    {
+        return Double.doubleToRawLongBits(value);
+    }
+}
@@ -0,0 +1,95 @@
+final class Jvm
+{
+    static final int ACONST_NULL = 1;
+    static final int ICONST_0 = 3;
+    static final int DCONST_0 = 14;
+    static final int DCONST_1 = 15;
+    static final int BIPUSH = 16;
+    static final int SIPUSH = 17;
+    static final int LDC = 18;
+    static final int LDC_W = 19;
+    static final int LDC2_W = 20;
+    static final int ILOAD = 21;
+    static final int DLOAD = 24;
+    static final int ALOAD = 25;
+    static final int IALOAD = 46;
+    static final int DALOAD = 49;
+    static final int BALOAD = 51;
+    static final int ISTORE = 54;
+    static final int DSTORE = 57;
+    static final int ASTORE = 58;
+    static final int IASTORE = 79;
+    static final int DASTORE = 82;
+    static final int BASTORE = 84;
+    static final int POP = 87;
+    static final int POP2 = 88;
+    static final int DUP = 89;
+    static final int DUP_X2 = 91;
+    static final int DUP2 = 92;
+    static final int DUP2_X2 = 94;
+    static final int IADD = 96;
+    static final int DADD = 99;
+    static final int ISUB = 100;
+    static final int DSUB = 103;
+    static final int IMUL = 104;
+    static final int DMUL = 107;
+    static final int IDIV = 108;
+    static final int DDIV = 111;
+    static final int INEG = 116;
+    static final int DNEG = 119;
+    static final int I2D = 135;
+    static final int D2I = 142;
+    static final int I2B = 145;
+    static final int DCMPL = 151;
+    static final int DCMPG = 152;
+    static final int IFEQ = 153;    // IFEQ..IFLE pop one int, IF_ICMPEQ..IF_ICMPLE pop two
+    static final int IFNE = 154;
+    static final int IFLT = 155;
+    static final int IFGE = 156;
+    static final int IFGT = 157;
+    static final int IFLE = 158;
+    static final int IF_ICMPEQ = 159;
+    static final int IF_ICMPNE = 160;
+    static final int IF_ICMPLT = 161;
+    static final int IF_ICMPGE = 162;
+    static final int IF_ICMPGT = 163;
+    static final int IF_ICMPLE = 164;
+    static final int GOTO = 167;
+    static final int IRETURN = 172;
+    static final int DRETURN = 175;
+    static final int RETURN = 177;
+    static final int GETSTATIC = 178;
+    static final int PUTSTATIC = 179;
+    static final int INVOKESTATIC = 184;
+    static final int NEWARRAY = 188;
+    static final int WIDE = 196;
+
+    static final int T_DOUBLE = 7;
+    static final int T_BYTE = 8;
+    static final int T_INT = 10;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_SUPER = 0x0020;
+
+    static int negate(int branch)
+    {
+        if(branch >= IFEQ && branch <= IFLE) return IFEQ + ((branch - IFEQ) ^ 1);
+        return IF_ICMPEQ + ((branch - IF_ICMPEQ) ^ 1);
+    }
+
+    static int delta(int op)
+    {
+        switch(op)
+        {
+            case ACONST_NULL: case DUP: case DUP_X2: case I2D: return 1;
+            case DCONST_0: case DCONST_1: case DUP2: case DUP2_X2: return 2;
+            case INEG: case DNEG: case I2B: case NEWARRAY: case DALOAD: case RETURN: return 0;
+            case POP: case IADD: case ISUB: case IMUL: case IDIV: case IALOAD: case BALOAD: case D2I: case IRETURN: return -1;
+            case POP2: case DADD: case DSUB: case DMUL: case DDIV: case DRETURN: return -2;
+            case DCMPL: case DCMPG: case IASTORE: case BASTORE: return -3;
+            case DASTORE: return -4;
+            default: throw new IllegalArgumentException("no stack effect for opcode " + op);
+        }
+    }
+}
@@ -0,0 +1,558 @@
+import java.util.*;
+
+class JvmGen
+{
+    static final String CLASS = "AtomProgram";
+    private static final String RUNTIME = "JvmRuntime";
+    private static final String RESET = "$reset";
+    private static final int NONE = Ast.NONE;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Domain domain;
+    private final TypeCheck types;
+    private final ClassFile cls = new ClassFile(CLASS);
+
+    private final boolean[] globals;
+    private final int[] slots;
+    private final List<String> strings = new ArrayList<>();
+
+    private Code code;
+    private int returnType;
+    private int loopEnd = NONE;
+
+    public JvmGen(TokenStore tokens, Ast ast, Domain domain, TypeCheck types)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.domain = domain;
+        this.types = types;
+        this.globals = new boolean[domain.size()];
+        this.slots = new int[domain.size()];
+    }
+
+    public JvmProgram generate(int root)
+    {
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            if(ast.kind(n) == NodeKind.STRUCT) throw new IllegalStateException("structs are not supported by the JVM backend");
+        }
+
+        List<Integer> vars = new ArrayList<>();
+        int mainType = NONE;
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            if(ast.kind(n) == NodeKind.FUNC)
+            {
+                func(n);
+                if(tokens.text(ast.token(n)).equals("main")) mainType = types.symbolType(domain.symbol(n));
+                continue;
+            }
+            int sym = domain.symbol(n);
+            globals[sym] = true;
+            cls.addField(Jvm.ACC_PUBLIC | Jvm.ACC_STATIC, name(n), descriptor(types.symbolType(sym)));
+            vars.add(n);
+        }
+
+        code = new Code();
+        for(int n : vars)
+        {
+            initialize(ast.a(n), types.symbolType(domain.symbol(n)));
+            code.member(Jvm.PUTSTATIC, cls.field(CLASS, name(n), descriptor(types.symbolType(domain.symbol(n)))), types.symbolType(domain.symbol(n)) == Types.DOUBLE ? -2 : -1);
+        }
+        for(int i = 0; i < strings.size(); i++)
+        {
+            code.ldc(cls.string(strings.get(i)));
+            code.member(Jvm.INVOKESTATIC, cls.method(RUNTIME, "bytes", "(Ljava/lang/String;)[B"), 0);
+            code.member(Jvm.PUTSTATIC, cls.field(CLASS, "$s" + i, "[B"), -1);
+            cls.addField(Jvm.ACC_PUBLIC | Jvm.ACC_STATIC, "$s" + i, "[B");
+        }
+        code.op(Jvm.RETURN);
+        cls.addMethod(Jvm.ACC_PUBLIC | Jvm.ACC_STATIC, RESET, "()V", code);
+        return new JvmProgram(cls.toBytes(), mainType);
+    }
+
+    private String name(int n)
+    {
+        return tokens.text(ast.token(n));
+    }
+
+    private static String descriptor(int type)
+    {
+        switch(type)
+        {
+            case Types.VOID: return "V";
+            case Types.DOUBLE: return "D";
+            case Types.INT_ARRAY: return "[I";
+            case Types.DOUBLE_ARRAY: return "[D";
+            case Types.CHAR_ARRAY: return "[B";
+            default: return "I";
+        }
+    }
+
+    private String descriptor(int fn, int returns)
+    {
+        StringBuilder text = new StringBuilder("(");
+        for(int param = ast.b(fn); param != NONE; param = ast.next(param)) text.append(descriptor(types.symbolType(domain.symbol(param))));
+        return text.append(')').append(descriptor(returns)).toString();
+    }
+
+    private static int words(int type)
+    {
+        return type == Types.DOUBLE ? 2 : 1;
+    }
+
+    private void initialize(int typeNode, int type)
+    {
+        if(!Types.isArray(type))
+        {
+            if(type == Types.DOUBLE) code.op(Jvm.DCONST_0);
+            else code.iconst(0);
+            return;
+        }
+        int size = ast.a(typeNode);
+        constant(size != NONE ? ast.a(size) : 1);
+        int element = Types.element(type);
+        code.newarray(element == Types.DOUBLE ? Jvm.T_DOUBLE : element == Types.CHAR ? Jvm.T_BYTE : Jvm.T_INT);
+    }
+
+    private void constant(int value)
+    {
+        if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) code.iconst(value);
+        else code.ldc(cls.integer(value));
+    }
+
+    private void func(int n)
+    {
+        int sym = domain.symbol(n);
+        returnType = types.symbolType(sym);
+        code = new Code();
+        int slot = 0;
+        for(int param = ast.b(n); param != NONE; param = ast.next(param))
+        {
+            int p = domain.symbol(param);
+            slots[p] = slot;
+            slot += words(types.symbolType(p));
+        }
+        code.maxLocals = slot;
+
+        code.member(Jvm.INVOKESTATIC, cls.method(RUNTIME, "enter", "()V"), 0);
+        block(ast.a(ast.c(n)));
+        leave();
+        if(returnType == Types.VOID)
+        {
+            code.op(Jvm.RETURN);
+        }
+        else if(returnType == Types.DOUBLE)
+        {
+            code.op(Jvm.DCONST_0);
+            code.op(Jvm.DRETURN);
+        }
+        else
+        {
+            code.iconst(0);
+            code.op(Jvm.IRETURN);
+        }
+        cls.addMethod(Jvm.ACC_PUBLIC | Jvm.ACC_STATIC, name(n), descriptor(n, returnType), code);
+    }
+
+    private void block(int first)
+    {
+        for(int n = first; n != NONE; n = ast.next(n)) stm(n);
+    }
+
+    private void local(int n)
+    {
+        int sym = domain.symbol(n);
+        int type = types.symbolType(sym);
+        slots[sym] = code.maxLocals;
+        initialize(ast.a(n), type);
+        store(type, slots[sym]);
+    }
+
+    private void stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                block(ast.a(n));
+                break;
+            case VAR:
+                local(n);
+                break;
+            case IF:
+            {
+                int otherwise = code.label();
+                branch(ast.a(n), false, otherwise);
+                stm(ast.b(n));
+                if(ast.c(n) != NONE)
+                {
+                    int end = code.label();
+                    code.jump(Jvm.GOTO, end);
+                    code.mark(otherwise);
+                    stm(ast.c(n));
+                    code.mark(end);
+                }
+                else
+                {
+                    code.mark(otherwise);
+                }
+                break;
+            }
+            case WHILE:
+                loop(ast.a(n), ast.b(n), NONE);
+                break;
+            case FOR:
+            {
+                int head = ast.a(n);
+                if(ast.a(head) != NONE) effect(ast.a(head));
+                loop(ast.b(head), ast.b(n), ast.c(head));
+                break;
+            }
+            case BREAK:
+                code.jump(Jvm.GOTO, loopEnd);
+                break;
+            case RETURN:
+                ret(ast.a(n));
+                break;
+            case EXPR:
+                effect(ast.a(n));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void loop(int cond, int body, int step)
+    {
+        int saved = loopEnd;
+        int top = code.label();
+        int test = code.label();
+        loopEnd = code.label();
+        if(cond != NONE) code.jump(Jvm.GOTO, test);
+        code.mark(top);
+        stm(body);
+        if(step != NONE) effect(step);
+        code.mark(test);
+        if(cond != NONE) branch(cond, true, top);
+        else code.jump(Jvm.GOTO, top);
+        code.mark(loopEnd);
+        loopEnd = saved;
+    }
+
+    private void ret(int value)
+    {
+        if(value == NONE)
+        {
+            leave();
+            code.op(Jvm.RETURN);
+        }
+        else if(returnType == Types.DOUBLE)
+        {
+            real(value);
+            leave();
+            code.op(Jvm.DRETURN);
+        }
+        else
+        {
+            integer(value, returnType);
+            leave();
+            code.op(Jvm.IRETURN);
+        }
+    }
+
+    // after the return value is computed, since computing it may call deeper
+    private void leave()
+    {
+        code.member(Jvm.INVOKESTATIC, cls.method(RUNTIME, "leave", "()V"), 0);
+    }
+
+    private void effect(int n)
+    {
+        if(ast.kind(n) == NodeKind.ASSIGN)
+        {
+            assign(n, false);
+            return;
+        }
+        int type = types.type(n);
+        value(n);
+        if(type == Types.DOUBLE) code.op(Jvm.POP2);
+        else if(type != Types.VOID) code.op(Jvm.POP);
+    }
+
+    private void branch(int n, boolean when, int target)
+    {
+        if(ast.kind(n) == NodeKind.UNARY && tokens.type(ast.token(n)) == TokenType.NOT)
+        {
+            branch(ast.a(n), !when, target);
+            return;
+        }
+        if(ast.kind(n) == NodeKind.BINARY)
+        {
+            TokenType op = tokens.type(ast.token(n));
+            if(op == TokenType.AND || op == TokenType.OR)
+            {
+                if((op == TokenType.AND) != when)
+                {
+                    branch(ast.a(n), when, target);
+                    branch(ast.b(n), when, target);
+                }
+                else
+                {
+                    int skip = code.label();
+                    branch(ast.a(n), !when, skip);
+                    branch(ast.b(n), when, target);
+                    code.mark(skip);
+                }
+                return;
+            }
+            int compare = compare(op);
+            if(compare != NONE)
+            {
+                int left = types.type(ast.a(n));
+                int right = types.type(ast.b(n));
+                if(Types.isScalar(left) && Types.isScalar(right) && Types.arith(left, right) == Types.DOUBLE)
+                {
+                    // dcmpg sends NaN above and dcmpl below, so the negated test is still false for NaN
+                    real(ast.a(n));
+                    real(ast.b(n));
+                    code.op(op == TokenType.LESS || op == TokenType.LESSEQ ? Jvm.DCMPG : Jvm.DCMPL);
+                    int test = compare - Jvm.IF_ICMPEQ + Jvm.IFEQ;
+                    code.jump(when ? test : Jvm.negate(test), target);
+                }
+                else
+                {
+                    integer(ast.a(n), Types.INT);
+                    integer(ast.b(n), Types.INT);
+                    code.jump(when ? compare : Jvm.negate(compare), target);
+                }
+                return;
+            }
+        }
+        if(types.type(n) == Types.DOUBLE)
+        {
+            value(n);
+            code.op(Jvm.DCONST_0);
+            code.op(Jvm.DCMPL);
+        }
+        else
+        {
+            value(n);
+        }
+        code.jump(when ? Jvm.IFNE : Jvm.IFEQ, target);
+    }
+
+    private static int compare(TokenType op)
+    {
+        switch(op)
+        {
+            case EQUAL: return Jvm.IF_ICMPEQ;
+            case NOTEQ: return Jvm.IF_ICMPNE;
+            case LESS: return Jvm.IF_ICMPLT;
+            case LESSEQ: return Jvm.IF_ICMPLE;
+            case GREATER: return Jvm.IF_ICMPGT;
+            case GREATEREQ: return Jvm.IF_ICMPGE;
+            default: return NONE;
+        }
+    }
+
+    private void integer(int n, int to)
+    {
+        int from = types.type(n);
+        value(n);
+        if(from == Types.DOUBLE) code.op(Jvm.D2I);
+        if(to == Types.CHAR && from != Types.CHAR) code.op(Jvm.I2B);
+    }
+
+    private void real(int n)
+    {
+        value(n);
+        if(types.type(n) != Types.DOUBLE) code.op(Jvm.I2D);
+    }
+
+    private void convert(int n, int to)
+    {
+        if(to == Types.DOUBLE) real(n);
+        else if(Types.isScalar(to)) integer(n, to);
+        else value(n);
+    }
+
+    private void value(int n)
+    {
+        int type = types.type(n);
+        switch(ast.kind(n))
+        {
+            case CONST:
+                if(type != Types.DOUBLE) constant(ast.a(n));
+                else if(ast.real(n) == 0 && 1 / ast.real(n) > 0) code.op(Jvm.DCONST_0);
+                else if(ast.real(n) == 1) code.op(Jvm.DCONST_1);
+                else code.ldc2(cls.real(ast.real(n)));
+                break;
+            case LITERAL:
+            {
+                String text = tokens.text(ast.token(n));
+                StringBuilder decoded = new StringBuilder();
+                for(int i = 0; i < text.length(); i++)
+                {
+                    char c = text.charAt(i);
+                    if(c == '\\' && i + 1 < text.length()) c = Lex.escape(text.charAt(++i));
+                    decoded.append(c);
+                }
+                code.member(Jvm.GETSTATIC, cls.field(CLASS, "$s" + strings.size(), "[B"), 1);
+                strings.add(decoded.toString());
+                break;
+            }
+            case ID:
+                load(n);
+                break;
+            case INDEX:
+            {
+                value(ast.a(n));
+                integer(ast.b(n), Types.INT);
+                code.op(type == Types.DOUBLE ? Jvm.DALOAD : type == Types.CHAR ? Jvm.BALOAD : Jvm.IALOAD);
+                break;
+            }
+            case CALL:
+                call(n);
+                break;
+            case CAST:
+                convert(ast.b(n), type);
+                break;
+            case UNARY:
+                if(tokens.type(ast.token(n)) == TokenType.NOT)
+                {
+                    bool(n);
+                }
+                else if(type == Types.DOUBLE)
+                {
+                    value(ast.a(n));
+                    code.op(Jvm.DNEG);
+                }
+                else
+                {
+                    value(ast.a(n));
+                    code.op(Jvm.INEG);
+                    if(type == Types.CHAR) code.op(Jvm.I2B);
+                }
+                break;
+            case BINARY:
+                binary(n, type);
+                break;
+            case ASSIGN:
+                assign(n, true);
+                break;
+            default:
+                throw new IllegalStateException("cannot compile " + ast.kind(n) + " to JVM bytecode");
+        }
+    }
+
+    private void bool(int n)
+    {
+        int yes = code.label();
+        int end = code.label();
+        branch(n, true, yes);
+        code.iconst(0);
+        code.jump(Jvm.GOTO, end);
+        code.stack(-1);
+        code.mark(yes);
+        code.iconst(1);
+        code.mark(end);
+    }
+
+    private void binary(int n, int type)
+    {
+        TokenType op = tokens.type(ast.token(n));
+        if(op == TokenType.AND || op == TokenType.OR || compare(op) != NONE)
+        {
+            bool(n);
+            return;
+        }
+        if(type == Types.DOUBLE)
+        {
+            real(ast.a(n));
+            real(ast.b(n));
+        }
+        else
+        {
+            integer(ast.a(n), Types.INT);
+            integer(ast.b(n), Types.INT);
+        }
+        boolean real = type == Types.DOUBLE;
+        switch(op)
+        {
+            case ADD: code.op(real ? Jvm.DADD : Jvm.IADD); break;
+            case SUB: code.op(real ? Jvm.DSUB : Jvm.ISUB); break;
+            case MUL: code.op(real ? Jvm.DMUL : Jvm.IMUL); break;
+            default: code.op(real ? Jvm.DDIV : Jvm.IDIV); break;
+        }
+        if(type == Types.CHAR) code.op(Jvm.I2B);
+    }
+
+    private void load(int n)
+    {
+        int sym = domain.symbol(n);
+        int type = types.symbolType(sym);
+        if(globals[sym])
+        {
+            code.member(Jvm.GETSTATIC, cls.field(CLASS, name(domain.node(sym)), descriptor(type)), words(type));
+            return;
+        }
+        code.local(type == Types.DOUBLE ? Jvm.DLOAD : Types.isArray(type) ? Jvm.ALOAD : Jvm.ILOAD, slots[sym]);
+    }
+
+    private void store(int type, int slot)
+    {
+        code.local(type == Types.DOUBLE ? Jvm.DSTORE : Types.isArray(type) ? Jvm.ASTORE : Jvm.ISTORE, slot);
+    }
+
+    private void assign(int n, boolean keep)
+    {
+        int dst = ast.a(n);
+        int type = types.type(dst);
+        if(ast.kind(dst) == NodeKind.INDEX)
+        {
+            value(ast.a(dst));
+            integer(ast.b(dst), Types.INT);
+            convert(ast.b(n), type);
+            if(keep) code.op(type == Types.DOUBLE ? Jvm.DUP2_X2 : Jvm.DUP_X2);
+            code.op(type == Types.DOUBLE ? Jvm.DASTORE : type == Types.CHAR ? Jvm.BASTORE : Jvm.IASTORE);
+            return;
+        }
+        convert(ast.b(n), type);
+        if(keep) code.op(type == Types.DOUBLE ? Jvm.DUP2 : Jvm.DUP);
+        int sym = domain.symbol(dst);
+        if(globals[sym]) code.member(Jvm.PUTSTATIC, cls.field(CLASS, name(domain.node(sym)), descriptor(type)), -words(type));
+        else store(type, slots[sym]);
+    }
+
+    private void call(int n)
+    {
+        int sym = domain.symbol(n);
+        int returns = types.symbolType(sym);
+        int delta = returns == Types.VOID ? 0 : words(returns);
+        if(domain.kind(sym) == SymbolKind.BUILTIN)
+        {
+            Builtin builtin = domain.builtin(sym);
+            StringBuilder descriptor = new StringBuilder("(");
+            int count = 0;
+            for(int arg = ast.a(n); arg != NONE; arg = ast.next(arg), count++)
+            {
+                convert(arg, builtin.params[count]);
+                descriptor.append(descriptor(builtin.params[count]));
+                delta -= words(builtin.params[count]);
+            }
+            descriptor.append(')').append(descriptor(builtin.ret));
+            code.member(Jvm.INVOKESTATIC, cls.method(RUNTIME, builtin.spelling, descriptor.toString()), delta);
+            return;
+        }
+        int fn = domain.node(sym);
+        int param = ast.b(fn);
+        for(int arg = ast.a(n); arg != NONE; arg = ast.next(arg), param = ast.next(param))
+        {
+            int type = types.symbolType(domain.symbol(param));
+            convert(arg, type);
+            delta -= words(type);
+        }
+        code.member(Jvm.INVOKESTATIC, cls.method(CLASS, name(fn), descriptor(fn, returns)), delta);
+    }
+}
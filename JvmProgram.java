@@ -0,0 +1,99 @@
+import java.io.*;
+import java.lang.reflect.*;
+
+class JvmProgram
+{
+    private final byte[] bytes;
+    private final int mainType;
+    private Method reset;
+    private Method main;
+
+    JvmProgram(byte[] bytes, int mainType)
+    {
+        this.bytes = bytes;
+        this.mainType = mainType;
+    }
+
+    public byte[] bytes()
+    {
+        return bytes;
+    }
+
+    public JvmProgram input(BufferedReader in)
+    {
+        JvmRuntime.in = in;
+        return this;
+    }
+
+    public JvmProgram output(PrintStream out)
+    {
+        JvmRuntime.out = out;
+        return this;
+    }
+
+    public long run()
+    {
+        if(mainType == Ast.NONE) throw new IllegalStateException("the program has no main function");
+        try
+        {
+            if(main == null)
+            {
+                Class<?> cls = new Loader(JvmProgram.class.getClassLoader()).define(bytes);
+                reset = cls.getMethod("$reset");
+                main = cls.getMethod("main");
+            }
+            reset.invoke(null);
+        }
+        catch(InvocationTargetException e)
+        {
+            throw failure(e);
+        }
+        catch(ReflectiveOperationException | LinkageError e)
+        {
+            throw new IllegalStateException("cannot load the generated class: " + e, e);
+        }
+        JvmRuntime.depth = 0;
+        return DeepStack.run("atomc-jvm", this::invokeMain);
+    }
+
+    private long invokeMain()
+    {
+        try
+        {
+            Object result = main.invoke(null);
+            JvmRuntime.out.flush();
+            if(result instanceof Double) return Double.doubleToRawLongBits((Double)result);
+            return result != null ? (Integer)result : 0;
+        }
+        catch(InvocationTargetException e)
+        {
+            throw failure(e);
+        }
+        catch(IllegalAccessException e)
+        {
+            throw new IllegalStateException("cannot run the generated class: " + e, e);
+        }
+    }
+
+    // a StackOverflowError passes through as it is, and DeepStack reports it as a stack overflow
+    private static RuntimeException failure(InvocationTargetException e)
+    {
+        Throwable cause = e.getCause();
+        if(cause instanceof Error) throw (Error)cause;
+        if(cause instanceof RuntimeException) return (RuntimeException)cause;
+        return new IllegalStateException(cause);
+    }
+
+    private static final class Loader extends ClassLoader
+    {
+        Loader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        Class<?> define(byte[] bytes)
+        {
+            return defineClass(JvmGen.CLASS, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.*;
+
+public final class JvmRuntime
+{
+    static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    static PrintStream out = System.out;
+    static int depth;
+
+    private JvmRuntime()
+    {
+    }
+
+    // every generated function calls enter first and leave before it returns, so it overflows where the Vm does
+    public static void enter()
+    {
+        if(depth > DeepStack.MAX_DEPTH) throw new IllegalStateException("stack overflow");
+        depth++;
+    }
+
+    public static void leave()
+    {
+        depth--;
+    }
+
+    public static byte[] bytes(String text)
+    {
+        byte[] bytes = new byte[text.length() + 1];
+        for(int i = 0; i < text.length(); i++) bytes[i] = (byte)text.charAt(i);
+        return bytes;
+    }
+
+    public static void put_s(byte[] text)
+    {
+        for(int i = 0; i < text.length && text[i] != 0; i++) out.print((char)(text[i] & 0xFF));
+    }
+
+    public static void get_s(byte[] text)
+    {
+        String line = readLine();
+        int n = Math.min(line.length(), text.length - 1);
+        for(int i = 0; i < n; i++) text[i] = (byte)line.charAt(i);
+        if(n >= 0) text[n] = 0;
+    }
+
+    public static void put_i(int value)
+    {
+        out.print(value);
+    }
+
+    public static int get_i()
+    {
+        return Integer.parseInt(readLine().trim());
+    }
+
+    public static void put_d(double value)
+    {
+        out.print(value);
+    }
+
+    public static double get_d()
+    {
+        return Double.parseDouble(readLine().trim());
+    }
+
+    public static void put_c(int value)
+    {
+        out.print((char)(value & 0xFF));
+    }
+
+    public static int get_c()
+    {
+        try
+        {
+            int c = in.read();
+            return (byte)(c >= 0 ? c : 0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static double seconds()
+    {
+        return System.nanoTime() / 1e9;
+    }
+
+    private static String readLine()
+    {
+        try
+        {
+            String line = in.readLine();
+            return line != null ? line : "";
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+class Keywords
+{
+    private static final int MAX_LENGTH = 6;
+    private static final String[] WORDS = new String[26 * (MAX_LENGTH + 1)];
+    private static final TokenType[] TYPES = new TokenType[WORDS.length];
+
+    static
+    {
+        for(TokenType type : TokenType.values())
+        {
+            if(!type.isKeyword()) continue;
+
+            String word = type.spelling;
+            int slot = slot(word.charAt(0), word.length());
+            if(WORDS[slot] != null) throw new IllegalStateException("keyword slot collision: " + word + " / " + WORDS[slot]);
+            WORDS[slot] = word;
+            TYPES[slot] = type;
+        }
+    }
+
+    private static int slot(char first, int length)
+    {
+        return (first - 'a') * (MAX_LENGTH + 1) + length;
+    }
+
+    static TokenType classify(Source src, int start, int end)
+    {
+        int length = end - start;
+        if(length < 2 || length > MAX_LENGTH) return TokenType.ID;
+
+        char first = src.charAt(start);
+        if(first < 'a' || first > 'z') return TokenType.ID;
+
+        int slot = slot(first, length);
+        String word = WORDS[slot];
+        if(word == null) return TokenType.ID;
+
+        for(int i = 1; i < length; i++)
+        {
+            if(src.charAt(start + i) != word.charAt(i)) return TokenType.ID;
+        }
+        return TYPES[slot];
+    }
+}
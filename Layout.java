@@ -0,0 +1,60 @@
+class Layout
+{
+    private static final int NONE = Ast.NONE;
+
+    private final Ast ast;
+    private final Domain domain;
+    private final TypeCheck types;
+    private final int[] sizes;
+    private final int[] offsets;
+
+    public Layout(Ast ast, Domain domain, TypeCheck types, int root)
+    {
+        this.ast = ast;
+        this.domain = domain;
+        this.types = types;
+        this.sizes = new int[domain.size()];
+        this.offsets = new int[domain.size()];
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            if(ast.kind(n) != NodeKind.STRUCT) continue;
+            int size = 0;
+            for(int field = ast.a(n); field != NONE; field = ast.next(field))
+            {
+                offsets[domain.symbol(field)] = size;
+                size += slots(ast.a(field));
+            }
+            sizes[domain.symbol(n)] = size;
+        }
+    }
+
+    public int slots(int typeNode)
+    {
+        int element = size(Types.element(types.type(typeNode)));
+        if(ast.kind(typeNode) != NodeKind.ARRAY) return element;
+        int size = ast.a(typeNode);
+        return size != NONE ? ast.a(size) * element : 1;
+    }
+
+    // the declared element count of the array an ID or FIELD names; an unsized array holds one element, as in slots
+    public int length(int n)
+    {
+        int size = ast.a(ast.a(domain.node(domain.symbol(n))));
+        return size != NONE ? ast.a(size) : 1;
+    }
+
+    public int size(int type)
+    {
+        return Types.isStruct(type) && !Types.isArray(type) ? sizes[Types.structSymbol(type)] : 1;
+    }
+
+    public int elementSize(int arrayType)
+    {
+        return size(Types.element(arrayType));
+    }
+
+    public int offset(int structType, int name)
+    {
+        return offsets[domain.member(Types.structSymbol(structType), name)];
+    }
+}
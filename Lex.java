@@ -0,0 +1,489 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+class Lex
+{
+    // warnings come with the position they were found at, so a speculative lexer can drop the ones it should not report
+    static final ObjIntConsumer<String> STDERR = (message, at) -> System.err.println(message);
+
+    private final Source src;
+    private final SymbolTable symbols;
+    private int pos = 0;
+    private int line = 1;
+    private int tkFrom;
+    private int tkStart;
+    private int tkEnd;
+    private int tkSymbol;
+    private boolean tables = false;
+    private Diagnostics diagnostics;
+    private int produced = 0;
+    private ObjIntConsumer<String> warnings = STDERR;
+
+    public Lex(String input)
+    {
+        this(new StringSource(input));
+    }
+
+    public Lex(Reader reader)
+    {
+        this(new ReaderSource(reader));
+    }
+
+    public Lex(ReadableByteChannel channel)
+    {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    Lex(Source src)
+    {
+        this(src, new SymbolTable());
+    }
+
+    Lex(Source src, SymbolTable symbols)
+    {
+        this.src = src;
+        this.symbols = symbols;
+    }
+
+    Lex(Source src, SymbolTable symbols, int pos, int line)
+    {
+        this(src, symbols);
+        this.pos = pos;
+        this.line = line;
+    }
+
+    public SymbolTable symbols()
+    {
+        return symbols;
+    }
+
+    public Lex useTables(boolean tables)
+    {
+        this.tables = tables;
+        return this;
+    }
+
+    public Lex warnings(ObjIntConsumer<String> warnings)
+    {
+        this.warnings = warnings;
+        return this;
+    }
+
+    // lexical errors go to diagnostics instead of stopping the lexer; a bad constant then reads as 0
+    public Lex recover(Diagnostics diagnostics)
+    {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
+    private char peek()
+    {
+        return src.charAt(pos);
+    }
+
+    private char advance()
+    {
+        return src.charAt(pos++);
+    }
+
+    private TokenType span(TokenType type, int start, int end)
+    {
+        tkStart = start;
+        tkEnd = end;
+        return type;
+    }
+
+    private boolean match(char expected)
+    {
+        if(peek()==expected)
+        {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void consumeWhitespace()
+    {
+        while(Character.isWhitespace(peek()))
+        {
+            src.release(pos);
+            if(peek() =='\n') line++;
+            advance();
+        }
+    }
+
+    private TokenType tokenizeIdentifierOrKeyword()
+    {
+        int start=pos;
+
+        while(Character.isLetterOrDigit(peek()) || peek()=='_') advance();
+
+        TokenType type = Keywords.classify(src, start, pos);
+        if(type == TokenType.ID) tkSymbol = symbols.intern(src, start, pos);
+        return span(type, start, pos);
+    }
+
+    private TokenType tokenizeNumber()
+    {
+        int start =pos;
+        boolean isReal =false;
+
+        if(match('0'))
+        {
+            if(match('x') || match('X'))
+            {
+                while(Character.isDigit(peek()) || "abcdefABCDEF".indexOf(peek())!=-1) advance();
+                return span(TokenType.CT_INT, start, pos);
+            }
+            else if(Character.isDigit(peek()))
+            {
+                while(Character.isDigit(peek())) advance();
+                return span(TokenType.CT_INT, start, pos);
+            }
+        }
+
+        while(Character.isDigit(peek())) advance();
+
+        if(match('.'))
+        {
+            isReal=true;
+            while(Character.isDigit(peek())) advance();
+        }
+        if(match('e') || match('E'))
+        {
+            isReal =true;
+            if(!match('-')) match('+');
+            while(Character.isDigit(peek())) advance();
+        }
+
+        TokenType type=isReal?TokenType.CT_REAL:TokenType.CT_INT;
+
+        return span(type, start, pos);
+    }
+
+    private TokenType tokenizeString()
+    {
+        int start=pos;
+        advance();
+        while(peek() != '"' && peek()!='\0') advance();
+        advance();
+        return span(TokenType.CT_STRING, start+1, pos-1);
+    }
+
+    private TokenType tokenizeChar()
+    {
+        int start=pos;
+        advance();
+        while(peek()!='\'' && peek()!='\0') advance();
+        advance();
+        return span(TokenType.CT_CHAR, start+1, pos-1);
+    }
+
+    private void consumeLineComment()
+    {
+        while(peek()!='\n' && peek()!='\0')
+        {
+            src.release(pos);
+            advance();
+        }
+    }
+
+    private void consumeBlockComment()
+    {
+        while(!src.atEnd(pos))
+        {
+            src.release(pos);
+            char c = advance();
+            if(c == '*' && match('/')) return;
+            if(c == '\n') line++;
+        }
+    }
+
+    private TokenType tokenizeSymbol()
+    {
+        int start=pos;
+        char ch=advance();
+        switch (ch) 
+        {
+            case '+':
+                return span(TokenType.ADD, start, pos);
+            case '-':
+                return span(TokenType.SUB, start, pos);
+            case '*':
+                return span(TokenType.MUL, start, pos);
+            case '/':
+                return span(TokenType.DIV, start, pos);
+            case '.':
+                return span(TokenType.DOT, start, pos);
+            case ',':
+                return span(TokenType.COMMA, start, pos);
+            case ';':
+                return span(TokenType.SEMICOLON, start, pos);
+            case '(':
+                return span(TokenType.LPAR, start, pos);
+            case ')':
+                return span(TokenType.RPAR, start, pos);
+            case '[':
+                return span(TokenType.LBRACKET, start, pos);
+            case ']':
+                return span(TokenType.RBRACKET, start, pos);
+            case '{':
+                return span(TokenType.LACC, start, pos);
+            case '}':
+                return span(TokenType.RACC, start, pos);
+            case '<':
+                return match('=')? span(TokenType.LESSEQ, start, pos) :span(TokenType.LESS, start, pos);
+            case '>':
+                return match('=')? span(TokenType.GREATEREQ, start, pos) :span(TokenType.GREATER, start, pos);
+            case '=':
+                return match('=')? span(TokenType.EQUAL, start, pos) : span(TokenType.ASSIGN, start, pos);
+            case '!':
+                return match('=')? span(TokenType.NOTEQ, start, pos) : span(TokenType.NOT, start, pos);
+            case '&':
+                if(match('&')) return span(TokenType.AND, start, pos);
+                break;
+            case '|':
+                if(match('|')) return span(TokenType.OR, start, pos);
+                break;
+        }
+        warnings.accept("Unknown character "+ch, start);
+        return null;
+    }
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private TokenType scanTables()
+    {
+        final byte[] classes = LexTables.CLASS;
+        final int[] next = LexTables.NEXT;
+        final byte[] lines = LexTables.LINES;
+        final int[] accepts = LexTables.ACCEPT;
+
+        while(!src.atEnd(pos))
+        {
+            src.release(pos);
+            int start = tkFrom = pos;
+            int state = LexTables.START;
+            while(true)
+            {
+                char c = src.charAt(pos);
+                int cls = c < 128 ? classes[c] : LexTables.classOf(c);
+                if(cls == LexTables.NUL && src.atEnd(pos)) cls = LexTables.EOF;
+
+                int t = state * LexTables.CLASSES + cls;
+                if(next[t] < 0) break;
+                line += lines[t];
+                state = next[t];
+                pos++;
+                // whitespace and comments are never sliced, so a long run of them need not stay buffered
+                if(accepts[state] == LexTables.SKIP) src.release(pos);
+            }
+
+            int accept = LexTables.ACCEPT[state];
+            if(accept == LexTables.SKIP) continue;
+            if(accept == LexTables.NONE)
+            {
+                warnings.accept("Unknown character "+src.charAt(start), start);
+                pos = start+1;
+                continue;
+            }
+
+            TokenType type = TYPES[accept];
+            if(type == TokenType.CT_STRING || type == TokenType.CT_CHAR) return span(type, start+1, pos-1);
+            if(type == TokenType.ID)
+            {
+                type = Keywords.classify(src, start, pos);
+                if(type == TokenType.ID) tkSymbol = symbols.intern(src, start, pos);
+            }
+            return span(type, start, pos);
+        }
+        return span(TokenType.END, pos, pos);
+    }
+
+    private TokenType scan()
+    {
+        if(tables) return scanTables();
+
+        while(!src.atEnd(pos))
+        {
+            src.release(pos);
+            tkFrom = pos;
+            char c = peek();
+            {
+                if(Character.isWhitespace(c))
+                {
+                    consumeWhitespace();
+                }
+                else if(Character.isLetter(c) || c=='_')
+                {
+                    return tokenizeIdentifierOrKeyword();
+                }
+                else if(Character.isDigit(c))
+                {
+                    return tokenizeNumber();
+                }
+                else if(c=='"')
+                {
+                    return tokenizeString();
+                }
+                else if(c=='\'')
+                {
+                    return tokenizeChar();
+                }
+                else if(c=='/' && (src.charAt(pos+1)=='/' || src.charAt(pos+1)=='*'))
+                {
+                    advance();
+                    if(match('/'))
+                    {
+                        consumeLineComment();
+                    }
+                    else if(match('*'))
+                    {
+                        consumeBlockComment();
+                    }
+                }
+                else
+                {
+                    TokenType type = tokenizeSymbol();
+                    if(type != null) return type;
+                }
+            }
+        }
+        return span(TokenType.END, pos, pos);
+    }
+
+    public Token nextToken()
+    {
+        TokenType type = scan();
+        if(type == TokenType.END) return new Token(TokenType.END, "EOF", line);
+        if(type == TokenType.CT_INT) intValue(tkStart, tkEnd);
+        produced++;
+        if(type == TokenType.ID) return new Token(type, symbols.name(tkSymbol), line);
+        if(src.retains()) return new Token(type, src, tkStart, tkEnd, line);
+        return new Token(type, src.text(tkStart, tkEnd), line);
+    }
+
+    public List<Token> tokenize()
+    {
+        List<Token> tokens = new ArrayList<>();
+        Token tk;
+        do
+        {
+            tk = nextToken();
+            tokens.add(tk);
+        }
+        while(tk.type != TokenType.END);
+        return tokens;
+    }
+
+    public TokenStore tokenizeCompact()
+    {
+        if(!src.retains()) throw new IllegalStateException("compact token store needs a source that keeps its text");
+
+        TokenStore tokens = new TokenStore(src, symbols);
+        while(next(tokens, Integer.MAX_VALUE)) {}
+        tokens.add(TokenType.END, pos, 0, line, -1);
+        return tokens;
+    }
+
+    boolean next(TokenStore tokens, int limit)
+    {
+        TokenType type = scan();
+        if(type == TokenType.END) return false;
+        if(tkFrom >= limit)
+        {
+            pos = tkFrom;
+            return false;
+        }
+        tokens.add(type, tkStart, tkEnd - tkStart, line, type == TokenType.ID ? tkSymbol : -1, value(type, tkStart, tkEnd));
+        produced++;
+        return true;
+    }
+
+    private long value(TokenType type, int start, int end)
+    {
+        switch(type)
+        {
+            case CT_INT: return intValue(start, end);
+            case CT_REAL: return Double.doubleToRawLongBits(realValue(start, end));
+            case CT_CHAR: return end > start ? charValue(start) : 0;
+            default: return 0;
+        }
+    }
+
+    private long intValue(int start, int end)
+    {
+        int radix = 10;
+        int from = start;
+        if(end - start > 1 && src.charAt(start) == '0' && (src.charAt(start + 1) == 'x' || src.charAt(start + 1) == 'X'))
+        {
+            radix = 16;
+            from = start + 2;
+            if(from == end) return lexerr(start, end, "missing digits after '0x'");
+        }
+        else if(end - start > 1 && src.charAt(start) == '0')
+        {
+            radix = 8;
+            from = start + 1;
+        }
+
+        long value = 0;
+        for(int p = from; p < end; p++)
+        {
+            int digit = Character.digit(src.charAt(p), radix);
+            if(digit < 0) return lexerr(start, end, "invalid digit in octal constant");
+            value = value * radix + digit;
+            if(value > Integer.MAX_VALUE) return lexerr(start, end, "integer constant out of range");
+        }
+        return value;
+    }
+
+    private long lexerr(int start, int end, String msg)
+    {
+        if(diagnostics == null) throw new RuntimeException("Lexical error at token: " + line + " " + msg + " '" + src.text(start, end) + "'");
+        diagnostics.add("Lexical", produced, line, msg + " '" + src.text(start, end) + "'");
+        return 0;
+    }
+
+    private double realValue(int start, int end)
+    {
+        while(end > start && "eE+-".indexOf(src.charAt(end - 1)) >= 0) end--;
+        return Double.parseDouble(src.text(start, end));
+    }
+
+    private char charValue(int start)
+    {
+        char c = src.charAt(start);
+        return c == '\\' ? escape(src.charAt(start + 1)) : c;
+    }
+
+    static char escape(char c)
+    {
+        switch(c)
+        {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case '0': return '\0';
+            case 'a': return 7;
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'v': return 11;
+            default: return c;
+        }
+    }
+
+    int position()
+    {
+        return pos;
+    }
+
+    int line()
+    {
+        return line;
+    }
+}
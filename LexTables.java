@@ -0,0 +1,230 @@
+import java.util.*;
+
+class LexTables
+{
+    static final int NONE = -1;
+    static final int SKIP = -2;
+
+    static final int EOF = 0;
+    static final int NUL = 1;
+    static final int SPACE = 2;
+    static final int NEWLINE = 3;
+    static final int LETTER = 4;
+    static final int HEX = 5;
+    static final int EXP = 6;
+    static final int X = 7;
+    static final int ZERO = 8;
+    static final int DIGIT = 9;
+    static final int QUOTE = 10;
+    static final int APOS = 11;
+    static final int OTHER = 12;
+
+    static final int START = 0;
+
+    static final byte[] CLASS = new byte[128];
+    static final int CLASSES;
+    static final int[] NEXT;
+    static final byte[] LINES;
+    static final int[] ACCEPT;
+
+    static
+    {
+        Arrays.fill(CLASS, (byte)-1);
+        int classes = OTHER + 1;
+        for(TokenType type : TokenType.values())
+        {
+            if(type.spelling == null || type.isKeyword()) continue;
+            for(char c : type.spelling.toCharArray())
+            {
+                if(CLASS[c] < 0) CLASS[c] = (byte)classes++;
+            }
+        }
+        for(char c = 0; c < 128; c++)
+        {
+            if(CLASS[c] < 0) CLASS[c] = (byte)plainClass(c);
+        }
+        CLASSES = classes;
+
+        Builder b = new Builder();
+        b.state(NONE);
+
+        int ws = b.state(SKIP);
+        b.on(START, SPACE, ws);
+        b.on(ws, SPACE, ws);
+        b.newline(START, ws);
+        b.newline(ws, ws);
+
+        int id = b.state(TokenType.ID.ordinal());
+        b.on(START, id, LETTER, HEX, EXP, X);
+        b.on(id, id, LETTER, HEX, EXP, X, ZERO, DIGIT);
+
+        int zero = b.state(TokenType.CT_INT.ordinal());
+        int dec = b.state(TokenType.CT_INT.ordinal());
+        int hex = b.state(TokenType.CT_INT.ordinal());
+        int oct = b.state(TokenType.CT_INT.ordinal());
+        int frac = b.state(TokenType.CT_REAL.ordinal());
+        int exp = b.state(TokenType.CT_REAL.ordinal());
+        int sign = b.state(TokenType.CT_REAL.ordinal());
+        int expDigits = b.state(TokenType.CT_REAL.ordinal());
+        b.on(START, ZERO, zero);
+        b.on(START, DIGIT, dec);
+        b.on(dec, dec, ZERO, DIGIT);
+        b.on(zero, X, hex);
+        b.on(hex, hex, ZERO, DIGIT, HEX, EXP);
+        b.on(zero, oct, ZERO, DIGIT);
+        b.on(oct, oct, ZERO, DIGIT);
+        b.on(zero, CLASS['.'], frac);
+        b.on(dec, CLASS['.'], frac);
+        b.on(frac, frac, ZERO, DIGIT);
+        b.on(zero, EXP, exp);
+        b.on(dec, EXP, exp);
+        b.on(frac, EXP, exp);
+        b.on(exp, sign, CLASS['+'], CLASS['-']);
+        b.on(exp, expDigits, ZERO, DIGIT);
+        b.on(sign, expDigits, ZERO, DIGIT);
+        b.on(expDigits, expDigits, ZERO, DIGIT);
+
+        b.literal(QUOTE, TokenType.CT_STRING);
+        b.literal(APOS, TokenType.CT_CHAR);
+
+        for(TokenType type : TokenType.values())
+        {
+            if(type.spelling == null || type.isKeyword()) continue;
+            int state = START;
+            for(char c : type.spelling.toCharArray())
+            {
+                int to = b.target(state, CLASS[c]);
+                if(to < 0)
+                {
+                    to = b.state(NONE);
+                    b.on(state, CLASS[c], to);
+                }
+                state = to;
+            }
+            b.accept(state, type.ordinal());
+        }
+
+        int slash = b.target(START, CLASS['/']);
+        int star = CLASS['*'];
+
+        int lineComment = b.state(SKIP);
+        b.on(slash, CLASS['/'], lineComment);
+        b.onAllBut(lineComment, lineComment, NEWLINE, NUL, EOF);
+
+        int blockComment = b.state(SKIP);
+        int blockStar = b.state(SKIP);
+        int blockEnd = b.state(SKIP);
+        b.on(slash, star, blockComment);
+        b.onAllBut(blockComment, blockComment, EOF, star);
+        b.newline(blockComment, blockComment);
+        b.on(blockComment, star, blockStar);
+        b.onAllBut(blockStar, blockComment, EOF, star, CLASS['/']);
+        b.newline(blockStar, blockComment);
+        b.on(blockStar, star, blockStar);
+        b.on(blockStar, CLASS['/'], blockEnd);
+
+        NEXT = b.next();
+        LINES = b.lines();
+        ACCEPT = b.accepts();
+    }
+
+    private static int plainClass(char c)
+    {
+        if(c == '\0') return NUL;
+        if(c == '\n') return NEWLINE;
+        if(c == '"') return QUOTE;
+        if(c == '\'') return APOS;
+        if(c == '0') return ZERO;
+        if(c == 'e' || c == 'E') return EXP;
+        if(c == 'x' || c == 'X') return X;
+        if((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) return HEX;
+        return classOf(c);
+    }
+
+    static int classOf(char c)
+    {
+        if(Character.isWhitespace(c)) return SPACE;
+        if(Character.isDigit(c)) return DIGIT;
+        if(Character.isLetter(c) || c == '_') return LETTER;
+        return OTHER;
+    }
+
+    private static class Builder
+    {
+        private final List<int[]> rows = new ArrayList<>();
+        private final List<byte[]> newlines = new ArrayList<>();
+        private final List<Integer> accepts = new ArrayList<>();
+
+        int state(int accept)
+        {
+            int[] row = new int[CLASSES];
+            Arrays.fill(row, -1);
+            rows.add(row);
+            newlines.add(new byte[CLASSES]);
+            accepts.add(accept);
+            return rows.size() - 1;
+        }
+
+        int target(int from, int cls)
+        {
+            return rows.get(from)[cls];
+        }
+
+        void accept(int state, int accept)
+        {
+            accepts.set(state, accept);
+        }
+
+        void on(int from, int cls, int to)
+        {
+            rows.get(from)[cls] = to;
+        }
+
+        void on(int from, int to, int... classes)
+        {
+            for(int cls : classes) on(from, cls, to);
+        }
+
+        void newline(int from, int to)
+        {
+            on(from, NEWLINE, to);
+            newlines.get(from)[NEWLINE] = 1;
+        }
+
+        void onAllBut(int from, int to, int... except)
+        {
+            for(int cls = 0; cls < CLASSES; cls++) on(from, cls, to);
+            for(int cls : except) on(from, cls, -1);
+        }
+
+        void literal(int quote, TokenType type)
+        {
+            int body = state(NONE);
+            int end = state(type.ordinal());
+            on(START, quote, body);
+            onAllBut(body, body, quote, NUL, EOF);
+            on(body, end, quote, NUL, EOF);
+        }
+
+        int[] next()
+        {
+            int[] table = new int[rows.size() * CLASSES];
+            for(int s = 0; s < rows.size(); s++) System.arraycopy(rows.get(s), 0, table, s * CLASSES, CLASSES);
+            return table;
+        }
+
+        byte[] lines()
+        {
+            byte[] table = new byte[rows.size() * CLASSES];
+            for(int s = 0; s < rows.size(); s++) System.arraycopy(newlines.get(s), 0, table, s * CLASSES, CLASSES);
+            return table;
+        }
+
+        int[] accepts()
+        {
+            int[] table = new int[accepts.size()];
+            for(int s = 0; s < table.length; s++) table[s] = accepts.get(s);
+            return table;
+        }
+    }
+}
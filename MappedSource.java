@@ -0,0 +1,56 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+class MappedSource extends Source
+{
+    private final ByteBuffer bytes;
+
+    MappedSource(ByteBuffer bytes)
+    {
+        this.bytes = bytes;
+    }
+
+    public static MappedSource map(Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if(channel.size() > Integer.MAX_VALUE) throw new IOException("file too large to map: " + path);
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    char charAt(int pos)
+    {
+        return pos < bytes.limit() ? (char)(bytes.get(pos) & 0xFF) : '\0';
+    }
+
+    boolean atEnd(int pos)
+    {
+        return pos >= bytes.limit();
+    }
+
+    int length()
+    {
+        return bytes.limit();
+    }
+
+    ByteBuffer buffer()
+    {
+        return bytes.duplicate();
+    }
+
+    String text(int start, int end)
+    {
+        byte[] slice = new byte[Math.min(end, bytes.limit()) - start];
+        bytes.get(start, slice);
+        return new String(slice, StandardCharsets.UTF_8);
+    }
+
+    boolean retains()
+    {
+        return true;
+    }
+}
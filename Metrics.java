@@ -0,0 +1,232 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import jdk.jfr.*;
+
+class Metrics
+{
+    @Name("atomc.Phase")
+    @Label("Compiler Phase")
+    @Category("AtomC")
+    @StackTrace(false)
+    static class PhaseEvent extends Event
+    {
+        @Label("Phase")
+        String phase;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("atomc.Tokens")
+    @Label("Token Count")
+    @Category("AtomC")
+    @StackTrace(false)
+    static class TokensEvent extends Event
+    {
+        @Label("Token Type")
+        String type;
+
+        @Label("Count")
+        long count;
+    }
+
+    @Name("atomc.Parse")
+    @Label("Parse Statistics")
+    @Category("AtomC")
+    @StackTrace(false)
+    static class ParseEvent extends Event
+    {
+        @Label("Rewinds")
+        int rewinds;
+
+        @Label("Rewound Tokens")
+        long rewoundTokens;
+
+        @Label("Max Depth")
+        int maxDepth;
+
+        @Label("Memo Hits")
+        int memoHits;
+
+        @Label("Memo Misses")
+        int memoMisses;
+    }
+
+    static final Metrics OFF = new Metrics(false, false);
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final boolean enabled;
+    private final com.sun.management.ThreadMXBean threads;
+    private final long created = System.nanoTime();
+
+    private final LinkedHashMap<String, long[]> phases = new LinkedHashMap<>();
+    private String current;
+    private long start;
+    private long startAllocated;
+    private PhaseEvent event;
+
+    private long[] tokenCounts;
+    private boolean parsed = false;
+    private int rewinds;
+    private long rewoundTokens;
+    private int maxDepth;
+    private int memoHits;
+    private int memoMisses;
+
+    Metrics(boolean enabled, boolean allocation)
+    {
+        this.enabled = enabled;
+        com.sun.management.ThreadMXBean bean = null;
+        if(enabled && allocation && ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+        {
+            bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            if(bean.isThreadAllocatedMemorySupported()) bean.setThreadAllocatedMemoryEnabled(true);
+            else bean = null;
+        }
+        this.threads = bean;
+    }
+
+    public boolean enabled()
+    {
+        return enabled;
+    }
+
+    // ends the running phase, if any, and starts the named one; a name seen before accumulates
+    public void phase(String name)
+    {
+        if(!enabled) return;
+        end();
+        current = name;
+        event = new PhaseEvent();
+        event.begin();
+        startAllocated = allocated();
+        start = System.nanoTime();
+    }
+
+    public void end()
+    {
+        if(!enabled || current == null) return;
+        long nanos = System.nanoTime() - start;
+        long bytes = threads != null ? allocated() - startAllocated : -1;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.phase = current;
+            event.allocated = bytes;
+            event.commit();
+        }
+        long[] totals = phases.computeIfAbsent(current, k -> new long[3]);
+        totals[0] += nanos;
+        totals[1] += Math.max(bytes, 0);
+        totals[2]++;
+        current = null;
+        event = null;
+    }
+
+    public void tokens(TokenStore tokens)
+    {
+        if(!enabled) return;
+        tokenCounts = new long[TYPES.length];
+        for(int i = 0; i < tokens.size(); i++) tokenCounts[tokens.types[i]]++;
+        for(TokenType type : TYPES)
+        {
+            if(tokenCounts[type.ordinal()] == 0) continue;
+            TokensEvent tokensEvent = new TokensEvent();
+            if(!tokensEvent.shouldCommit()) break;
+            tokensEvent.type = type.name();
+            tokensEvent.count = tokenCounts[type.ordinal()];
+            tokensEvent.commit();
+        }
+    }
+
+    public void parse(Syntactic parser)
+    {
+        if(!enabled) return;
+        parsed = true;
+        rewinds = parser.rewinds;
+        rewoundTokens = parser.rewoundTokens;
+        maxDepth = parser.maxDepth;
+        ParseMemo memo = parser.memo();
+        memoHits = memo != null ? memo.hits : 0;
+        memoMisses = memo != null ? memo.misses : 0;
+        ParseEvent parseEvent = new ParseEvent();
+        if(parseEvent.shouldCommit())
+        {
+            parseEvent.rewinds = rewinds;
+            parseEvent.rewoundTokens = rewoundTokens;
+            parseEvent.maxDepth = maxDepth;
+            parseEvent.memoHits = memoHits;
+            parseEvent.memoMisses = memoMisses;
+            parseEvent.commit();
+        }
+    }
+
+    // closes the running phase and writes the summary to the file, or to stderr when it is null
+    public void finish(Path file)
+    {
+        if(!enabled) return;
+        end();
+        try
+        {
+            if(file == null)
+            {
+                write(System.err);
+                return;
+            }
+            try(PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8"))
+            {
+                write(out);
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    public void write(PrintStream out)
+    {
+        out.println("{");
+        out.printf("  \"wallNanos\": %d,%n", System.nanoTime() - created);
+        out.println("  \"phases\": [");
+        int i = 0;
+        for(Map.Entry<String, long[]> entry : phases.entrySet())
+        {
+            long[] totals = entry.getValue();
+            out.printf("    {\"name\": \"%s\", \"nanos\": %d, \"count\": %d", entry.getKey(), totals[0], totals[2]);
+            if(threads != null) out.printf(", \"allocatedBytes\": %d", totals[1]);
+            out.println(++i < phases.size() ? "}," : "}");
+        }
+        out.print("  ]");
+        if(tokenCounts != null)
+        {
+            long total = 0;
+            for(long count : tokenCounts) total += count;
+            out.printf(",%n  \"tokens\": {\"total\": %d, \"byType\": {", total);
+            String separator = "";
+            for(TokenType type : TYPES)
+            {
+                if(tokenCounts[type.ordinal()] == 0) continue;
+                out.printf("%s\"%s\": %d", separator, type.name(), tokenCounts[type.ordinal()]);
+                separator = ", ";
+            }
+            out.print("}}");
+        }
+        if(parsed)
+        {
+            out.printf(",%n  \"parse\": {\"rewinds\": %d, \"rewoundTokens\": %d, \"maxDepth\": %d, \"memoHits\": %d, \"memoMisses\": %d}",
+                rewinds, rewoundTokens, maxDepth, memoHits, memoMisses);
+        }
+        out.printf("%n}%n");
+        out.flush();
+    }
+
+    private long allocated()
+    {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+}
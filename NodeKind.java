@@ -0,0 +1,28 @@
+enum NodeKind
+{
+    UNIT,       // a: first decl
+    STRUCT,     // tk: name, a: first field VAR
+    FUNC,       // tk: name, a: return TYPE, b: first param VAR, c: body BLOCK
+    VAR,        // tk: name, a: TYPE or ARRAY
+    TYPE,       // tk: INT, DOUBLE, CHAR, VOID or the struct name
+    ARRAY,      // tk: as TYPE, a: size expression or NONE
+    BLOCK,      // a: first statement or VAR
+    IF,         // a: condition, b: then, c: else or NONE
+    WHILE,      // a: condition, b: body
+    FOR,        // a: FOR_HEAD, b: body
+    FOR_HEAD,   // a: init, b: condition, c: step, each may be NONE
+    BREAK,
+    RETURN,     // a: value or NONE
+    EXPR,       // a: expression
+    EMPTY,
+    ASSIGN,     // a: target, b: value
+    BINARY,     // tk: operator, a: left, b: right
+    UNARY,      // tk: operator, a: operand
+    CAST,       // a: TYPE or ARRAY, b: operand
+    INDEX,      // a: array, b: index
+    FIELD,      // tk: field name, a: struct value
+    CALL,       // tk: function name, a: first argument
+    ID,
+    LITERAL,    // tk: string literal
+    CONST       // a: int value or low double bits, b: high double bits, c: INT, DOUBLE or CHAR from Types
+}
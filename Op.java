@@ -0,0 +1,71 @@
+final class Op
+{
+    static final int PUSH_I = 0;    // imm
+    static final int PUSH_D = 1;    // index into Program.reals
+    static final int POP = 2;
+    static final int DUP = 3;
+    static final int LOAD = 4;      // addr -> value
+    static final int STORE = 5;     // addr value ->
+    static final int TEE = 6;       // addr value -> value
+    static final int LOAD_L = 7;    // frame offset
+    static final int STORE_L = 8;   // frame offset
+    static final int LOAD_G = 9;    // address
+    static final int STORE_G = 10;  // address
+    static final int ADDR_L = 11;   // frame offset
+    static final int OFFSET = 12;   // slots
+    static final int INDEX = 13;    // element size: addr index -> addr
+    static final int COPY = 14;     // slots: dst src -> dst
+    static final int ADD_I = 15;
+    static final int SUB_I = 16;
+    static final int MUL_I = 17;
+    static final int DIV_I = 18;
+    static final int NEG_I = 19;
+    static final int ADD_D = 20;
+    static final int SUB_D = 21;
+    static final int MUL_D = 22;
+    static final int DIV_D = 23;
+    static final int NEG_D = 24;
+    static final int EQ_I = 25;
+    static final int NE_I = 26;
+    static final int LT_I = 27;
+    static final int LE_I = 28;
+    static final int GT_I = 29;
+    static final int GE_I = 30;
+    static final int EQ_D = 31;
+    static final int NE_D = 32;
+    static final int LT_D = 33;
+    static final int LE_D = 34;
+    static final int GT_D = 35;
+    static final int GE_D = 36;
+    static final int NOT = 37;
+    static final int TEST_D = 38;
+    static final int I2D = 39;
+    static final int D2I = 40;
+    static final int I2C = 41;
+    static final int JMP = 42;      // target
+    static final int JF = 43;       // target
+    static final int JT = 44;       // target
+    static final int CALL = 45;     // function index
+    static final int BUILTIN = 46;  // Builtin ordinal
+    static final int RET = 47;
+    static final int RET_V = 48;
+
+    static final String[] NAMES = {
+        "push_i", "push_d", "pop", "dup", "load", "store", "tee", "load_l", "store_l", "load_g", "store_g", "addr_l",
+        "offset", "index", "copy", "add_i", "sub_i", "mul_i", "div_i", "neg_i", "add_d", "sub_d", "mul_d", "div_d",
+        "neg_d", "eq_i", "ne_i", "lt_i", "le_i", "gt_i", "ge_i", "eq_d", "ne_d", "lt_d", "le_d", "gt_d", "ge_d",
+        "not", "test_d", "i2d", "d2i", "i2c", "jmp", "jf", "jt", "call", "builtin", "ret", "ret_v"
+    };
+
+    static int operands(int op)
+    {
+        switch(op)
+        {
+            case PUSH_I: case PUSH_D: case LOAD_L: case STORE_L: case LOAD_G: case STORE_G: case ADDR_L:
+            case OFFSET: case INDEX: case COPY: case JMP: case JF: case JT: case CALL: case BUILTIN:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+}
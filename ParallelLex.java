@@ -0,0 +1,263 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ObjIntConsumer;
+
+class ParallelLex
+{
+    static final int MIN_CHUNK = 1 << 16;
+    private static final int MAX_BOUNDARY_SEARCH = 4096;
+
+    private final Source src;
+    private final ForkJoinPool pool;
+    private boolean tables = false;
+    private Diagnostics diagnostics;
+    private ObjIntConsumer<String> warnings = Lex.STDERR;
+    int chunkSize;
+
+    public ParallelLex(Source src, ForkJoinPool pool)
+    {
+        if(src.length() < 0) throw new IllegalArgumentException("parallel lexing needs a source of known length");
+        this.src = src;
+        this.pool = pool;
+        this.chunkSize = Math.max(MIN_CHUNK, src.length() / (pool.getParallelism() * 4) + 1);
+    }
+
+    public ParallelLex useTables(boolean tables)
+    {
+        this.tables = tables;
+        return this;
+    }
+
+    // only the in-order lexing in stitch reports lexical errors; a chunk that hits one is re-lexed there
+    public ParallelLex recover(Diagnostics diagnostics)
+    {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
+    public ParallelLex warnings(ObjIntConsumer<String> warnings)
+    {
+        this.warnings = warnings;
+        return this;
+    }
+
+    private static class Chunk
+    {
+        final int begin;
+        final int limit;
+        final SymbolTable symbols = new SymbolTable();
+        // held back until stitch knows which part of the chunk it keeps
+        final List<String> warnings = new ArrayList<>();
+        final List<Integer> warningsAt = new ArrayList<>();
+        TokenStore tokens;
+        int end;
+        int endLine;
+        boolean failed;
+
+        Chunk(int begin, int limit)
+        {
+            this.begin = begin;
+            this.limit = limit;
+        }
+    }
+
+    public TokenStore tokenize()
+    {
+        List<Chunk> chunks = split();
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for(Chunk chunk : chunks)
+        {
+            tasks.add(() -> lexChunk(chunk));
+        }
+
+        for(Future<Chunk> done : pool.invokeAll(tasks))
+        {
+            try
+            {
+                done.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("parallel lexing interrupted", e);
+            }
+            catch(ExecutionException e)
+            {
+                if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                throw new IllegalStateException("parallel lexing failed", e.getCause());
+            }
+        }
+
+        return stitch(chunks);
+    }
+
+    private Chunk lexChunk(Chunk chunk)
+    {
+        Lex lexer = new Lex(src, chunk.symbols, chunk.begin, 0).useTables(tables).warnings((message, at) ->
+        {
+            chunk.warnings.add(message);
+            chunk.warningsAt.add(at);
+        });
+        chunk.tokens = new TokenStore(src, chunk.symbols);
+        try
+        {
+            while(lexer.next(chunk.tokens, chunk.limit)) {}
+        }
+        catch(RuntimeException e)
+        {
+            // a chunk may begin inside a comment or literal, so its lexical errors only count once stitch re-lexes it in order
+            chunk.tokens.truncate(0);
+            chunk.failed = true;
+        }
+        chunk.end = lexer.position();
+        chunk.endLine = lexer.line();
+        return chunk;
+    }
+
+    private List<Chunk> split()
+    {
+        List<Chunk> chunks = new ArrayList<>();
+        int length = src.length();
+        int begin = 0;
+        while(begin < length)
+        {
+            int limit = begin + chunkSize < length ? boundary(begin, begin + chunkSize) : length;
+            chunks.add(new Chunk(begin, limit));
+            begin = limit;
+        }
+        return chunks;
+    }
+
+    private int boundary(int begin, int target)
+    {
+        int length = src.length();
+        int fallback = -1;
+        for(int p = target; p < length && p < target + MAX_BOUNDARY_SEARCH; p++)
+        {
+            if(src.charAt(p) != '\n') continue;
+            if(fallback < 0) fallback = p + 1;
+            if(safeAfter(p)) return p + 1;
+        }
+        if(fallback > 0) return fallback;
+
+        // no newline near the target: split after a blank, which no name, number or operator spans
+        for(int p = target - 1; p > begin; p--)
+        {
+            char c = src.charAt(p);
+            if(c == ' ' || c == '\t') return p + 1;
+        }
+        return length;
+    }
+
+    private boolean safeAfter(int newline)
+    {
+        int lineStart = newline;
+        while(lineStart > 0 && src.charAt(lineStart - 1) != '\n') lineStart--;
+
+        int quotes = 0;
+        int apostrophes = 0;
+        for(int p = lineStart; p < newline; p++)
+        {
+            char c = src.charAt(p);
+            if(c == '"') quotes++;
+            else if(c == '\'') apostrophes++;
+        }
+        if(quotes % 2 != 0 || apostrophes % 2 != 0 || insideComment(newline)) return false;
+
+        int p = newline + 1;
+        while(src.charAt(p) == ' ' || src.charAt(p) == '\t') p++;
+        return src.charAt(p) != '*';
+    }
+
+    // whether the nearest comment delimiter before a position opens a comment; a comment opened further back than a
+    // boundary search reaches is missed, and stitch then rejects the chunk
+    private boolean insideComment(int at)
+    {
+        for(int p = at - 1; p > 0 && p > at - MAX_BOUNDARY_SEARCH; p--)
+        {
+            if(src.charAt(p) != '*' && src.charAt(p) != '/') continue;
+            if(src.charAt(p - 1) == '*' && src.charAt(p) == '/') return false;
+            if(src.charAt(p - 1) == '/' && src.charAt(p) == '*') return true;
+        }
+        return false;
+    }
+
+    private TokenStore stitch(List<Chunk> chunks)
+    {
+        SymbolTable symbols = new SymbolTable();
+        TokenStore tokens = new TokenStore(src, symbols);
+        int frontier = 0;
+        int line = 1;
+
+        for(Chunk chunk : chunks)
+        {
+            int from = 0;
+            int lineDelta = line;
+            if(frontier != chunk.begin || chunk.failed)
+            {
+                Lex lexer = new Lex(src, symbols, frontier, line).useTables(tables).recover(diagnostics).warnings(warnings);
+                from = -1;
+                while(true)
+                {
+                    int mark = tokens.size();
+                    if(!lexer.next(tokens, chunk.limit)) break;
+
+                    int at = find(chunk.tokens, tokens.start(mark), tokens.type(mark));
+                    if(at >= 0)
+                    {
+                        tokens.truncate(mark);
+                        from = at;
+                        lineDelta = lexer.line() - chunk.tokens.line(at);
+                        break;
+                    }
+                }
+                if(from < 0)
+                {
+                    frontier = lexer.position();
+                    line = lexer.line();
+                    continue;
+                }
+            }
+
+            // warnings before the first kept token came from text the in-order lexer has already reported
+            int kept = frontier == chunk.begin && !chunk.failed ? chunk.begin : chunk.tokens.start(from);
+            for(int i = 0; i < chunk.warnings.size(); i++)
+            {
+                if(chunk.warningsAt.get(i) >= kept) warnings.accept(chunk.warnings.get(i), chunk.warningsAt.get(i));
+            }
+
+            int[] remap = new int[chunk.symbols.size()];
+            Arrays.fill(remap, -1);
+            TokenStore part = chunk.tokens;
+            for(int i = from; i < part.size(); i++)
+            {
+                int sym = part.symbol(i);
+                if(sym >= 0)
+                {
+                    if(remap[sym] < 0) remap[sym] = symbols.intern(src, part.start(i), part.start(i) + part.length(i));
+                    sym = remap[sym];
+                }
+                tokens.add(part.type(i), part.start(i), part.length(i), part.line(i) + lineDelta, sym, part.value(i));
+            }
+            frontier = chunk.end;
+            line = chunk.endLine + lineDelta;
+        }
+
+        tokens.add(TokenType.END, frontier, 0, line, -1);
+        return tokens;
+    }
+
+    private static int find(TokenStore tokens, int start, TokenType type)
+    {
+        int lo = 0;
+        int hi = tokens.size() - 1;
+        while(lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(tokens.start(mid) < start) lo = mid + 1;
+            else if(tokens.start(mid) > start) hi = mid - 1;
+            else return tokens.type(mid) == type ? mid : -1;
+        }
+        return -1;
+    }
+}
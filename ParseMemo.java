@@ -0,0 +1,104 @@
+import java.util.*;
+
+class ParseMemo
+{
+    static final int MISSING = -2;
+    static final int FAILED = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_CAPACITY = 1 << 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] nodes = new int[INITIAL_CAPACITY];
+    private int[] stamps = new int[INITIAL_CAPACITY];
+    private int generation = 1;
+    private int size = 0;
+    private int node = Ast.NONE;
+
+    int hits;
+    int misses;
+
+    void clear()
+    {
+        generation++;
+        size = 0;
+    }
+
+    int get(int rule, int pos)
+    {
+        long key = key(rule, pos);
+        int mask = keys.length - 1;
+        for(int i = slot(key, mask); stamps[i] == generation; i = (i + 1) & mask)
+        {
+            if(keys[i] == key)
+            {
+                hits++;
+                node = nodes[i];
+                return ends[i];
+            }
+        }
+        misses++;
+        return MISSING;
+    }
+
+    int node()
+    {
+        return node;
+    }
+
+    void put(int rule, int pos, int end, int node)
+    {
+        if((size + 1) * 2 > keys.length)
+        {
+            if(keys.length < MAX_CAPACITY) grow();
+            else clear();
+        }
+
+        long key = key(rule, pos);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while(stamps[i] == generation && keys[i] != key) i = (i + 1) & mask;
+        if(stamps[i] != generation) size++;
+        keys[i] = key;
+        ends[i] = end;
+        nodes[i] = node;
+        stamps[i] = generation;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldEnds = ends;
+        int[] oldNodes = nodes;
+        int[] oldStamps = stamps;
+        int capacity = keys.length * 2;
+        keys = new long[capacity];
+        ends = new int[capacity];
+        nodes = new int[capacity];
+        stamps = new int[capacity];
+
+        int mask = capacity - 1;
+        for(int j = 0; j < oldKeys.length; j++)
+        {
+            if(oldStamps[j] != generation) continue;
+            int i = slot(oldKeys[j], mask);
+            while(stamps[i] == generation) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            ends[i] = oldEnds[j];
+            nodes[i] = oldNodes[j];
+            stamps[i] = generation;
+        }
+    }
+
+    private static long key(int rule, int pos)
+    {
+        return ((long)rule << 32) | (pos & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h >>> 32) & mask;
+    }
+}
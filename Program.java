@@ -0,0 +1,40 @@
+import java.io.*;
+
+class Program
+{
+    final int[] code;
+    final double[] reals;
+    final long[] data;
+    final String[] names;
+    final int[] entries;
+    final int[] params;
+    final int[] frames;
+    final int main;
+
+    Program(int[] code, double[] reals, long[] data, String[] names, int[] entries, int[] params, int[] frames, int main)
+    {
+        this.code = code;
+        this.reals = reals;
+        this.data = data;
+        this.names = names;
+        this.entries = entries;
+        this.params = params;
+        this.frames = frames;
+        this.main = main;
+    }
+
+    public void dump(PrintStream out)
+    {
+        int fn = 0;
+        for(int pc = 0; pc < code.length; pc += 1 + Op.operands(code[pc]))
+        {
+            while(fn < entries.length && entries[fn] == pc) out.println(names[fn++] + ":");
+            int op = code[pc];
+            if(Op.operands(op) == 0) out.printf("%6d  %s%n", pc, Op.NAMES[op]);
+            else if(op == Op.PUSH_D) out.printf("%6d  %-8s %s%n", pc, Op.NAMES[op], reals[code[pc + 1]]);
+            else if(op == Op.CALL) out.printf("%6d  %-8s %s%n", pc, Op.NAMES[op], names[code[pc + 1]]);
+            else if(op == Op.BUILTIN) out.printf("%6d  %-8s %s%n", pc, Op.NAMES[op], Builtin.values()[code[pc + 1]].spelling);
+            else out.printf("%6d  %-8s %d%n", pc, Op.NAMES[op], code[pc + 1]);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.util.*;
+
+class ReaderSource extends Source
+{
+    static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int base = 0;
+    private int limit = 0;
+    private int keep = 0;
+    private boolean eof = false;
+
+    public ReaderSource(Reader reader)
+    {
+        this.reader = reader;
+    }
+
+    char charAt(int pos)
+    {
+        while(pos - base >= limit)
+        {
+            if(!fill()) return '\0';
+        }
+        return buf[pos - base];
+    }
+
+    boolean atEnd(int pos)
+    {
+        return charAt(pos) == '\0' && pos - base >= limit;
+    }
+
+    String text(int start, int end)
+    {
+        return new String(buf, start - base, Math.min(end - base, limit) - (start - base));
+    }
+
+    void release(int pos)
+    {
+        keep = pos;
+    }
+
+    private boolean fill()
+    {
+        if(eof) return false;
+
+        int drop = keep - base;
+        if(drop > 0)
+        {
+            System.arraycopy(buf, drop, buf, 0, limit - drop);
+            limit -= drop;
+            base = keep;
+        }
+        if(limit == buf.length)
+        {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        try
+        {
+            int n = reader.read(buf, limit, buf.length - limit);
+            if(n < 0)
+            {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
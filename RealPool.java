@@ -0,0 +1,33 @@
+import java.util.*;
+
+// real constants by index, deduplicated on their raw bits so 0.0 and -0.0 keep separate slots
+class RealPool
+{
+    private double[] reals = new double[16];
+    private int count = 0;
+    private final Map<Long, Integer> index = new HashMap<>();
+
+    int intern(double value)
+    {
+        Integer at = index.putIfAbsent(Double.doubleToRawLongBits(value), count);
+        if(at != null) return at;
+        if(count == reals.length) reals = Arrays.copyOf(reals, count * 2);
+        reals[count] = value;
+        return count++;
+    }
+
+    double get(int i)
+    {
+        return reals[i];
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    double[] toArray()
+    {
+        return Arrays.copyOf(reals, count);
+    }
+}
@@ -0,0 +1,23 @@
+abstract class Source
+{
+    abstract char charAt(int pos);
+
+    abstract boolean atEnd(int pos);
+
+    abstract String text(int start, int end);
+
+    // -1 when the source is streamed and its length is not known in advance
+    int length()
+    {
+        return -1;
+    }
+
+    void release(int pos)
+    {
+    }
+
+    boolean retains()
+    {
+        return false;
+    }
+}
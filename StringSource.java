@@ -0,0 +1,34 @@
+class StringSource extends Source
+{
+    private final String input;
+
+    public StringSource(String input)
+    {
+        this.input = input;
+    }
+
+    char charAt(int pos)
+    {
+        return pos < input.length() ? input.charAt(pos) : '\0';
+    }
+
+    boolean atEnd(int pos)
+    {
+        return pos >= input.length();
+    }
+
+    int length()
+    {
+        return input.length();
+    }
+
+    String text(int start, int end)
+    {
+        return input.substring(start, Math.min(end, input.length()));
+    }
+
+    boolean retains()
+    {
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+enum SymbolKind
+{
+    STRUCT,
+    FUNC,
+    VAR,
+    PARAM,
+    MEMBER,
+    BUILTIN
+}
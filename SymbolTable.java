@@ -0,0 +1,98 @@
+import java.util.*;
+
+class SymbolTable
+{
+    private int[] slots = new int[256];
+    private int[] hashes = new int[64];
+    private char[][] keys = new char[64][];
+    private String[] names = new String[64];
+    private int count = 0;
+
+    public int size()
+    {
+        return count;
+    }
+
+    public String name(int id)
+    {
+        return names[id];
+    }
+
+    public int intern(String name)
+    {
+        return intern(new StringSource(name), 0, name.length());
+    }
+
+    public int lookup(String name)
+    {
+        int h = name.hashCode();
+        int mask = slots.length - 1;
+        for(int i = mix(h) & mask; slots[i] != 0; i = (i + 1) & mask)
+        {
+            int id = slots[i] - 1;
+            if(hashes[id] == h && names[id].equals(name)) return id;
+        }
+        return -1;
+    }
+
+    int intern(Source src, int start, int end)
+    {
+        int h = 0;
+        for(int i = start; i < end; i++) h = 31 * h + src.charAt(i);
+
+        int mask = slots.length - 1;
+        int i = mix(h) & mask;
+        while(slots[i] != 0)
+        {
+            int id = slots[i] - 1;
+            if(hashes[id] == h && sameKey(keys[id], src, start, end)) return id;
+            i = (i + 1) & mask;
+        }
+
+        if(count == names.length)
+        {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            keys = Arrays.copyOf(keys, count * 2);
+            names = Arrays.copyOf(names, count * 2);
+        }
+
+        char[] key = new char[end - start];
+        for(int k = 0; k < key.length; k++) key[k] = src.charAt(start + k);
+
+        int id = count++;
+        hashes[id] = h;
+        keys[id] = key;
+        names[id] = src.text(start, end);
+        slots[i] = id + 1;
+
+        if(count * 2 > slots.length) rehash();
+        return id;
+    }
+
+    private static boolean sameKey(char[] key, Source src, int start, int end)
+    {
+        if(key.length != end - start) return false;
+        for(int k = 0; k < key.length; k++)
+        {
+            if(key[k] != src.charAt(start + k)) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int h)
+    {
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash()
+    {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for(int id = 0; id < count; id++)
+        {
+            int i = mix(hashes[id]) & mask;
+            while(slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,1091 @@
+class Syntactic
+{
+    private static final int NONE = Ast.NONE;
+    private static final String TOP_LEVEL = "unexpected token at top level";
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private int crtTk;
+    private int consumedTk;
+    private String error;
+    private int root = NONE;
+    private boolean tree = true;
+    private boolean folding = true;
+    private final Fold fold;
+    private ParseMemo memo;
+    private boolean predictive = false;
+    private boolean pratt = false;
+    private int unaryStart = -1;
+    private int unaryEnd = -1;
+    private Diagnostics diagnostics;
+    private boolean panic = false;
+    private int errTk = -1;
+    private int depth = 0;
+    private TokenFeed feed;
+    private int avail = Integer.MAX_VALUE;
+
+    int rewinds;
+    long rewoundTokens;
+    int maxDepth;
+
+    private static final int RULE_EXPR_CAST = 0;
+    private static final int RULE_EXPR_UNARY = 1;
+
+    private static final boolean[] FIRST_DECL = first(TokenType.STRUCT, TokenType.INT, TokenType.DOUBLE, TokenType.CHAR, TokenType.VOID);
+    private static final boolean[] FIRST_TYPE_BASE = first(TokenType.INT, TokenType.DOUBLE, TokenType.CHAR);
+    private static final boolean[] FIRST_CAST = first(TokenType.INT, TokenType.DOUBLE, TokenType.CHAR, TokenType.STRUCT);
+    private static final boolean[] FIRST_EXPR = first(TokenType.SUB, TokenType.NOT, TokenType.LPAR, TokenType.ID,
+        TokenType.CT_INT, TokenType.CT_REAL, TokenType.CT_CHAR, TokenType.CT_STRING);
+    private static final boolean[] FIRST_STM = union(FIRST_EXPR, first(TokenType.LACC, TokenType.IF, TokenType.WHILE,
+        TokenType.FOR, TokenType.BREAK, TokenType.RETURN, TokenType.SEMICOLON));
+
+    // left binding power of each binary operator by TokenType ordinal, 0 for tokens that end an expression; all but
+    // ASSIGN associate to the left
+    private static final int ASSIGN_POWER = 1;
+    private static final int[] BINDING = new int[TokenType.values().length];
+    private static final String[] OPERAND_ERROR = new String[TokenType.values().length];
+
+    static
+    {
+        BINDING[TokenType.ASSIGN.ordinal()] = ASSIGN_POWER;
+        bind(2, "invalid expression after ||", TokenType.OR);
+        bind(3, "invalid expression after &&", TokenType.AND);
+        bind(4, "invalid expression after == or !=", TokenType.EQUAL, TokenType.NOTEQ);
+        bind(5, "invalid expression after relational operator", TokenType.LESS, TokenType.LESSEQ, TokenType.GREATER, TokenType.GREATEREQ);
+        bind(6, "invalid expression after '+' or '-'", TokenType.ADD, TokenType.SUB);
+        bind(7, "invalid expression after '*' or '/'", TokenType.MUL, TokenType.DIV);
+    }
+
+    private static void bind(int power, String error, TokenType... ops)
+    {
+        for(TokenType op : ops)
+        {
+            BINDING[op.ordinal()] = power;
+            OPERAND_ERROR[op.ordinal()] = error;
+        }
+    }
+
+    private static boolean[] first(TokenType... types)
+    {
+        boolean[] set = new boolean[TokenType.values().length];
+        for(TokenType type : types) set[type.ordinal()] = true;
+        return set;
+    }
+
+    private static boolean[] union(boolean[] a, boolean[] b)
+    {
+        boolean[] set = new boolean[a.length];
+        for(int i = 0; i < set.length; i++) set[i] = a[i] || b[i];
+        return set;
+    }
+
+    public Syntactic(TokenStore tokens)
+    {
+        this(tokens, new Ast());
+    }
+
+    public Syntactic(TokenStore tokens, Ast ast)
+    {
+        this.tokens=tokens;
+        this.ast=ast;
+        this.fold=new Fold(ast);
+    }
+
+    public Syntactic memoize(boolean on)
+    {
+        memo = on ? new ParseMemo() : null;
+        return this;
+    }
+
+    ParseMemo memo()
+    {
+        return memo;
+    }
+
+    public Syntactic predictive(boolean on)
+    {
+        predictive = on;
+        return this;
+    }
+
+    // parses binary operators and assignment by precedence climbing instead of the exprAssign to exprMul cascade
+    public Syntactic pratt(boolean on)
+    {
+        pratt = on;
+        return this;
+    }
+
+    public Syntactic buildTree(boolean on)
+    {
+        tree = on;
+        return this;
+    }
+
+    public Syntactic fold(boolean on)
+    {
+        folding = on;
+        return this;
+    }
+
+    public Syntactic recover(Diagnostics sink)
+    {
+        diagnostics = sink;
+        return this;
+    }
+
+    // reads tokens from a feed as the parse advances; the feed must fill the store passed in
+    public Syntactic feed(TokenFeed feed)
+    {
+        this.feed = feed;
+        return this;
+    }
+
+    public boolean parse()
+    {
+        crtTk=0;
+        error=null;
+        ast.reset();
+        panic=false;
+        errTk=-1;
+        depth=0;
+        rewinds=0;
+        rewoundTokens=0;
+        maxDepth=0;
+        int reported=diagnostics != null ? diagnostics.size() : 0;
+
+        if(feed != null)
+        {
+            avail=0;
+            more(0);
+            try
+            {
+                root=unit();
+            }
+            finally
+            {
+                feed.fill(Integer.MAX_VALUE);
+                avail=Integer.MAX_VALUE;
+            }
+        }
+        else root=unit();
+        if(diagnostics != null && diagnostics.size() > reported)
+        {
+            error=diagnostics.format(reported);
+            return false;
+        }
+        if(root==NONE)
+        {
+            // the same message unit() reports when recovering
+            error="Syntax error at token: " + tokens.line(crtTk) + " " + TOP_LEVEL;
+            return false;
+        }
+        return true;
+    }
+
+    public String error()
+    {
+        return error;
+    }
+
+    public Ast ast()
+    {
+        return ast;
+    }
+
+    public int root()
+    {
+        return root;
+    }
+
+    int parseDecl(int at)
+    {
+        crtTk=at;
+        if(memo != null) memo.clear();
+        if(feed != null)
+        {
+            avail=0;
+            more(at);
+        }
+
+        if(decl()!=NONE) return crtTk;
+        return -1;
+    }
+
+    // only a fed parse has tokens still to arrive; otherwise avail stays past every index
+    private void more(int tk)
+    {
+        feed.fill(tk);
+        avail=feed.ended() ? Integer.MAX_VALUE : tokens.size();
+    }
+
+    private boolean consume(TokenType code)
+    {
+        if(tokens.types[crtTk]==code.ordinal() && !panic)
+        {
+            consumedTk=crtTk;
+            if(++crtTk >= avail) more(crtTk);
+            return true;
+        }
+
+        return false;
+    }
+
+    private TokenType peek(int k)
+    {
+        if(panic) return TokenType.END;
+        if(crtTk + k >= avail) more(crtTk + k);
+        return tokens.type(Math.min(crtTk + k, tokens.size() - 1));
+    }
+
+    private boolean at(boolean[] first, int k)
+    {
+        if(panic) return false;
+        if(crtTk + k >= avail) more(crtTk + k);
+        return first[tokens.types[Math.min(crtTk + k, tokens.size() - 1)]];
+    }
+
+    private void tkerr(int tk, String msg)
+    {
+        if(diagnostics == null) throw new RuntimeException("Syntax error at token: " + tokens.line(tk) + " " + msg);
+        if(panic) return;
+
+        if(tk > errTk) diagnostics.add(tk, tokens.line(tk), msg);
+        panic=true;
+        errTk=Math.max(tk, errTk);
+    }
+
+    private void resync()
+    {
+        crtTk=Math.max(crtTk, errTk);
+        panic=false;
+        if(memo != null) memo.clear();
+    }
+
+    private void skipStatement()
+    {
+        resync();
+        int depth=0;
+        while(true)
+        {
+            int type=tokens.types[crtTk];
+            if(type==TokenType.END.ordinal()) return;
+            if(type==TokenType.RACC.ordinal() && depth==0) return;
+            if(++crtTk >= avail) more(crtTk);
+            if(type==TokenType.LACC.ordinal()) depth++;
+            else if(type==TokenType.RACC.ordinal() && --depth==0) return;
+            else if(type==TokenType.SEMICOLON.ordinal() && depth==0) return;
+        }
+    }
+
+    private void skipDecl(int start)
+    {
+        resync();
+        crtTk=Math.max(crtTk, start + 1);
+        if(crtTk >= avail) more(crtTk);
+        int depth=0;
+        while(true)
+        {
+            int type=tokens.types[crtTk];
+            if(type==TokenType.END.ordinal()) return;
+            if(depth==0 && FIRST_DECL[type])
+            {
+                int prev=tokens.types[crtTk - 1];
+                if(prev==TokenType.SEMICOLON.ordinal() || prev==TokenType.RACC.ordinal()) return;
+            }
+            if(type==TokenType.LACC.ordinal()) depth++;
+            else if(type==TokenType.RACC.ordinal() && depth > 0) depth--;
+            if(++crtTk >= avail) more(crtTk);
+        }
+    }
+
+    private int node(NodeKind kind, int tk, int a, int b, int c)
+    {
+        return tree ? ast.add(kind, tk, a, b, c) : 0;
+    }
+
+    private int binary(int op, int left, int right)
+    {
+        if(tree && folding && left != NONE && right != NONE)
+        {
+            int folded = fold.binary(op, tokens.type(op), left, right);
+            if(folded != NONE) return folded;
+        }
+        return node(NodeKind.BINARY, op, left, right, NONE);
+    }
+
+    private int link(int prev, int node)
+    {
+        return tree ? ast.link(prev, node) : node;
+    }
+
+    private int append(int last, int node)
+    {
+        return tree ? ast.tail(ast.link(last, node)) : node;
+    }
+
+    private void backtrack(int tk)
+    {
+        if(crtTk != tk)
+        {
+            rewinds++;
+            rewoundTokens+=crtTk - tk;
+            crtTk=tk;
+        }
+    }
+
+    private void rewind(int tk, int mark)
+    {
+        backtrack(tk);
+        if(tree && memo == null) ast.truncate(mark);
+    }
+
+    private int unit()
+    {
+        int first=NONE;
+        int last=NONE;
+        while(true)
+        {
+            if(memo != null) memo.clear();
+            int start=crtTk;
+            int decl=decl();
+            if(decl!=NONE)
+            {
+                if(first==NONE) first=decl;
+                last=append(last, decl);
+            }
+            if(diagnostics != null && decl==NONE && !panic && tokens.type(crtTk) != TokenType.END)
+            {
+                tkerr(crtTk, TOP_LEVEL);
+            }
+            if(panic)
+            {
+                skipDecl(start);
+                continue;
+            }
+            if(decl!=NONE) continue;
+            break;
+        }
+
+        if(!consume(TokenType.END)) return NONE;
+        return node(NodeKind.UNIT, consumedTk, first, NONE, NONE);
+    }
+
+    private int decl()
+    {
+        if(!predictive)
+        {
+            int decl=declStruct();
+            if(decl==NONE) decl=declFunc();
+            if(decl==NONE) decl=declVar();
+            return decl;
+        }
+
+        if(peek(0) == TokenType.VOID)
+        {
+            if(peek(1) != TokenType.ID || peek(2) != TokenType.LPAR) return NONE;
+            consume(TokenType.VOID);
+            int base=consumedTk;
+            consume(TokenType.ID);
+            return funcRest(base);
+        }
+        if(peek(0) == TokenType.STRUCT && peek(1) == TokenType.ID && peek(2) == TokenType.LACC) return declStruct();
+        if(peek(0) == TokenType.STRUCT && peek(1) == TokenType.ID && peek(2) != TokenType.ID)
+        {
+            tkerr(crtTk + 2, "missing '{' in struct declaration");
+            return NONE;
+        }
+        if(!startsVar()) return NONE;
+        if(peek(peek(0) == TokenType.STRUCT ? 3 : 2) != TokenType.LPAR) return declVar();
+
+        int base=typeBase();
+        consume(TokenType.ID);
+        return funcRest(base);
+    }
+
+    private boolean startsVar()
+    {
+        if(peek(0) == TokenType.STRUCT)
+        {
+            if(peek(1) != TokenType.ID) tkerr(crtTk + 1, "missing ID after 'struct'");
+            return peek(2) == TokenType.ID;
+        }
+        return at(FIRST_TYPE_BASE, 0) && peek(1) == TokenType.ID;
+    }
+
+    private int declStruct()
+    {
+        int startTk=crtTk;
+
+        if(consume(TokenType.STRUCT))
+        {
+            if(consume(TokenType.ID))
+            {
+                int name=consumedTk;
+                if(consume(TokenType.LACC))
+                {
+                    int first=NONE;
+                    int last=NONE;
+                    while(true)
+                    {
+                        int var=declVar();
+                        if(panic)
+                        {
+                            skipStatement();
+                            continue;
+                        }
+                        if(var==NONE) break;
+                        if(first==NONE) first=var;
+                        last=append(last, var);
+                    }
+                    if(consume(TokenType.RACC))
+                    {
+                        if(consume(TokenType.SEMICOLON))
+                        {
+                            return node(NodeKind.STRUCT, name, first, NONE, NONE);
+                        }
+                        else tkerr(crtTk, "missing ';' after struct declaration");
+                    }
+                    else tkerr(crtTk, "missing '}' in struct declaration");
+                }
+                // struct ID ID starts a variable or function instead
+                else if(peek(0) != TokenType.ID) tkerr(crtTk, "missing '{' in struct declaration");
+            }
+            else tkerr(crtTk, "missing ID after 'struct'");
+        }
+
+        backtrack(startTk);
+        return NONE;
+    }
+
+    private int declVar()
+    {
+        int startTk=crtTk;
+
+        if(predictive)
+        {
+            if(!startsVar()) return NONE;
+            int base=typeBase();
+            consume(TokenType.ID);
+            return varRest(base);
+        }
+
+        int base=typeBase();
+        if(base!=NONE)
+        {
+            if(consume(TokenType.ID))
+            {
+                return varRest(base);
+            }
+        }
+        backtrack(startTk);
+        return NONE;
+    }
+
+    private int varRest(int base)
+    {
+        int name=consumedTk;
+        int first=node(NodeKind.VAR, name, arrayDecl(base), NONE, NONE);
+        int last=first;
+        while(true)
+        {
+            if(consume(TokenType.COMMA))
+            {
+                if(!consume(TokenType.ID)) tkerr(crtTk, "missing ID after ',' in variable list");
+                name=consumedTk;
+                last=link(last, node(NodeKind.VAR, name, arrayDecl(base), NONE, NONE));
+            }
+            else
+            {
+                break;
+            }
+        }
+        if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after variable declaration");
+        return first;
+    }
+
+    private int declFunc()
+    {
+        int startTk=crtTk;
+
+        int base=typeBase();
+        if(base==NONE && consume(TokenType.VOID)) base=consumedTk;
+        if(base==NONE || !consume(TokenType.ID) || peek(0) != TokenType.LPAR)
+        {
+            backtrack(startTk);
+            return NONE;
+        }
+
+        return funcRest(base);
+    }
+
+    private int funcRest(int base)
+    {
+        int name=consumedTk;
+        int type=node(NodeKind.TYPE, base, NONE, NONE, NONE);
+        consume(TokenType.LPAR);
+
+        int first=funcArg();
+        if(first!=NONE)
+        {
+            int last=first;
+            while(consume(TokenType.COMMA))
+            {
+                int arg=funcArg();
+                if(arg==NONE) tkerr(crtTk, "invalid funcArg after ','");
+                last=link(last, arg);
+            }
+        }
+
+        if(!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' in function declaration");
+
+        int body=stmCompound();
+        if(body==NONE) tkerr(crtTk, "invalid function body");
+
+        return node(NodeKind.FUNC, name, type, first, body);
+    }
+
+    private int funcArg()
+    {
+        int startTk=crtTk;
+
+        if(predictive)
+        {
+            if(!startsVar()) return NONE;
+            int base=typeBase();
+            consume(TokenType.ID);
+            int name=consumedTk;
+            return node(NodeKind.VAR, name, arrayDecl(base), NONE, NONE);
+        }
+
+        int base=typeBase();
+        if(base!=NONE)
+        {
+            if(consume(TokenType.ID))
+            {
+                int name=consumedTk;
+                return node(NodeKind.VAR, name, arrayDecl(base), NONE, NONE);
+            }
+        }
+
+        backtrack(startTk);
+        return NONE;
+    }
+
+    private int typeBase()
+    {
+        if(consume(TokenType.INT)) return consumedTk;
+        if(consume(TokenType.DOUBLE)) return consumedTk;
+        if(consume(TokenType.CHAR)) return consumedTk;
+        if(consume(TokenType.STRUCT))
+        {
+            if(!consume(TokenType.ID)) tkerr(crtTk, "missing ID after 'struct'");
+            return consumedTk;
+        }
+        return NONE;
+    }
+
+    private int arrayDecl(int base)
+    {
+        if(consume(TokenType.LBRACKET))
+        {
+            int size=expr();
+            if(!consume(TokenType.RBRACKET)) tkerr(crtTk, "missing ']' in array declaration");
+            return node(NodeKind.ARRAY, base, size, NONE, NONE);
+        }
+
+        return node(NodeKind.TYPE, base, NONE, NONE, NONE);
+    }
+
+    private int typeName() 
+    {
+        int base=typeBase();
+        if(base==NONE) return NONE;
+        return arrayDecl(base);
+    }
+
+    private int stm()
+    {
+        if(++depth > maxDepth) maxDepth=depth;
+        int node=parseStm();
+        depth--;
+        return node;
+    }
+
+    private int parseStm()
+    {
+        int startToken=crtTk;
+
+        if(predictive && !at(FIRST_STM, 0)) return NONE;
+
+        int block=stmCompound();
+        if(block!=NONE)
+        {
+            return block;
+        }
+
+        if(consume(TokenType.IF))
+        {
+            int tk=consumedTk;
+            if(!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after if");
+            int cond=expr();
+            if(cond==NONE) tkerr(crtTk, "invalid expression inside if");
+            if(!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after if condition");
+            int then=stm();
+            if(then==NONE) tkerr(crtTk, "missing statement after if");
+            int otherwise=NONE;
+            if(consume(TokenType.ELSE))
+            {
+                otherwise=stm();
+                if(otherwise==NONE) tkerr(crtTk, "missing statement after else");
+            }
+
+            return node(NodeKind.IF, tk, cond, then, otherwise);
+        }
+
+        if (consume(TokenType.WHILE)) 
+        {
+            int tk=consumedTk;
+            if (!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after while");
+            int cond=expr();
+            if (cond==NONE) tkerr(crtTk, "invalid expression inside while");
+            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after while condition");
+            int body=stm();
+            if (body==NONE) tkerr(crtTk, "missing statement after while");
+
+            return node(NodeKind.WHILE, tk, cond, body, NONE);
+        }
+
+        if (consume(TokenType.FOR)) 
+        {
+            int tk=consumedTk;
+            if (!consume(TokenType.LPAR)) tkerr(crtTk, "missing '(' after for");
+            int init=expr();
+            if (!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after first for expression");
+            int cond=expr();
+            if (!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after second for expression");
+            int step=expr();
+            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after for expressions");
+            int body=stm();
+            if (body==NONE) tkerr(crtTk, "missing statement after for");
+
+            return node(NodeKind.FOR, tk, node(NodeKind.FOR_HEAD, tk, init, cond, step), body, NONE);
+        }
+
+        if(consume(TokenType.BREAK))
+        {
+            int tk=consumedTk;
+            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after break");
+            return node(NodeKind.BREAK, tk, NONE, NONE, NONE);
+        }
+
+        if(consume(TokenType.RETURN))
+        {
+            int tk=consumedTk;
+            int value=expr();
+            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after return");
+            return node(NodeKind.RETURN, tk, value, NONE, NONE);
+        }
+
+        int value=expr();
+        if(value!=NONE)
+        {
+            if(!consume(TokenType.SEMICOLON)) tkerr(crtTk, "missing ';' after expression");
+            return node(NodeKind.EXPR, startToken, value, NONE, NONE);
+        }
+
+        if(consume(TokenType.SEMICOLON))
+        {
+            return node(NodeKind.EMPTY, consumedTk, NONE, NONE, NONE);
+        }
+
+        backtrack(startToken);
+
+        return NONE;
+    }
+
+    private int stmCompound()
+    {
+        if(!consume(TokenType.LACC)) return NONE;
+        int tk=consumedTk;
+
+        int first=NONE;
+        int last=NONE;
+        while (true) 
+        {
+            int item=declVar();
+            if(item==NONE && !panic) item=stm();
+            if(panic)
+            {
+                skipStatement();
+                continue;
+            }
+            if(item==NONE)
+            {
+                break;
+            }
+            if(first==NONE) first=item;
+            last=append(last, item);
+        }
+
+        if(!consume(TokenType.RACC)) tkerr(crtTk, "missing '}' or syntax error in stmCompound");
+
+        return node(NodeKind.BLOCK, tk, first, NONE, NONE);
+    }
+
+    private int expr()
+    {
+        if(++depth > maxDepth) maxDepth=depth;
+        int node=pratt ? exprPratt(0) : exprAssign();
+        depth--;
+        return node;
+    }
+
+    // a cast or unary operand, then every operator binding at least min; only an operand with no cast or binary
+    // operator applied can be assigned to, as in exprAssign
+    private int exprPratt(int min)
+    {
+        int startTk=crtTk;
+        int left;
+        boolean target=false;
+        if(peek(0) == TokenType.LPAR && at(FIRST_CAST, 1))
+        {
+            consume(TokenType.LPAR);
+            left=castRest(startTk, typeName());
+        }
+        else
+        {
+            left=parseExprUnary();
+            target=true;
+        }
+        if(left==NONE) return NONE;
+
+        while(true)
+        {
+            TokenType op=peek(0);
+            int power=BINDING[op.ordinal()];
+            if(power==0 || power < min) break;
+            if(op==TokenType.ASSIGN)
+            {
+                if(!target) break;
+                consume(op);
+                return assignRest(left);
+            }
+            consume(op);
+            int tk=consumedTk;
+            int right=exprPratt(power + 1);
+            if(right==NONE) tkerr(crtTk, OPERAND_ERROR[op.ordinal()]);
+            left=binary(tk, left, right);
+            target=false;
+        }
+        return left;
+    }
+
+    private int exprAssign()
+    {
+        int startToken=crtTk;
+        int mark=ast.size();
+
+        if(predictive)
+        {
+            if(!at(FIRST_EXPR, 0)) return NONE;
+
+            int left=exprOr();
+            if(left==NONE) return NONE;
+            if(unaryStart == startToken && unaryEnd == crtTk && consume(TokenType.ASSIGN))
+            {
+                return assignRest(left);
+            }
+            return left;
+        }
+
+        int left=exprUnary();
+        if(left!=NONE)
+        {
+            if(consume(TokenType.ASSIGN))
+            {
+                return assignRest(left);
+            }
+
+            rewind(startToken, mark);
+        }
+
+        return exprOr();
+    }
+
+    private int assignRest(int left)
+    {
+        int tk=consumedTk;
+        int right=pratt ? exprPratt(0) : exprAssign();
+        if(right==NONE) tkerr(crtTk, "invalid assignment");
+        return node(NodeKind.ASSIGN, tk, left, right, NONE);
+    }
+
+    private int exprOr()
+    {
+        int left=exprAnd();
+        if(left==NONE) return NONE;
+
+        while(consume(TokenType.OR))
+        {
+            int op=consumedTk;
+            int right=exprAnd();
+            if(right==NONE) tkerr(crtTk, "invalid expression after ||");
+            left=binary(op, left, right);
+        }
+
+        return left;
+    }
+
+    private int exprAnd()
+    {
+        int left=exprEq();
+        if(left==NONE) return NONE;
+        while (consume(TokenType.AND)) 
+        {
+            int op=consumedTk;
+            int right=exprEq();
+            if (right==NONE) tkerr(crtTk, "invalid expression after &&");    
+            left=binary(op, left, right);
+        }
+
+        return left;
+    }
+
+    private int exprEq() 
+    {
+        int left=exprRel();
+        if (left==NONE) return NONE;
+        while (true) 
+        {
+            if (consume(TokenType.EQUAL) || consume(TokenType.NOTEQ)) 
+            {
+                int op=consumedTk;
+                int right=exprRel();
+                if (right==NONE) tkerr(crtTk, "invalid expression after == or !=");
+                left=binary(op, left, right);
+            } 
+            else break;
+        }
+        return left;
+    }
+
+    private int exprRel() 
+    {
+        int left=exprAdd();
+        if (left==NONE) return NONE;
+        while (true) 
+        {
+            if (consume(TokenType.LESS) || consume(TokenType.LESSEQ) || consume(TokenType.GREATER) || consume(TokenType.GREATEREQ)) 
+            {
+                int op=consumedTk;
+                int right=exprAdd();
+                if (right==NONE) tkerr(crtTk, "invalid expression after relational operator");
+                left=binary(op, left, right);
+            } 
+            else break;
+        }
+        return left;
+    }
+
+    private int exprAdd() 
+    {
+        int left=exprMul();
+        if (left==NONE) return NONE;
+        while (true) 
+        {
+            if (consume(TokenType.ADD) || consume(TokenType.SUB)) 
+            {
+                int op=consumedTk;
+                int right=exprMul();
+                if (right==NONE) tkerr(crtTk, "invalid expression after '+' or '-'");
+                left=binary(op, left, right);
+            } 
+            else break;
+        }
+        return left;
+    }
+
+    private int exprMul() 
+    {
+        int left=exprCast();
+        if (left==NONE) return NONE;
+
+        while (true) 
+        {
+            if (consume(TokenType.MUL) || consume(TokenType.DIV)) 
+            {
+                int op=consumedTk;
+                int right=exprCast();
+                if (right==NONE) tkerr(crtTk, "invalid expression after '*' or '/'");
+                left=binary(op, left, right);
+            } 
+            else break;
+        }
+        return left;
+    }
+
+    private int memoized(int rule, boolean unary)
+    {
+        int startTk = crtTk;
+        int end = memo.get(rule, startTk);
+        if(end == ParseMemo.FAILED) return NONE;
+        if(end >= 0)
+        {
+            crtTk = end;
+            consumedTk = end - 1;
+            return memo.node();
+        }
+
+        int node = unary ? parseExprUnary() : parseExprCast();
+        memo.put(rule, startTk, node != NONE ? crtTk : ParseMemo.FAILED, node);
+        return node;
+    }
+
+    private int exprCast()
+    {
+        if(memo != null) return memoized(RULE_EXPR_CAST, false);
+        return parseExprCast();
+    }
+
+    private int parseExprCast() 
+    {
+        int startTk = crtTk;
+
+        if (predictive)
+        {
+            if (peek(0) == TokenType.LPAR && at(FIRST_CAST, 1))
+            {
+                consume(TokenType.LPAR);
+                return castRest(startTk, typeName());
+            }
+            return exprUnary();
+        }
+
+        if (consume(TokenType.LPAR)) 
+        {
+            int type=typeName();
+            if (type!=NONE) 
+            {
+                return castRest(startTk, type);
+            }
+            backtrack(startTk);
+        }
+        return exprUnary();
+    }
+
+    private int castRest(int tk, int type)
+    {
+        if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after cast");
+        int value=pratt ? exprPratt(Integer.MAX_VALUE) : exprCast();
+        if (value==NONE) tkerr(crtTk, "invalid expression after cast");
+        if (tree && folding && value!=NONE && ast.kind(type)==NodeKind.TYPE)
+        {
+            int folded=fold.cast(tk, tokens.type(ast.token(type)), value);
+            if (folded!=NONE) return folded;
+        }
+        return node(NodeKind.CAST, tk, type, value, NONE);
+    }
+
+    private int exprUnary()
+    {
+        int startTk = crtTk;
+        int node = memo != null ? memoized(RULE_EXPR_UNARY, true) : parseExprUnary();
+        if(node != NONE)
+        {
+            unaryStart = startTk;
+            unaryEnd = crtTk;
+        }
+        return node;
+    }
+
+    private int parseExprUnary() 
+    {
+        if (consume(TokenType.SUB) || consume(TokenType.NOT)) 
+        {
+            int op=consumedTk;
+            int operand=exprUnary();
+            if (operand==NONE) tkerr(crtTk, "invalid expression after unary '-' or '!'");
+            if (tree && folding && operand!=NONE)
+            {
+                int folded=fold.unary(op, tokens.type(op), operand);
+                if (folded!=NONE) return folded;
+            }
+            return node(NodeKind.UNARY, op, operand, NONE, NONE);
+        }
+        return exprPostfix();
+    }
+
+    private int exprPostfix() 
+    {
+        int left=exprPrimary();
+        if (left==NONE) return NONE;
+        while (true) 
+        {
+            if (consume(TokenType.LBRACKET)) 
+            {
+                int tk=consumedTk;
+                int index=expr();
+                if (index==NONE) tkerr(crtTk, "invalid index expression in array access");
+                if (!consume(TokenType.RBRACKET)) tkerr(crtTk, "missing ']' in array access");
+                left=node(NodeKind.INDEX, tk, left, index, NONE);
+            } 
+            else if (consume(TokenType.DOT)) 
+            {
+                if (!consume(TokenType.ID)) tkerr(crtTk, "missing field name after '.'");
+                left=node(NodeKind.FIELD, consumedTk, left, NONE, NONE);
+            } 
+            else 
+            {
+                break;
+            }
+        }
+        return left;
+    }
+
+    private int exprPrimary() 
+    {
+        int startTk = crtTk;
+    
+        if (consume(TokenType.ID)) 
+        {
+            int name=consumedTk;
+            if (consume(TokenType.LPAR)) 
+            {
+                int first=expr();
+                if (first!=NONE) 
+                {
+                    int last=first;
+                    while (consume(TokenType.COMMA)) 
+                    {
+                        int arg=expr();
+                        if (arg==NONE) tkerr(crtTk, "invalid expression after ',' in call");
+                        last=link(last, arg);
+                    }
+                }
+                if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after function call arguments");
+                return node(NodeKind.CALL, name, first, NONE, NONE);
+            }
+            return node(NodeKind.ID, name, NONE, NONE, NONE);
+        }
+        if (consume(TokenType.CT_INT) || consume(TokenType.CT_REAL) || consume(TokenType.CT_CHAR))
+        {
+            return tree ? fold.literal(consumedTk, tokens.type(consumedTk), tokens.value(consumedTk)) : 0;
+        }
+        if (consume(TokenType.CT_STRING)) return node(NodeKind.LITERAL, consumedTk, NONE, NONE, NONE);
+        if (consume(TokenType.LPAR)) 
+        {
+            if (at(FIRST_CAST, 0))
+            {
+                backtrack(startTk);
+                return NONE;
+            }
+            int inner=expr();
+            if (inner==NONE) tkerr(crtTk, "invalid expression inside '(' ')'");
+            if (!consume(TokenType.RPAR)) tkerr(crtTk, "missing ')' after expression");
+            return inner;
+        }
+    
+        backtrack(startTk);
+        return NONE;
+    }
+}
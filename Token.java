@@ -0,0 +1,41 @@
+class Token
+{
+    TokenType type;
+    private String text;
+    int line;
+
+    private Source src;
+    int start;
+    int length;
+
+    public Token(TokenType type, String text, int line)
+    {
+        this.type = type;
+        this.text = text;
+        this.line = line;
+    }
+
+    Token(TokenType type, Source src, int start, int end, int line)
+    {
+        this.type = type;
+        this.src = src;
+        this.start = start;
+        this.length = end - start;
+        this.line = line;
+    }
+
+    public String text()
+    {
+        if(text == null)
+        {
+            text = src.text(start, start + length);
+            src = null;
+        }
+        return text;
+    }
+
+    public String toString()
+    {
+        return String.format("Token(%s, \"%s\", Line: %d)", type, text(), line);
+    }
+}
@@ -0,0 +1,410 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+class TokenCache
+{
+    static class Entry
+    {
+        final TokenStore tokens;
+        final List<String> warnings;    // what lexing printed, for a hit to print again
+        final Ast ast;
+        final int root;
+
+        Entry(TokenStore tokens, List<String> warnings, Ast ast, int root)
+        {
+            this.tokens = tokens;
+            this.warnings = warnings;
+            this.ast = ast;
+            this.root = root;
+        }
+    }
+
+    private static final int MAGIC = 0x41544331;
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".tok";
+
+    private final Path dir;
+    private final long limit;
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+    private long total = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TokenCache(Path dir, long limit) throws IOException
+    {
+        this.dir = dir;
+        this.limit = limit;
+        Files.createDirectories(dir);
+        List<Path> files;
+        try(Stream<Path> list = Files.list(dir))
+        {
+            files = list.filter(p -> p.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        Map<Path, FileTime> used = new HashMap<>();
+        for(Path file : files) used.put(file, Files.getLastModifiedTime(file));
+        files.sort(Comparator.comparing(used::get));
+        for(Path file : files)
+        {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            total += size;
+        }
+    }
+
+    public static String key(MappedSource src)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(src.buffer());
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Entry load(String key, MappedSource src) throws IOException
+    {
+        Path file = dir.resolve(key + SUFFIX);
+        synchronized(this)
+        {
+            if(index.get(key) == null)
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        ByteBuffer in;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch(NoSuchFileException e)
+        {
+            forget(key);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Entry entry;
+        try
+        {
+            entry = decode(in, src);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            entry = null;
+        }
+        if(entry == null)
+        {
+            // stale, truncated or corrupt: drop it so the next store writes a fresh one
+            forget(key);
+            try
+            {
+                Files.deleteIfExists(file);
+            }
+            catch(IOException e)
+            {
+                // some platforms refuse to delete a mapped file; the next store replaces it anyway
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        touch(key, file);
+        return entry;
+    }
+
+    // counts and lengths are checked against the bytes left before anything is allocated for them; each symbol and
+    // warning takes at least 1 byte, each token 6 and each node 6
+    private static Entry decode(ByteBuffer in, MappedSource src)
+    {
+        if(in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != src.length()) return null;
+
+        SymbolTable symbols = new SymbolTable();
+        int symbolCount = in.getInt();
+        if(symbolCount < 0 || symbolCount > in.remaining()) return null;
+        for(int i = 0; i < symbolCount; i++)
+        {
+            String name = string(in);
+            if(name == null) return null;
+            symbols.intern(name);
+        }
+        TokenStore tokens = new TokenStore(src, symbols);
+        int count = in.getInt();
+        if(count < 0 || count > in.remaining() / 6) return null;
+        int capacity = Math.max(count, 1);
+        tokens.types = new byte[capacity];
+        tokens.starts = new int[capacity];
+        tokens.lengths = new int[capacity];
+        tokens.lines = new int[capacity];
+        tokens.syms = new int[capacity];
+        tokens.values = new long[capacity];
+        in.get(tokens.types, 0, count);
+        int start = 0;
+        int line = 0;
+        for(int i = 0; i < count; i++)
+        {
+            tokens.starts[i] = start += (int)unzigzag(varint(in));
+            tokens.lengths[i] = (int)varint(in);
+            tokens.lines[i] = line += (int)unzigzag(varint(in));
+            tokens.syms[i] = (int)varint(in) - 1;
+            tokens.values[i] = unzigzag(varint(in));
+        }
+        tokens.count = count;
+
+        long warningCount = varint(in);
+        if(warningCount > in.remaining()) return null;
+        List<String> warnings = new ArrayList<>();
+        for(long i = 0; i < warningCount; i++)
+        {
+            String warning = string(in);
+            if(warning == null) return null;
+            warnings.add(warning);
+        }
+
+        Ast ast = null;
+        int root = Ast.NONE;
+        int nodes = in.getInt();
+        if(nodes >= 0)
+        {
+            if(nodes > (in.remaining() - 4) / 6) return null;
+            root = in.getInt();
+            capacity = Math.max(nodes, 1);
+            ast = new Ast();
+            ast.kinds = new byte[capacity];
+            ast.tks = new int[capacity];
+            ast.as = new int[capacity];
+            ast.bs = new int[capacity];
+            ast.cs = new int[capacity];
+            ast.nexts = new int[capacity];
+            in.get(ast.kinds, 0, nodes);
+            for(int i = 0; i < nodes; i++)
+            {
+                ast.tks[i] = (int)varint(in) - 1;
+                ast.as[i] = (int)unzigzag(varint(in)) - 1;
+                ast.bs[i] = (int)unzigzag(varint(in)) - 1;
+                ast.cs[i] = (int)unzigzag(varint(in)) - 1;
+                ast.nexts[i] = (int)varint(in) - 1;
+            }
+            ast.count = nodes;
+        }
+        return in.hasRemaining() ? null : new Entry(tokens, warnings, ast, root);
+    }
+
+    // a varint byte count, then that many bytes of UTF-8; null when the count runs past the entry
+    private static String string(ByteBuffer in)
+    {
+        long length = varint(in);
+        if(length > in.remaining()) return null;
+        byte[] bytes = new byte[(int)length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void store(String key, TokenStore tokens, Ast ast, int root) throws IOException
+    {
+        store(key, tokens, List.of(), ast, root);
+    }
+
+    public void store(String key, TokenStore tokens, List<String> warnings, Ast ast, int root) throws IOException
+    {
+        // a streamed source has no length to validate a later load against
+        if(tokens.src.length() < 0) return;
+        SymbolTable symbols = tokens.symbols;
+        byte[][] names = new byte[symbols.size() + warnings.size()][];
+        long size = 20;
+        for(int i = 0; i < names.length; i++)
+        {
+            String name = i < symbols.size() ? symbols.name(i) : warnings.get(i - symbols.size());
+            names[i] = name.getBytes(StandardCharsets.UTF_8);
+            size += 5 + names[i].length;
+        }
+        int count = tokens.size();
+        int nodes = ast != null ? ast.size() : 0;
+        size += 12 + count * 31L + nodes * 26L;
+        if(size > Integer.MAX_VALUE) return;
+
+        ByteBuffer out = ByteBuffer.allocate((int)size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(tokens.src.length()).putInt(symbols.size());
+        for(int i = 0; i < symbols.size(); i++) putString(out, names[i]);
+        out.putInt(count);
+        out.put(tokens.types, 0, count);
+        int start = 0;
+        int line = 0;
+        for(int i = 0; i < count; i++)
+        {
+            putVarint(out, zigzag(tokens.starts[i] - start));
+            putVarint(out, tokens.lengths[i]);
+            putVarint(out, zigzag(tokens.lines[i] - line));
+            putVarint(out, tokens.syms[i] + 1);
+            putVarint(out, zigzag(tokens.values[i]));
+            start = tokens.starts[i];
+            line = tokens.lines[i];
+        }
+        putVarint(out, warnings.size());
+        for(int i = symbols.size(); i < names.length; i++) putString(out, names[i]);
+        if(ast == null)
+        {
+            out.putInt(Ast.NONE);
+        }
+        else
+        {
+            out.putInt(nodes).putInt(root);
+            out.put(ast.kinds, 0, nodes);
+            for(int i = 0; i < nodes; i++)
+            {
+                putVarint(out, ast.tks[i] + 1);
+                putVarint(out, zigzag(ast.as[i] + 1L));
+                putVarint(out, zigzag(ast.bs[i] + 1L));
+                putVarint(out, zigzag(ast.cs[i] + 1L));
+                putVarint(out, ast.nexts[i] + 1);
+            }
+        }
+        out.flip();
+        int written = out.limit();
+
+        Path file = dir.resolve(key + SUFFIX);
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        try
+        {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+            {
+                while(out.hasRemaining()) channel.write(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        stores.incrementAndGet();
+
+        List<String> evicted = new ArrayList<>();
+        synchronized(this)
+        {
+            Long previous = index.put(key, (long)written);
+            total += written - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while(total > limit && it.hasNext())
+            {
+                Map.Entry<String, Long> oldest = it.next();
+                if(oldest.getKey().equals(key)) continue;
+                total -= oldest.getValue();
+                evicted.add(oldest.getKey());
+                it.remove();
+            }
+        }
+        for(String old : evicted)
+        {
+            Files.deleteIfExists(dir.resolve(old + SUFFIX));
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long hits()
+    {
+        return hits.get();
+    }
+
+    public long misses()
+    {
+        return misses.get();
+    }
+
+    public long stores()
+    {
+        return stores.get();
+    }
+
+    public long evictions()
+    {
+        return evictions.get();
+    }
+
+    public synchronized long bytes()
+    {
+        return total;
+    }
+
+    public void report(PrintStream out)
+    {
+        out.printf("cache: %d hits, %d misses, %d stores, %d evictions, %d bytes in %s%n", hits(), misses(), stores(), evictions(), bytes(), dir);
+    }
+
+    private synchronized void forget(String key)
+    {
+        Long size = index.remove(key);
+        if(size != null) total -= size;
+    }
+
+    private void touch(String key, Path file) throws IOException
+    {
+        synchronized(this)
+        {
+            index.get(key);
+        }
+        try
+        {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch(NoSuchFileException e)
+        {
+            forget(key);
+        }
+    }
+
+    // columns are LEB128 varints: starts and lines as zigzagged deltas, indices shifted past NONE, and the
+    // a/b/c operands and literal values zigzagged because CONST nodes keep raw values there
+    private static long varint(ByteBuffer in)
+    {
+        long value = 0;
+        for(int shift = 0; ; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes)
+    {
+        putVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static void putVarint(ByteBuffer out, long value)
+    {
+        while((value & ~0x7FL) != 0)
+        {
+            out.put((byte)(value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+    private static long zigzag(long value)
+    {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value)
+    {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,8 @@
+// a token store that fills as the parser reads: Syntactic asks for an index before reading past what the store holds
+interface TokenFeed
+{
+    // makes token i readable, or every token when there are fewer
+    void fill(int i);
+
+    boolean ended();
+}
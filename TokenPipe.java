@@ -0,0 +1,124 @@
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ObjIntConsumer;
+
+// lexes on its own thread into a bounded single-producer/single-consumer ring of token batches; the parser
+// thread pulls batches into its TokenStore as it reads past the end, so parsing overlaps lexing. The ring bounds
+// only how far the lexer runs ahead: pulled tokens stay in the store, since the AST and the later phases refer to
+// tokens by index and read their text from the source, so memory still grows with the file
+class TokenPipe implements TokenFeed
+{
+    static final int BATCH = 1024;
+    static final int SLOTS = 16;
+
+    private final Lex lex;
+    private final TokenStore tokens;
+    private final TokenStore[] ring = new TokenStore[SLOTS];
+    private final Thread producer;
+    private volatile Thread consumer;
+
+    private volatile long head = 0;     // batches taken by the consumer
+    private volatile long tail = 0;     // batches published by the producer
+    private volatile RuntimeException failure;
+    private boolean ended = false;
+
+    public TokenPipe(Source src, boolean tables)
+    {
+        if(!src.retains()) throw new IllegalStateException("pipelined lexing needs a source that keeps its text");
+        lex = new Lex(src).useTables(tables);
+        tokens = new TokenStore(src, lex.symbols());
+        for(int i = 0; i < SLOTS; i++) ring[i] = new TokenStore(src, lex.symbols());
+        producer = new Thread(this::produce, "atomc-lex");
+        producer.setDaemon(true);
+    }
+
+    // the store the consumer reads; it holds every token pulled so far, so a rewind never reaches back into the ring
+    public TokenStore tokens()
+    {
+        return tokens;
+    }
+
+    public TokenPipe recover(Diagnostics diagnostics)
+    {
+        lex.recover(diagnostics);
+        return this;
+    }
+
+    // the sink is called on the lexer thread
+    public TokenPipe warnings(ObjIntConsumer<String> warnings)
+    {
+        lex.warnings(warnings);
+        return this;
+    }
+
+    // the error that stopped the lexer, or null
+    public RuntimeException failure()
+    {
+        return failure;
+    }
+
+    public TokenPipe start()
+    {
+        consumer = Thread.currentThread();
+        producer.start();
+        return this;
+    }
+
+    // batches published and not yet pulled; SLOTS when the ring is full and the lexer waits
+    int buffered()
+    {
+        return (int)(tail - head);
+    }
+
+    public boolean ended()
+    {
+        return ended;
+    }
+
+    private void produce()
+    {
+        try
+        {
+            while(true)
+            {
+                while(tail - head >= SLOTS) LockSupport.park(this);
+                TokenStore batch = ring[(int)(tail % SLOTS)];
+                batch.truncate(0);
+                boolean more = true;
+                while(batch.size() < BATCH && (more = lex.next(batch, Integer.MAX_VALUE))) {}
+                if(!more) batch.add(TokenType.END, lex.position(), 0, lex.line(), -1);
+                tail++;
+                LockSupport.unpark(consumer);
+                if(!more) return;
+            }
+        }
+        catch(RuntimeException e)
+        {
+            failure = e;
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // pulls batches until token i is in the store or END has arrived; a lexer failure is rethrown here once the
+    // batches published before it are consumed
+    public void fill(int i)
+    {
+        while(!ended && tokens.size() <= i)
+        {
+            while(head == tail)
+            {
+                if(failure != null && head == tail) throw failure;
+                LockSupport.park(this);
+            }
+            TokenStore batch = ring[(int)(head % SLOTS)];
+            tokens.append(batch, 0, batch.size(), 0, 0);
+            ended = batch.types[batch.size() - 1] == TokenType.END.ordinal();
+            head++;
+            LockSupport.unpark(producer);
+        }
+    }
+
+    public void drain()
+    {
+        fill(Integer.MAX_VALUE);
+    }
+}
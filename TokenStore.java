@@ -0,0 +1,130 @@
+import java.util.*;
+
+class TokenStore
+{
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    final Source src;
+    final SymbolTable symbols;
+    byte[] types = new byte[INITIAL_CAPACITY];
+    int[] starts = new int[INITIAL_CAPACITY];
+    int[] lengths = new int[INITIAL_CAPACITY];
+    int[] lines = new int[INITIAL_CAPACITY];
+    int[] syms = new int[INITIAL_CAPACITY];
+    long[] values = new long[INITIAL_CAPACITY];
+    int count = 0;
+
+    public TokenStore(Source src, SymbolTable symbols)
+    {
+        this.src = src;
+        this.symbols = symbols;
+    }
+
+    void add(TokenType type, int start, int length, int line, int sym)
+    {
+        add(type, start, length, line, sym, 0);
+    }
+
+    void add(TokenType type, int start, int length, int line, int sym, long value)
+    {
+        if(count == types.length) grow();
+        types[count] = (byte)type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        syms[count] = sym;
+        values[count] = value;
+        count++;
+    }
+
+    private void grow()
+    {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        syms = Arrays.copyOf(syms, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    void append(TokenStore other, int from, int n, int startDelta, int lineDelta)
+    {
+        while(count + n > types.length) grow();
+        System.arraycopy(other.types, from, types, count, n);
+        System.arraycopy(other.starts, from, starts, count, n);
+        System.arraycopy(other.lengths, from, lengths, count, n);
+        System.arraycopy(other.lines, from, lines, count, n);
+        System.arraycopy(other.syms, from, syms, count, n);
+        System.arraycopy(other.values, from, values, count, n);
+        if(startDelta != 0 || lineDelta != 0)
+        {
+            for(int i = count; i < count + n; i++)
+            {
+                starts[i] += startDelta;
+                lines[i] += lineDelta;
+            }
+        }
+        count += n;
+    }
+
+    void truncate(int size)
+    {
+        count = size;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public TokenType type(int i)
+    {
+        return TYPES[types[i]];
+    }
+
+    public int start(int i)
+    {
+        return starts[i];
+    }
+
+    public int length(int i)
+    {
+        return lengths[i];
+    }
+
+    public int line(int i)
+    {
+        return lines[i];
+    }
+
+    public int symbol(int i)
+    {
+        return syms[i];
+    }
+
+    public long value(int i)
+    {
+        return values[i];
+    }
+
+    public double real(int i)
+    {
+        return Double.longBitsToDouble(values[i]);
+    }
+
+    public String text(int i)
+    {
+        if(types[i] == TokenType.END.ordinal()) return "EOF";
+        if(syms[i] >= 0) return symbols.name(syms[i]);
+        return src.text(starts[i], starts[i] + lengths[i]);
+    }
+
+    public Token token(int i)
+    {
+        if(types[i] == TokenType.END.ordinal()) return new Token(TokenType.END, "EOF", lines[i]);
+        if(syms[i] >= 0) return new Token(TokenType.ID, symbols.name(syms[i]), lines[i]);
+        return new Token(type(i), src, starts[i], starts[i] + lengths[i], lines[i]);
+    }
+}
@@ -0,0 +1,28 @@
+enum TokenType
+{
+    ID, BREAK("break"), CHAR("char"), DOUBLE("double"), ELSE("else"), FOR("for"), IF("if"), INT("int"),
+    RETURN("return"), STRUCT("struct"), VOID("void"), WHILE("while"),
+    CT_INT, CT_REAL, CT_STRING, CT_CHAR,
+    COMMA(","), SEMICOLON(";"), LPAR("("), RPAR(")"), LBRACKET("["), RBRACKET("]"), LACC("{"), RACC("}"),
+    ADD("+"), SUB("-"), MUL("*"), DIV("/"), DOT("."), AND("&&"), OR("||"), NOT("!"), ASSIGN("="), EQUAL("=="), NOTEQ("!="),
+    LESS("<"), LESSEQ("<="), GREATER(">"), GREATEREQ(">="),
+    SPACE, LINECOMMENT, COMMENT,
+    END;
+
+    final String spelling;
+
+    TokenType()
+    {
+        this(null);
+    }
+
+    TokenType(String spelling)
+    {
+        this.spelling = spelling;
+    }
+
+    boolean isKeyword()
+    {
+        return spelling != null && Character.isLetter(spelling.charAt(0));
+    }
+}
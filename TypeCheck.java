@@ -0,0 +1,382 @@
+import java.util.*;
+
+class TypeCheck
+{
+    private static final int NONE = Ast.NONE;
+
+    private final TokenStore tokens;
+    private final Ast ast;
+    private final Domain domain;
+    private final Diagnostics diagnostics;
+
+    private int[] types;
+    private boolean[] lvals;
+    private int[] symbolTypes;
+    private int returnType = Types.VOID;
+    private int errors = 0;
+
+    public TypeCheck(TokenStore tokens, Ast ast, Domain domain, Diagnostics diagnostics)
+    {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.domain = domain;
+        this.diagnostics = diagnostics;
+    }
+
+    public boolean check(int root)
+    {
+        types = new int[ast.size()];
+        lvals = new boolean[ast.size()];
+        symbolTypes = new int[domain.size()];
+        Arrays.fill(types, Types.ERROR);
+        for(int sym = 0; sym < domain.size(); sym++)
+        {
+            symbolTypes[sym] = domain.kind(sym) == SymbolKind.BUILTIN ? domain.builtin(sym).ret : Types.ERROR;
+        }
+
+        for(int n = ast.a(root); n != NONE; n = ast.next(n))
+        {
+            switch(ast.kind(n))
+            {
+                case STRUCT:
+                    for(int field = ast.a(n); field != NONE; field = ast.next(field)) declare(field);
+                    break;
+                case FUNC:
+                    func(n);
+                    break;
+                default:
+                    declare(n);
+                    break;
+            }
+        }
+        return errors == 0;
+    }
+
+    public int type(int node)
+    {
+        return types[node];
+    }
+
+    public boolean lval(int node)
+    {
+        return lvals[node];
+    }
+
+    public int symbolType(int sym)
+    {
+        return symbolTypes[sym];
+    }
+
+    public String name(int type)
+    {
+        return Types.name(type, domain);
+    }
+
+    private void error(int tk, String message)
+    {
+        errors++;
+        diagnostics.add("Type", tk, tokens.line(tk), message);
+    }
+
+    private int typeOf(int n)
+    {
+        int tk = ast.token(n);
+        int type;
+        if(tokens.type(tk) == TokenType.ID)
+        {
+            int struct = domain.symbol(n);
+            type = struct != NONE ? Types.struct(struct) : Types.ERROR;
+        }
+        else
+        {
+            type = Types.of(tokens.type(tk));
+        }
+
+        if(ast.kind(n) == NodeKind.ARRAY)
+        {
+            int size = ast.a(n);
+            if(size != NONE)
+            {
+                int sizeType = expr(size);
+                if(sizeType != Types.INT && sizeType != Types.CHAR && sizeType != Types.ERROR) error(ast.token(size), "the array size must be an integer");
+                else if(ast.kind(size) != NodeKind.CONST) error(ast.token(size), "the array size is not a constant");
+            }
+            type = Types.arrayOf(type);
+        }
+        types[n] = type;
+        return type;
+    }
+
+    private void declare(int n)
+    {
+        int sym = domain.symbol(n);
+        int type = typeOf(ast.a(n));
+        if(sym != NONE) symbolTypes[sym] = type;
+        types[n] = type;
+    }
+
+    private void func(int n)
+    {
+        returnType = typeOf(ast.a(n));
+        symbolTypes[domain.symbol(n)] = returnType;
+        types[n] = returnType;
+        for(int param = ast.b(n); param != NONE; param = ast.next(param)) declare(param);
+        block(ast.a(ast.c(n)));
+    }
+
+    private void block(int first)
+    {
+        for(int n = first; n != NONE; n = ast.next(n)) stm(n);
+    }
+
+    private void stm(int n)
+    {
+        switch(ast.kind(n))
+        {
+            case BLOCK:
+                block(ast.a(n));
+                break;
+            case VAR:
+                declare(n);
+                break;
+            case IF:
+                condition(ast.a(n));
+                stm(ast.b(n));
+                if(ast.c(n) != NONE) stm(ast.c(n));
+                break;
+            case WHILE:
+                condition(ast.a(n));
+                stm(ast.b(n));
+                break;
+            case FOR:
+                int head = ast.a(n);
+                if(ast.a(head) != NONE) expr(ast.a(head));
+                if(ast.b(head) != NONE) condition(ast.b(head));
+                if(ast.c(head) != NONE) expr(ast.c(head));
+                stm(ast.b(n));
+                break;
+            case RETURN:
+                if(ast.a(n) != NONE)
+                {
+                    int type = expr(ast.a(n));
+                    if(returnType == Types.VOID) error(ast.token(n), "a void function cannot return a value");
+                    else convert(ast.token(n), returnType, type);
+                }
+                break;
+            case EXPR:
+                expr(ast.a(n));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void condition(int n)
+    {
+        int type = expr(n);
+        if(Types.isStruct(type) || type == Types.VOID) error(ast.token(n), "a " + name(type) + " cannot be logically tested");
+    }
+
+    private void convert(int tk, int dst, int src)
+    {
+        if(!Types.convertible(dst, src)) error(tk, "cannot convert " + name(src) + " to " + name(dst));
+    }
+
+    private int expr(int n)
+    {
+        int type = Types.ERROR;
+        int tk = ast.token(n);
+        switch(ast.kind(n))
+        {
+            case LITERAL:
+                type = Types.CHAR_ARRAY;
+                break;
+            case CONST:
+                type = ast.c(n);
+                break;
+            case ID:
+            {
+                int sym = domain.symbol(n);
+                if(sym == NONE) break;
+                SymbolKind kind = domain.kind(sym);
+                if(kind == SymbolKind.FUNC || kind == SymbolKind.BUILTIN)
+                {
+                    error(tk, "a function can only be called");
+                    break;
+                }
+                type = symbolTypes[sym];
+                lvals[n] = true;
+                break;
+            }
+            case CALL:
+                type = call(n);
+                break;
+            case FIELD:
+            {
+                int struct = expr(ast.a(n));
+                if(struct == Types.ERROR) break;
+                if(!Types.isStruct(struct) || Types.isArray(struct))
+                {
+                    error(tk, "a field can only be selected from a struct");
+                    break;
+                }
+                int member = domain.symbol(n);
+                if(member == NONE) member = domain.member(Types.structSymbol(struct), tokens.symbol(tk));
+                if(member == NONE)
+                {
+                    error(tk, name(struct) + " does not have a member " + tokens.text(tk));
+                    break;
+                }
+                type = symbolTypes[member];
+                lvals[n] = true;
+                break;
+            }
+            case INDEX:
+            {
+                int array = expr(ast.a(n));
+                int index = expr(ast.b(n));
+                if(index != Types.ERROR && !Types.isScalar(index)) error(tk, "the index is not convertible to int");
+                if(array == Types.ERROR) break;
+                if(!Types.isArray(array))
+                {
+                    error(tk, "only an array can be indexed");
+                    break;
+                }
+                type = Types.element(array);
+                lvals[n] = true;
+                break;
+            }
+            case CAST:
+            {
+                int target = typeOf(ast.a(n));
+                int value = expr(ast.b(n));
+                if(Types.isStruct(target) || Types.isStruct(value)) error(tk, "cannot convert " + name(value) + " to " + name(target));
+                else convert(tk, target, value);
+                type = target;
+                break;
+            }
+            case UNARY:
+            {
+                int operand = expr(ast.a(n));
+                if(operand == Types.ERROR) break;
+                if(tokens.type(tk) == TokenType.NOT)
+                {
+                    if(Types.isStruct(operand) || operand == Types.VOID) error(tk, "a " + name(operand) + " cannot be logically tested");
+                    type = Types.INT;
+                }
+                else if(!Types.isScalar(operand))
+                {
+                    error(tk, "unary '-' needs a scalar operand, not " + name(operand));
+                }
+                else
+                {
+                    type = operand;
+                }
+                break;
+            }
+            case BINARY:
+                type = binary(n, tk);
+                break;
+            case ASSIGN:
+            {
+                int dst = expr(ast.a(n));
+                int src = expr(ast.b(n));
+                if(dst == Types.ERROR) break;
+                if(!lvals[ast.a(n)]) error(tk, "cannot assign to a non-lval");
+                else if(Types.isArray(dst) || Types.isArray(src)) error(tk, "the arrays cannot be assigned");
+                else convert(tk, dst, src);
+                type = dst;
+                break;
+            }
+            default:
+                break;
+        }
+        types[n] = type;
+        return type;
+    }
+
+    private int binary(int n, int tk)
+    {
+        int left = expr(ast.a(n));
+        int right = expr(ast.b(n));
+        if(left == Types.ERROR || right == Types.ERROR) return Types.ERROR;
+
+        switch(tokens.type(tk))
+        {
+            case OR:
+            case AND:
+                if(Types.isStruct(left) || Types.isStruct(right) || left == Types.VOID || right == Types.VOID)
+                {
+                    error(tk, "a structure cannot be logically tested");
+                }
+                return Types.INT;
+            case EQUAL:
+            case NOTEQ:
+                if(Types.isStruct(left) || Types.isStruct(right) || left == Types.VOID || right == Types.VOID)
+                {
+                    error(tk, "a structure cannot be compared");
+                }
+                else if(Types.isArray(left) != Types.isArray(right) || (Types.isArray(left) && left != right))
+                {
+                    error(tk, "cannot compare " + name(left) + " with " + name(right));
+                }
+                return Types.INT;
+            case LESS:
+            case LESSEQ:
+            case GREATER:
+            case GREATEREQ:
+                if(!Types.isScalar(left) || !Types.isScalar(right)) error(tk, "cannot compare " + name(left) + " with " + name(right));
+                return Types.INT;
+            default:
+                if(!Types.isScalar(left) || !Types.isScalar(right))
+                {
+                    error(tk, "invalid operands " + name(left) + " and " + name(right) + " for '" + tokens.text(tk) + "'");
+                    return Types.ERROR;
+                }
+                return Types.arith(left, right);
+        }
+    }
+
+    private int call(int n)
+    {
+        int tk = ast.token(n);
+        int sym = domain.symbol(n);
+        SymbolKind kind = sym != NONE ? domain.kind(sym) : null;
+        if(sym != NONE && kind != SymbolKind.FUNC && kind != SymbolKind.BUILTIN)
+        {
+            error(tk, "only a function can be called");
+            sym = NONE;
+        }
+
+        int arg = ast.a(n);
+        if(sym == NONE)
+        {
+            for(; arg != NONE; arg = ast.next(arg)) expr(arg);
+            return Types.ERROR;
+        }
+
+        if(kind == SymbolKind.BUILTIN)
+        {
+            int[] params = domain.builtin(sym).params;
+            int i = 0;
+            for(; arg != NONE && i < params.length; arg = ast.next(arg), i++) convert(ast.token(arg), params[i], expr(arg));
+            if(arg != NONE || i < params.length) arity(tk, arg);
+        }
+        else
+        {
+            int param = ast.b(domain.node(sym));
+            for(; arg != NONE && param != NONE; arg = ast.next(arg), param = ast.next(param))
+            {
+                convert(ast.token(arg), symbolTypes[domain.symbol(param)], expr(arg));
+            }
+            if(arg != NONE || param != NONE) arity(tk, arg);
+        }
+        for(; arg != NONE; arg = ast.next(arg)) expr(arg);
+        return symbolTypes[sym];
+    }
+
+    private void arity(int tk, int extra)
+    {
+        error(tk, extra != NONE ? "too many arguments in call to " + tokens.text(tk) : "too few arguments in call to " + tokens.text(tk));
+    }
+}
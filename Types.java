@@ -0,0 +1,91 @@
+class Types
+{
+    private static final int ARRAY = 1;
+    private static final int STRUCT_BASE = 5;
+
+    static final int VOID = 0;
+    static final int INT = 2;
+    static final int INT_ARRAY = INT | ARRAY;
+    static final int DOUBLE = 4;
+    static final int DOUBLE_ARRAY = DOUBLE | ARRAY;
+    static final int CHAR = 6;
+    static final int CHAR_ARRAY = CHAR | ARRAY;
+    static final int ERROR = 8;
+
+    static int struct(int sym)
+    {
+        return (STRUCT_BASE + sym) << 1;
+    }
+
+    static int arrayOf(int type)
+    {
+        return type | ARRAY;
+    }
+
+    static int element(int type)
+    {
+        return type & ~ARRAY;
+    }
+
+    static boolean isArray(int type)
+    {
+        return (type & ARRAY) != 0;
+    }
+
+    static boolean isStruct(int type)
+    {
+        return type >> 1 >= STRUCT_BASE;
+    }
+
+    static int structSymbol(int type)
+    {
+        return (type >> 1) - STRUCT_BASE;
+    }
+
+    static boolean isScalar(int type)
+    {
+        return type == INT || type == DOUBLE || type == CHAR;
+    }
+
+    static int of(TokenType base)
+    {
+        switch(base)
+        {
+            case INT: return INT;
+            case DOUBLE: return DOUBLE;
+            case CHAR: return CHAR;
+            case VOID: return VOID;
+            default: return ERROR;
+        }
+    }
+
+    static int arith(int a, int b)
+    {
+        if(a == DOUBLE || b == DOUBLE) return DOUBLE;
+        if(a == INT || b == INT) return INT;
+        return CHAR;
+    }
+
+    static boolean convertible(int dst, int src)
+    {
+        if(dst == ERROR || src == ERROR) return true;
+        if(isArray(dst) || isArray(src)) return dst == src;
+        if(isStruct(dst) || isStruct(src)) return dst == src;
+        return isScalar(dst) && isScalar(src);
+    }
+
+    static String name(int type, Domain domain)
+    {
+        String base;
+        switch(element(type))
+        {
+            case VOID: base = "void"; break;
+            case INT: base = "int"; break;
+            case DOUBLE: base = "double"; break;
+            case CHAR: base = "char"; break;
+            case ERROR: base = "<error>"; break;
+            default: base = "struct " + domain.name(structSymbol(type)); break;
+        }
+        return isArray(type) ? base + "[]" : base;
+    }
+}
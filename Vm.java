@@ -0,0 +1,287 @@
+import java.io.*;
+import java.util.*;
+
+class Vm
+{
+    private static final Builtin[] BUILTINS = Builtin.values();
+
+    private final Program program;
+    private final long[] memory;
+    private final int[] returns;
+    private final int[] headroom;
+    private long[] stack = new long[1 << 12];
+    private final BuiltinIo io = new BuiltinIo();
+
+    public Vm(Program program)
+    {
+        this(program, 1 << 20, 1 << 16);
+    }
+
+    public Vm(Program program, int memorySlots, int maxDepth)
+    {
+        this.program = program;
+        this.memory = new long[memorySlots];
+        this.returns = new int[maxDepth * 3];
+        // a call never needs more operand slots than its function has instructions, since each pushes at most one
+        // value and only whole statements loop
+        this.headroom = new int[program.entries.length];
+        for(int fn = 0; fn < headroom.length; fn++)
+        {
+            headroom[fn] = (fn + 1 < headroom.length ? program.entries[fn + 1] : program.code.length) - program.entries[fn];
+        }
+    }
+
+    public Vm input(BufferedReader in)
+    {
+        io.in = in;
+        return this;
+    }
+
+    public Vm output(PrintStream out)
+    {
+        io.out = out;
+        return this;
+    }
+
+    public long run()
+    {
+        if(program.main < 0) throw new IllegalStateException("the program has no main function");
+
+        final int[] code = program.code;
+        final double[] reals = program.reals;
+        final long[] memory = this.memory;
+        long[] stack = this.stack;
+        final int[] returns = this.returns;
+
+        Arrays.fill(memory, 0, program.data.length, 0);
+        System.arraycopy(program.data, 0, memory, 0, program.data.length);
+
+        int fp = program.data.length;
+        int top = fp + program.frames[program.main];
+        int pc = program.entries[program.main];
+        int sp = 0;
+        int depth = 0;
+        if(top > memory.length) throw new IllegalStateException("stack overflow");
+        if(headroom[program.main] > stack.length) stack = this.stack = new long[headroom[program.main]];
+
+        while(true)
+        {
+            switch(code[pc++])
+            {
+                case Op.PUSH_I:
+                    stack[sp++] = code[pc++];
+                    break;
+                case Op.PUSH_D:
+                    stack[sp++] = Double.doubleToRawLongBits(reals[code[pc++]]);
+                    break;
+                case Op.POP:
+                    sp--;
+                    break;
+                case Op.DUP:
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                    break;
+                case Op.LOAD:
+                    stack[sp - 1] = memory[(int)stack[sp - 1]];
+                    break;
+                case Op.STORE:
+                    memory[(int)stack[sp - 2]] = stack[sp - 1];
+                    sp -= 2;
+                    break;
+                case Op.TEE:
+                    memory[(int)stack[sp - 2]] = stack[sp - 1];
+                    stack[sp - 2] = stack[sp - 1];
+                    sp--;
+                    break;
+                case Op.LOAD_L:
+                    stack[sp++] = memory[fp + code[pc++]];
+                    break;
+                case Op.STORE_L:
+                    memory[fp + code[pc++]] = stack[--sp];
+                    break;
+                case Op.LOAD_G:
+                    stack[sp++] = memory[code[pc++]];
+                    break;
+                case Op.STORE_G:
+                    memory[code[pc++]] = stack[--sp];
+                    break;
+                case Op.ADDR_L:
+                    stack[sp++] = fp + code[pc++];
+                    break;
+                case Op.OFFSET:
+                    stack[sp - 1] += code[pc++];
+                    break;
+                case Op.INDEX:
+                    sp--;
+                    stack[sp - 1] += stack[sp] * code[pc++];
+                    break;
+                case Op.COPY:
+                {
+                    sp--;
+                    System.arraycopy(memory, (int)stack[sp], memory, (int)stack[sp - 1], code[pc++]);
+                    break;
+                }
+                case Op.ADD_I:
+                    sp--;
+                    stack[sp - 1] = (int)(stack[sp - 1] + stack[sp]);
+                    break;
+                case Op.SUB_I:
+                    sp--;
+                    stack[sp - 1] = (int)(stack[sp - 1] - stack[sp]);
+                    break;
+                case Op.MUL_I:
+                    sp--;
+                    stack[sp - 1] = (int)(stack[sp - 1] * stack[sp]);
+                    break;
+                case Op.DIV_I:
+                    sp--;
+                    stack[sp - 1] = (int)stack[sp - 1] / (int)stack[sp];
+                    break;
+                case Op.NEG_I:
+                    stack[sp - 1] = -(int)stack[sp - 1];
+                    break;
+                case Op.ADD_D:
+                    sp--;
+                    stack[sp - 1] = bits(real(stack[sp - 1]) + real(stack[sp]));
+                    break;
+                case Op.SUB_D:
+                    sp--;
+                    stack[sp - 1] = bits(real(stack[sp - 1]) - real(stack[sp]));
+                    break;
+                case Op.MUL_D:
+                    sp--;
+                    stack[sp - 1] = bits(real(stack[sp - 1]) * real(stack[sp]));
+                    break;
+                case Op.DIV_D:
+                    sp--;
+                    stack[sp - 1] = bits(real(stack[sp - 1]) / real(stack[sp]));
+                    break;
+                case Op.NEG_D:
+                    stack[sp - 1] = bits(-real(stack[sp - 1]));
+                    break;
+                case Op.EQ_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                    break;
+                case Op.NE_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+                    break;
+                case Op.LT_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                    break;
+                case Op.LE_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                    break;
+                case Op.GT_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                    break;
+                case Op.GE_I:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                    break;
+                case Op.EQ_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) == real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.NE_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) != real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.LT_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) < real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.LE_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) <= real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.GT_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) > real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.GE_D:
+                    sp--;
+                    stack[sp - 1] = real(stack[sp - 1]) >= real(stack[sp]) ? 1 : 0;
+                    break;
+                case Op.NOT:
+                    stack[sp - 1] = stack[sp - 1] == 0 ? 1 : 0;
+                    break;
+                case Op.TEST_D:
+                    stack[sp - 1] = real(stack[sp - 1]) != 0 ? 1 : 0;
+                    break;
+                case Op.I2D:
+                    stack[sp - 1] = bits(stack[sp - 1]);
+                    break;
+                case Op.D2I:
+                    stack[sp - 1] = (int)real(stack[sp - 1]);
+                    break;
+                case Op.I2C:
+                    stack[sp - 1] = (byte)stack[sp - 1];
+                    break;
+                case Op.JMP:
+                    pc = code[pc];
+                    break;
+                case Op.JF:
+                    pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+                    break;
+                case Op.JT:
+                    pc = stack[--sp] != 0 ? code[pc] : pc + 1;
+                    break;
+                case Op.CALL:
+                {
+                    int fn = code[pc++];
+                    if(depth * 3 == returns.length) throw new IllegalStateException("stack overflow");
+                    returns[depth * 3] = pc;
+                    returns[depth * 3 + 1] = fp;
+                    returns[depth * 3 + 2] = top;
+                    depth++;
+                    int argc = program.params[fn];
+                    sp -= argc;
+                    System.arraycopy(stack, sp, memory, top, argc);
+                    if(sp + headroom[fn] > stack.length) stack = this.stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + headroom[fn]));
+                    fp = top;
+                    top = fp + program.frames[fn];
+                    if(top > memory.length) throw new IllegalStateException("stack overflow");
+                    pc = program.entries[fn];
+                    break;
+                }
+                case Op.BUILTIN:
+                {
+                    Builtin builtin = BUILTINS[code[pc++]];
+                    long result = io.call(builtin, memory, stack, sp);
+                    sp -= builtin.arity;
+                    if(builtin.ret != Types.VOID) stack[sp++] = result;
+                    break;
+                }
+                case Op.RET:
+                case Op.RET_V:
+                    if(depth == 0)
+                    {
+                        io.out.flush();
+                        return code[pc - 1] == Op.RET ? stack[sp - 1] : 0;
+                    }
+                    depth--;
+                    pc = returns[depth * 3];
+                    fp = returns[depth * 3 + 1];
+                    top = returns[depth * 3 + 2];
+                    break;
+                default:
+                    throw new IllegalStateException("bad opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+    }
+
+    private static double real(long bits)
+    {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value)
+    {
+        return Double.doubleToRawLongBits(value);
+    }
+}
@@ -0,0 +1,115 @@
+package atomc.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.*;
+
+// the same programs on every back end; the JVM backend rejects structs, so it runs all but STRUCTS
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class Backends
+{
+    static final String FIB =
+        "int fib(int n)\n{\n    if(n < 2) return n;\n    return fib(n - 1) + fib(n - 2);\n}\n" +
+        "int main()\n{\n    return fib(27);\n}\n";
+
+    static final String LOOPS =
+        "int main()\n{\n    int i, j, s;\n    double acc;\n    s = 0;\n    acc = 0.0;\n" +
+        "    for(i = 0; i < 2000; i = i + 1)\n    {\n        for(j = 0; j < 1000; j = j + 1)\n        {\n" +
+        "            s = s + i * j / 7 - j;\n            acc = acc + (double)j / (i + 1);\n        }\n    }\n" +
+        "    return s + (int)acc;\n}\n";
+
+    static final String SIEVE =
+        "char flags[200000];\n" +
+        "int sieve(int n)\n{\n    int i, k, count;\n    count = 0;\n    for(i = 2; i < n; i = i + 1) flags[i] = 1;\n" +
+        "    for(i = 2; i < n; i = i + 1)\n    {\n        if(flags[i])\n        {\n            count = count + 1;\n" +
+        "            for(k = i + i; k < n; k = k + i) flags[k] = 0;\n        }\n    }\n    return count;\n}\n" +
+        "int main()\n{\n    int r, total;\n    total = 0;\n    for(r = 0; r < 10; r = r + 1) total = total + sieve(200000);\n    return total;\n}\n";
+
+    static final String STRUCTS =
+        "struct Body { double x; double y; double vx; double vy; };\n" +
+        "struct Body bodies[64];\n" +
+        "void step(int n, double dt)\n{\n    int i;\n    for(i = 0; i < n; i = i + 1)\n    {\n" +
+        "        bodies[i].vx = bodies[i].vx - bodies[i].x * dt;\n        bodies[i].vy = bodies[i].vy - bodies[i].y * dt;\n" +
+        "        bodies[i].x = bodies[i].x + bodies[i].vx * dt;\n        bodies[i].y = bodies[i].y + bodies[i].vy * dt;\n    }\n}\n" +
+        "int main()\n{\n    int i, t;\n    for(i = 0; i < 64; i = i + 1)\n    {\n        bodies[i].x = i;\n        bodies[i].y = 64 - i;\n" +
+        "        bodies[i].vx = 0.0;\n        bodies[i].vy = 1.0;\n    }\n    for(t = 0; t < 20000; t = t + 1) step(64, 0.001);\n" +
+        "    return (int)(bodies[7].x * 1000);\n}\n";
+
+    static String source(String program)
+    {
+        switch(program)
+        {
+            case "FIB": return FIB;
+            case "LOOPS": return LOOPS;
+            case "SIEVE": return SIEVE;
+            default: return STRUCTS;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Interpreted
+    {
+        @Param({ "FIB", "LOOPS", "SIEVE", "STRUCTS" })
+        public String program;
+
+        @Param({ "stack", "closures", "ir:none", "ir:constants", "ir:peephole", "ir:jumps", "ir:dead", "ir:all" })
+        public String backend;
+
+        LongSupplier run;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            run = Hooks.BACKEND.apply(source(program), backend);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Compiled
+    {
+        @Param({ "FIB", "LOOPS", "SIEVE" })
+        public String program;
+
+        LongSupplier run;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            run = Hooks.BACKEND.apply(source(program), "jvm");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lowered
+    {
+        @Param({ "FIB", "LOOPS", "SIEVE", "STRUCTS" })
+        public String program;
+
+        @Param({ "none", "constants", "peephole", "jumps", "dead", "all" })
+        public String passes;
+    }
+
+    @Benchmark
+    public long interpret(Interpreted work)
+    {
+        return work.run.getAsLong();
+    }
+
+    @Benchmark
+    public long jvm(Compiled work)
+    {
+        return work.run.getAsLong();
+    }
+
+    // compiling to IR and running the passes; "none" is the cost of the front end and lowering alone
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object optimize(Lowered work)
+    {
+        return Hooks.OPTIMIZE.apply(source(work.program), work.passes);
+    }
+}
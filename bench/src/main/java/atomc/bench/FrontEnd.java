@@ -0,0 +1,155 @@
+package atomc.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class FrontEnd
+{
+    @State(Scope.Benchmark)
+    public static class Workload
+    {
+        @Param({ "EXPRESSIONS", "STRUCTS", "FUNCTIONS", "COMMENTS", "MIXED" })
+        public String shape;
+
+        @Param({ "65536", "1048576" })
+        public int size;
+
+        String text;
+        int bytes;
+        Object tokens;
+        int tokenCount;
+        Object tree;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            text = Hooks.CORPUS.apply(shape, size);
+            bytes = text.getBytes(StandardCharsets.ISO_8859_1).length;
+            tokens = Hooks.LEX.apply(text);
+            tokenCount = Hooks.TOKENS.applyAsInt(tokens);
+            Hooks.COMPILE.apply(text);
+            tree = Hooks.TREE.apply(tokens);
+        }
+    }
+
+    // one arena per thread, reset by every parse
+    @State(Scope.Thread)
+    public static class Arena
+    {
+        Object ast = Hooks.ARENA.get();
+    }
+
+    // reported next to ops/s as bytes/s and tokens/s of source consumed
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rate
+    {
+        public long bytes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0;
+            tokens = 0;
+        }
+
+        void add(Workload work)
+        {
+            bytes += work.bytes;
+            tokens += work.tokenCount;
+        }
+    }
+
+    @Benchmark
+    public Object lex(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.LEX.apply(work.text);
+    }
+
+    @Benchmark
+    public Object tokenize(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.TOKENIZE.apply(work.text);
+    }
+
+    @Benchmark
+    public Object parse(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.PARSE.apply(work.tokens);
+    }
+
+    // the grammar alone, building no tree
+    @Benchmark
+    public Object recognize(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.RECOGNIZE.apply(work.tokens);
+    }
+
+    @Benchmark
+    public Object parseReusedArena(Workload work, Arena arena, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.PARSE_INTO.apply(work.tokens, arena.ast);
+    }
+
+    @Benchmark
+    public Object parsePredictive(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.PARSE_PREDICTIVE.apply(work.tokens);
+    }
+
+    @Benchmark
+    public Object parsePratt(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.PARSE_PRATT.apply(work.tokens);
+    }
+
+    @Benchmark
+    public Object lexParse(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.LEX_PARSE.apply(work.text);
+    }
+
+    @Benchmark
+    public Object lexParsePipelined(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.LEX_PARSE_PIPELINED.apply(work.text);
+    }
+
+    @Benchmark
+    public Object analyze(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.ANALYZE.apply(work.tree);
+    }
+
+    @Benchmark
+    public Object typeCheck(Workload work, Rate rate)
+    {
+        rate.add(work);
+        return Hooks.TYPE_CHECK.apply(work.tree);
+    }
+
+    @Benchmark
+    public void endToEnd(Workload work, Rate rate, Blackhole sink)
+    {
+        rate.add(work);
+        sink.consume(Hooks.COMPILE.apply(work.text));
+    }
+}
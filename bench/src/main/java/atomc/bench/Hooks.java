@@ -0,0 +1,42 @@
+package atomc.bench;
+
+import java.util.function.*;
+
+final class Hooks
+{
+    static final BiFunction<String, Integer, String> CORPUS = field("CORPUS");
+    static final Function<String, Object> TOKENIZE = field("TOKENIZE");
+    static final Function<String, Object> LEX = field("LEX");
+    static final ToIntFunction<Object> TOKENS = field("TOKENS");
+    static final Function<Object, Object> PARSE = field("PARSE");
+    static final Function<Object, Object> PARSE_PREDICTIVE = field("PARSE_PREDICTIVE");
+    static final Function<Object, Object> PARSE_PRATT = field("PARSE_PRATT");
+    static final Function<Object, Object> RECOGNIZE = field("RECOGNIZE");
+    static final Supplier<Object> ARENA = field("ARENA");
+    static final BiFunction<Object, Object, Object> PARSE_INTO = field("PARSE_INTO");
+    static final Function<Object, Object> TREE = field("TREE");
+    static final Function<Object, Object> ANALYZE = field("ANALYZE");
+    static final Function<Object, Object> TYPE_CHECK = field("TYPE_CHECK");
+    static final Function<String, Object> LEX_PARSE = field("LEX_PARSE");
+    static final Function<String, Object> LEX_PARSE_PIPELINED = field("LEX_PARSE_PIPELINED");
+    static final Function<String, Object> COMPILE = field("COMPILE");
+    static final BiFunction<String, String, LongSupplier> BACKEND = field("BACKEND");
+    static final BiFunction<String, String, Object> OPTIMIZE = field("OPTIMIZE");
+
+    private Hooks()
+    {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T field(String name)
+    {
+        try
+        {
+            return (T)Class.forName("BenchHooks").getField(name).get(null);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("compiler classes are not on the class path", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package atomc.bench;
+
+import java.util.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+public class Main
+{
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions command = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(command).addProfiler(GCProfiler.class);
+        if(command.getIncludes().isEmpty()) options.include(FrontEnd.class.getSimpleName());
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        System.out.printf("%n%-32s %-12s %9s %10s %12s %12s%n", "benchmark", "shape", "size", "MB/s", "Mtokens/s", "MB alloc/s");
+        for(RunResult run : results)
+        {
+            BenchmarkParams params = run.getParams();
+            if(params.getParam("shape") == null) continue;
+            Map<String, Result> secondary = run.getSecondaryResults();
+            System.out.printf("%-32s %-12s %9s %10.1f %12.2f %12.1f%n",
+                params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1),
+                params.getParam("shape"), params.getParam("size"),
+                score(secondary, "bytes") / 1e6, score(secondary, "tokens") / 1e6,
+                score(secondary, "gc.alloc.rate"));
+        }
+    }
+
+    private static double score(Map<String, Result> results, String name)
+    {
+        Result result = results.get(name);
+        return result != null ? result.getScore() : Double.NaN;
+    }
+}
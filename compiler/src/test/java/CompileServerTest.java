@@ -0,0 +1,97 @@
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileServerTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesRequestsUntilStopped() throws Exception
+    {
+        Path socket = dir.resolve("atomc.sock");
+        Path source = dir.resolve("0.c");
+        Files.writeString(source, "int main()\n{\n    return 0;\n}\n");
+
+        ExecutorService serving = Executors.newSingleThreadExecutor();
+        Future<?> server = serving.submit(() ->
+        {
+            new CompileServer(socket, Executors.newCachedThreadPool()).serve();
+            return null;
+        });
+        try
+        {
+            CompileServer.Response byPath = first(socket, source);
+            assertEquals(0, byPath.status, byPath.err);
+            assertTrue(byPath.out.contains("Parsed successfully"), byPath.out);
+
+            CompileServer.Response bySource = CompileServer.request(socket, CompileServer.SOURCE, "int x @;\nint main()\n{\n    return y;\n}\n");
+            assertEquals(1, bySource.status);
+            assertTrue(bySource.err.startsWith("Unknown character @\n"), bySource.err);
+
+            assertEquals(2, raw(socket, CompileServer.SOURCE, -1).status);
+            assertEquals(2, raw(socket, CompileServer.SOURCE, Integer.MAX_VALUE).status);
+            CompileServer.Response unknown = CompileServer.request(socket, (byte)9, "");
+            assertEquals(2, unknown.status);
+            assertEquals("unknown request kind 9\n", unknown.err);
+
+            // the server still answers after the broken requests
+            assertEquals(0, CompileServer.request(socket, CompileServer.PATH, source.toString()).status);
+
+            CompileServer.request(socket, CompileServer.STOP, "");
+            server.get(5, TimeUnit.SECONDS);
+            assertFalse(Files.exists(socket));
+        }
+        finally
+        {
+            server.cancel(true);
+            serving.shutdownNow();
+        }
+    }
+
+    // the socket file appears on bind, a moment before the server listens
+    private static CompileServer.Response first(Path socket, Path source) throws Exception
+    {
+        for(int i = 0; ; i++)
+        {
+            try
+            {
+                return CompileServer.request(socket, CompileServer.PATH, source.toString());
+            }
+            catch(IOException e)
+            {
+                if(i == 500) throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    // a request whose payload length is whatever the test says, followed by no payload
+    private static CompileServer.Response raw(Path socket, byte kind, int length) throws IOException
+    {
+        try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel)))
+        {
+            out.writeByte(kind);
+            out.writeInt(length);
+            out.flush();
+
+            CompileServer.Response response = new CompileServer.Response();
+            response.status = in.readInt();
+            response.out = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            response.err = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            assertTrue(response.err.startsWith("bad request length " + length), response.err);
+            return response;
+        }
+    }
+}
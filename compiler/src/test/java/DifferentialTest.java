@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// every backend runs the same generated programs on the same input and must print the same text and exit code as
+// the stack Vm; the JVM backend only sees programs without structs, which it rejects
+class DifferentialTest
+{
+    private static final String[] PASSES = { "none", "constants", "peephole", "jumps", "dead", "all" };
+
+    @Test
+    void backendsAgreeWithoutStructs()
+    {
+        for(long seed = 1; seed <= 300; seed++) compare(seed, false);
+    }
+
+    @Test
+    void backendsAgreeWithStructs()
+    {
+        for(long seed = 1; seed <= 300; seed++) compare(seed, true);
+    }
+
+    @Test
+    void getSStaysInsideTheArray()
+    {
+        String text = "int f(char s[])\n{\n    get_s(s);\n    put_s(s);\n    return 0;\n}\n"
+            + "int main()\n{\n    char a[4];\n    char b[4];\n    b[0] = 'z';\n    b[1] = 0;\n    get_s(a);\n    put_s(a);\n"
+            + "    f(a);\n    put_s(b);\n    return 0;\n}\n";
+        Compiled program = new Compiled(text);
+        String expected = "abcdefz\n=> 0";
+        for(String backend : backends(false)) assertEquals(expected, program.run(backend, "abcdefgh\ndefghij\n"), backend);
+    }
+
+    @Test
+    void deepRecursionKeepsItsOperands()
+    {
+        // each level leaves n on the operand stack while the call below it runs
+        String text = "int f(int n)\n{\n    if(n < 1) return 0;\n    return n + f(n - 1);\n}\n"
+            + "int main()\n{\n    put_i(f(5000));\n    return 0;\n}\n";
+        Compiled program = new Compiled(text);
+        assertEquals("12502500\n=> 0", program.run("vm", ""));
+        for(String backend : backends(false)) assertEquals("12502500\n=> 0", program.run(backend, ""), backend);
+    }
+
+    @Test
+    void everyBackendOverflowsAtTheSameCall()
+    {
+        String text = "int g(int n)\n{\n    if(n > 65533) put_i(n);\n    return g(n + 1) + 1;\n}\n"
+            + "int main()\n{\n    return g(1);\n}\n";
+        Compiled program = new Compiled(text);
+        String expected = "655346553565536\n=> java.lang.IllegalStateException: stack overflow";
+        assertEquals(expected, program.run("vm", ""));
+        for(String backend : backends(false)) assertEquals(expected, program.run(backend, ""), backend);
+    }
+
+    private static void compare(long seed, boolean structs)
+    {
+        String text = Programs.generate(seed, structs);
+        String input = Programs.input(seed, 5000);
+        Compiled program = new Compiled(text);
+        String expected = program.run("vm", input);
+        for(String backend : backends(structs))
+        {
+            String actual = program.run(backend, input);
+            if(!expected.equals(actual)) fail(backend + " differs from vm on seed " + seed + "\n" + text + "\nvm:\n" + expected + "\n" + backend + ":\n" + actual);
+        }
+    }
+
+    private static List<String> backends(boolean structs)
+    {
+        List<String> backends = new ArrayList<>();
+        for(String passes : PASSES) backends.add("ir:" + passes);
+        backends.add("closures");
+        if(!structs) backends.add("jvm");
+        return backends;
+    }
+
+    private static class Compiled
+    {
+        final TokenStore tokens;
+        final Ast ast = new Ast();
+        final int root;
+        final Domain domain;
+        final TypeCheck types;
+
+        Compiled(String text)
+        {
+            tokens = new Lex(new StringSource(text)).tokenizeCompact();
+            Syntactic parser = new Syntactic(tokens, ast);
+            assertTrue(parser.parse(), () -> parser.error() + "\n" + text);
+            root = parser.root();
+            Diagnostics semantic = new Diagnostics();
+            domain = new Domain(tokens, ast, semantic);
+            types = new TypeCheck(tokens, ast, domain, semantic);
+            assertTrue(domain.analyze(root) && types.check(root), () -> semantic.format(0) + "\n" + text);
+        }
+
+        // what the program printed, then its exit code or the exception that stopped it
+        String run(String backend, String input)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(bytes, false, StandardCharsets.ISO_8859_1);
+            BufferedReader in = new BufferedReader(new StringReader(input));
+            String result;
+            try
+            {
+                long exit;
+                if(backend.equals("vm")) exit = new Vm(new CodeGen(tokens, ast, domain, types).generate(root)).input(in).output(out).run();
+                else if(backend.equals("closures")) exit = new ClosureGen(tokens, ast, domain, types).generate(root).input(in).output(out).run();
+                else if(backend.equals("jvm")) exit = new JvmGen(tokens, ast, domain, types).generate(root).input(in).output(out).run();
+                else
+                {
+                    IrPipeline pipeline = new IrPipeline(IrPass.parse(backend.substring("ir:".length())));
+                    exit = new IrVm(pipeline.run(new IrGen(tokens, ast, domain, types).generate(root))).input(in).output(out).run();
+                }
+                result = Long.toString(exit);
+            }
+            catch(RuntimeException e)
+            {
+                result = e.toString();
+            }
+            out.flush();
+            return bytes.toString(StandardCharsets.ISO_8859_1) + "\n=> " + result;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// every edit is checked against lexing and parsing the edited text from scratch
+class IncrementalTest
+{
+    private static final String[] SNIPPETS = {
+        " ", "\n", "x", "1", "+", ";", "(", ")", "{", "}", "/*", "*/", "// note\n", "\"s\"", "'a'", "0x1F", "2.5e3",
+        "int y;", "struct S { int a; };", "if(x) x = 1;", "return 0;", "double d[4];", "int f() { return 1; }"
+    };
+
+    @Test
+    void randomEditsMatchAFullReparse()
+    {
+        for(Corpus.Shape shape : Corpus.Shape.values())
+        {
+            SplittableRandom random = new SplittableRandom(shape.ordinal());
+            Incremental incremental = new Incremental(Corpus.generate(shape, 1024, shape.ordinal()));
+            check(incremental);
+            for(int e = 0; e < 150; e++)
+            {
+                int length = incremental.text().length();
+                int offset = random.nextInt(length + 1);
+                int removed = random.nextInt(3) == 0 ? random.nextInt(Math.min(12, length - offset) + 1) : 0;
+                String inserted = random.nextInt(4) == 0 ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+                incremental.edit(offset, removed, inserted);
+                check(incremental);
+            }
+        }
+    }
+
+    @Test
+    void undoingAnEditRestoresAValidParse()
+    {
+        String text = Corpus.generate(Corpus.Shape.MIXED, 1024, 7);
+        SplittableRandom random = new SplittableRandom(7);
+        Incremental incremental = new Incremental(text);
+        assertNull(incremental.error());
+        for(int e = 0; e < 100; e++)
+        {
+            int offset = random.nextInt(text.length());
+            int removed = random.nextInt(Math.min(20, text.length() - offset) + 1);
+            String cut = text.substring(offset, offset + removed);
+            String inserted = SNIPPETS[random.nextInt(SNIPPETS.length)];
+            incremental.edit(offset, removed, inserted);
+            check(incremental);
+            assertTrue(incremental.edit(offset, inserted.length(), cut), incremental.error());
+            check(incremental);
+            assertEquals(text, incremental.text());
+        }
+    }
+
+    @Test
+    void typingOneCharacterAtATime()
+    {
+        Incremental incremental = new Incremental("int main()\n{\n    return 0;\n}\n");
+        String typed = "int g(int a, double b)\n{\n    if(a < 2) return a; /* base */\n    return g(a - 1, b) + 1;\n}\n";
+        for(int i = 0; i < typed.length(); i++)
+        {
+            incremental.edit(i, 0, typed.substring(i, i + 1));
+            check(incremental);
+        }
+        assertNull(incremental.error());
+        assertTrue(incremental.reparsed < incremental.units());
+    }
+
+    private static void check(Incremental incremental)
+    {
+        String text = incremental.text();
+        TokenStore full;
+        try
+        {
+            full = new Lex(new StringSource(text)).tokenizeCompact();
+        }
+        catch(RuntimeException e)
+        {
+            assertNotNull(incremental.error(), "full lexing failed: " + e.getMessage());
+            return;
+        }
+
+        List<Integer> units = new ArrayList<>();
+        boolean parsed;
+        try
+        {
+            Syntactic parser = new Syntactic(full).buildTree(false).memoize(true);
+            int at = 0;
+            while(full.type(at) != TokenType.END && (at = next(parser, units, at)) >= 0) {}
+            parsed = at >= 0;
+        }
+        catch(RuntimeException e)
+        {
+            parsed = false;
+        }
+        assertEquals(parsed, incremental.error() == null, () -> "incremental: " + incremental.error());
+        if(parsed)
+        {
+            assertEquals(units.size(), incremental.units());
+            for(int k = 0; k < units.size(); k++) assertEquals(units.get(k), incremental.unit(k), "unit " + k);
+        }
+
+        TokenStore tokens = incremental.tokens();
+        assertEquals(full.size(), tokens.size());
+        for(int i = 0; i < full.size(); i++)
+        {
+            assertEquals(full.type(i), tokens.type(i), "type of token " + i);
+            assertEquals(full.start(i), tokens.start(i), "start of token " + i);
+            assertEquals(full.length(i), tokens.length(i), "length of token " + i);
+            assertEquals(full.line(i), tokens.line(i), "line of token " + i);
+            assertEquals(full.value(i), tokens.value(i), "value of token " + i);
+            assertEquals(full.text(i), tokens.text(i), "text of token " + i);
+        }
+    }
+
+    private static int next(Syntactic parser, List<Integer> units, int at)
+    {
+        int next = parser.parseDecl(at);
+        if(next >= 0) units.add(at);
+        return next;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexTest
+{
+    @Test
+    void integerConstantsDecodeInEveryBase()
+    {
+        for(boolean tables : new boolean[]{ false, true })
+        {
+            assertEquals(15, value("017", tables));
+            assertEquals(31, value("0X1f", tables));
+            assertEquals(0, value("0", tables));
+            assertEquals(Integer.MAX_VALUE, value("2147483647", tables));
+            assertEquals(Integer.MAX_VALUE, value("0x7FFFFFFF", tables));
+        }
+    }
+
+    @Test
+    void malformedIntegerConstantsAreLexicalErrors()
+    {
+        for(boolean tables : new boolean[]{ false, true })
+        {
+            for(String literal : new String[]{ "019", "08", "0x", "99999999999", "2147483648", "0x80000000" })
+            {
+                RuntimeException e = assertThrows(RuntimeException.class, () -> value(literal, tables), literal);
+                assertTrue(e.getMessage().startsWith("Lexical error"), e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void recoveringLexerReportsMalformedConstantsAndKeepsGoing()
+    {
+        for(boolean tables : new boolean[]{ false, true })
+        {
+            Diagnostics diagnostics = new Diagnostics();
+            TokenStore tokens = new Lex(new StringSource("x = 09;\ny = 0x;\nz = 7;")).useTables(tables).recover(diagnostics).tokenizeCompact();
+            assertEquals(2, diagnostics.size());
+            assertEquals("Lexical error at token: 1 invalid digit in octal constant '09'", diagnostics.format(0));
+            assertEquals("Lexical error at token: 2 missing digits after '0x' '0x'", diagnostics.format(1));
+            assertEquals(13, tokens.size());
+            assertEquals(TokenType.CT_INT, tokens.type(10));
+            assertEquals(7, tokens.value(10));
+        }
+    }
+
+    @Test
+    void tablesLexTheSameTokensAsTheHandWrittenScanner()
+    {
+        String[] inputs = {
+            "x = a / b;", "/", "a /", "**/", "x = 2 **/ 3;", "1e-5", "1e+5 2.5E3 3. .5 1e 7e- 0x1F 017 0",
+            "a != b ! c = d == e", "a && b || c", "a & b | c", "a &", "|",
+            "/* one\nline\nand more */ x", "/** stars **/ y", "/* * / ** */ z", "/* open\n", "// line\n/* block */\nw // end",
+            "\"a b\" 'c' '\\n' \"\" \"open", "@ # $ ` ~", "caf\u00e9 _x1 x_ 9y", "a\tb\r\nc\n\n\nd",
+            "int main()\n{\n    if(a<=b&&c>=d||!e) return f(g[1].h, 2.0e-3);\n}\n"
+        };
+        for(String input : inputs) compareScanners(input, input);
+        for(Corpus.Shape shape : Corpus.Shape.values()) compareScanners(shape.toString(), Corpus.generate(shape, 100_000, 11));
+    }
+
+    private static void compareScanners(String name, String text)
+    {
+        List<String> handWarnings = new ArrayList<>();
+        List<String> tableWarnings = new ArrayList<>();
+        TokenStore hand = new Lex(new StringSource(text)).warnings((message, at) -> handWarnings.add(at + " " + message)).tokenizeCompact();
+        TokenStore table = new Lex(new StringSource(text)).useTables(true).warnings((message, at) -> tableWarnings.add(at + " " + message)).tokenizeCompact();
+        assertEquals(hand.size(), table.size(), name);
+        for(int i = 0; i < hand.size(); i++)
+        {
+            String at = name + " token " + i;
+            assertEquals(hand.type(i), table.type(i), at);
+            assertEquals(hand.start(i), table.start(i), at);
+            assertEquals(hand.length(i), table.length(i), at);
+            assertEquals(hand.line(i), table.line(i), at);
+            assertEquals(hand.value(i), table.value(i), at);
+            assertEquals(hand.text(i), table.text(i), at);
+        }
+        assertEquals(handWarnings, tableWarnings, name);
+    }
+
+    private static long value(String literal, boolean tables)
+    {
+        TokenStore tokens = new Lex(new StringSource("x = " + literal + ";")).useTables(tables).tokenizeCompact();
+        assertEquals(TokenType.CT_INT, tokens.type(2));
+        return tokens.value(2);
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// chunks far smaller than MIN_CHUNK, so every input splits many times, inside comments and long lines too
+class ParallelLexTest
+{
+    private static final int CHUNK = 4096;
+
+    @Test
+    void corpusShapesLexTheSameInParallel()
+    {
+        for(Corpus.Shape shape : Corpus.Shape.values())
+        {
+            String text = Corpus.generate(shape, 200_000, 7);
+            compare(shape.toString(), text, false);
+            compare(shape.toString(), text, true);
+        }
+    }
+
+    @Test
+    void longCommentsWarnOnlyWhereTheSequentialLexerDoes()
+    {
+        StringBuilder text = new StringBuilder("int a;\n/*\n");
+        for(int i = 0; i < 10_000; i++) text.append("    x @ y && \"z ").append(i).append('\n');
+        text.append("*/\nint b @;\n/* a second one */ int c # ;\n");
+        compare("comment", text.toString(), false);
+        compare("comment", text.toString(), true);
+    }
+
+    @Test
+    void longLinesSplitBetweenTokens()
+    {
+        StringBuilder text = new StringBuilder("int main()\n{\n    return 0");
+        for(int i = 0; i < 20_000; i++) text.append(i % 97 == 0 ? " && a" : "&&b").append(i % 500 == 0 ? " @" : "");
+        text.append(";\n}\n");
+        compare("line", text.toString(), false);
+        compare("line", text.toString(), true);
+    }
+
+    @Test
+    void warningsReachStandardErrorOnce()
+    {
+        StringBuilder text = new StringBuilder("/*\n");
+        for(int i = 0; i < 5_000; i++) text.append("@ ").append(i).append('\n');
+        text.append("*/\nint x @;\n");
+        assertEquals("Unknown character @\n", stderr(() ->
+        {
+            ParallelLex lex = new ParallelLex(new StringSource(text.toString()), ForkJoinPool.commonPool());
+            lex.chunkSize = CHUNK;
+            lex.tokenize();
+        }));
+    }
+
+    private static void compare(String name, String text, boolean tables)
+    {
+        List<String> sequentialWarnings = new ArrayList<>();
+        List<String> parallelWarnings = new ArrayList<>();
+        TokenStore expected = new Lex(new StringSource(text)).useTables(tables).warnings((message, at) -> sequentialWarnings.add(at + " " + message)).tokenizeCompact();
+        ParallelLex lex = new ParallelLex(new StringSource(text), ForkJoinPool.commonPool()).useTables(tables).warnings((message, at) -> parallelWarnings.add(at + " " + message));
+        lex.chunkSize = CHUNK;
+        TokenStore actual = lex.tokenize();
+
+        assertEquals(expected.size(), actual.size(), name);
+        for(int i = 0; i < expected.size(); i++)
+        {
+            String at = name + " token " + i;
+            assertEquals(expected.type(i), actual.type(i), at);
+            assertEquals(expected.start(i), actual.start(i), at);
+            assertEquals(expected.length(i), actual.length(i), at);
+            assertEquals(expected.line(i), actual.line(i), at);
+            assertEquals(expected.value(i), actual.value(i), at);
+            assertEquals(expected.text(i), actual.text(i), at);
+        }
+        assertEquals(sequentialWarnings, parallelWarnings, name);
+    }
+
+    private static String stderr(Runnable body)
+    {
+        PrintStream saved = System.err;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try
+        {
+            body.run();
+        }
+        finally
+        {
+            System.setErr(saved);
+        }
+        return bytes.toString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the backtracking parser is the reference; memoized, predictive and precedence-climbing parses must build the same
+// tree for every valid program and fail with the same message on every truncated one
+class ParserModesTest
+{
+    private static final String[] MODES = { "memo", "predictive", "pratt" };
+
+    @Test
+    void modesBuildTheSameTrees()
+    {
+        for(Corpus.Shape shape : Corpus.Shape.values()) compare(shape.toString(), Corpus.generate(shape, 20_000, 5));
+        for(long seed = 1; seed <= 100; seed++)
+        {
+            compare("seed " + seed, Programs.generate(seed, false));
+            compare("structs seed " + seed, Programs.generate(seed, true));
+        }
+    }
+
+    @Test
+    void modesReportTheSameErrorsOnTruncatedInput()
+    {
+        for(long seed = 1; seed <= 20; seed++)
+        {
+            String text = Programs.generate(seed, true);
+            TokenStore tokens = new Lex(new StringSource(text)).tokenizeCompact();
+            for(int cut = 1; cut < tokens.size() - 1; cut += 7) compare("seed " + seed + " cut at token " + cut, text.substring(0, tokens.start(cut)));
+        }
+    }
+
+    private static void compare(String name, String text)
+    {
+        String expected = parse(text, "trial");
+        for(String mode : MODES) assertEquals(expected, parse(text, mode), name + " in " + mode + " mode\n" + text);
+    }
+
+    // the tree when the parse succeeds, otherwise the error, whether parse returned it or threw it
+    private static String parse(String text, String mode)
+    {
+        TokenStore tokens = new Lex(new StringSource(text)).tokenizeCompact();
+        Syntactic parser = new Syntactic(tokens).memoize(mode.equals("memo")).predictive(mode.equals("predictive")).pratt(mode.equals("pratt"));
+        try
+        {
+            if(!parser.parse()) return parser.error();
+        }
+        catch(RuntimeException e)
+        {
+            return e.getMessage();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        parser.ast().dump(parser.root(), tokens, out);
+        out.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.*;
+
+// random AtomC programs that type check, terminate and read only what they wrote or what get_s/get_i/get_d/get_c
+// return, so every backend must print the same thing for the same input
+class Programs
+{
+    private final SplittableRandom random;
+    private final boolean structs;
+    private final StringBuilder out = new StringBuilder();
+    private final List<String> functions = new ArrayList<>();
+    private final List<Boolean> returnsReal = new ArrayList<>();
+    private int loops = 0;
+
+    private Programs(long seed, boolean structs)
+    {
+        this.random = new SplittableRandom(seed);
+        this.structs = structs;
+    }
+
+    // structs are optional since the JVM backend rejects them
+    static String generate(long seed, boolean structs)
+    {
+        Programs programs = new Programs(seed, structs);
+        programs.program();
+        return programs.out.toString();
+    }
+
+    // lines of 1 to 9 digits, so get_i and get_d always parse and get_s sees lines longer than some buffers
+    static String input(long seed, int lines)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < lines; i++)
+        {
+            int digits = 1 + random.nextInt(9);
+            for(int d = 0; d < digits; d++) input.append((char)('0' + random.nextInt(10)));
+            input.append('\n');
+        }
+        return input.toString();
+    }
+
+    private int pick(int bound)
+    {
+        return random.nextInt(bound);
+    }
+
+    private void program()
+    {
+        out.append("int gn;\ndouble gx;\nint gi[8];\ndouble gd[8];\nchar gs[").append(4 + pick(9)).append("];\n");
+        if(structs)
+        {
+            out.append("struct Q\n{\n    int a;\n    double b;\n    char s[").append(3 + pick(6)).append("];\n    int v[3];\n};\n");
+            out.append("struct Q gq;\nstruct Q gqs[3];\n");
+        }
+        out.append("int rec(int n)\n{\n    if(n < 1) return 0;\n    return n + rec(n - 1);\n}\n");
+        int count = 1 + pick(4);
+        for(int f = 0; f < count; f++) function(f);
+        out.append("int main()\n{\n");
+        locals();
+        for(int i = 2 + pick(6); i > 0; i--) statement(1, false);
+        out.append("    return ").append(intExpr(3)).append(";\n}\n");
+    }
+
+    private void function(int f)
+    {
+        boolean real = pick(2) == 0;
+        String name = "f" + f;
+        out.append(real ? "double " : "int ").append(name).append("(int n, double x, char s[])\n{\n");
+        locals();
+        out.append("    put_s(s);\n");
+        for(int i = 1 + pick(5); i > 0; i--) statement(1, true);
+        out.append("    return ").append(real ? realExpr(3) : intExpr(3)).append(";\n}\n");
+        functions.add(name);
+        returnsReal.add(real);
+    }
+
+    private void locals()
+    {
+        out.append("    int a, b, i, k;\n    double d;\n    char c, t[").append(2 + pick(9)).append("];\n");
+        if(structs) out.append("    struct Q q;\n");
+        out.append("    a = ").append(pick(100)).append(";\n    b = ").append(pick(100)).append(";\n");
+        out.append("    d = ").append(pick(100)).append(".").append(pick(100)).append(";\n    c = 'a';\n    t[0] = 0;\n");
+        if(structs) out.append("    q.a = 1;\n    q.b = 2.5;\n    q.s[0] = 0;\n");
+    }
+
+    private void indent(int depth)
+    {
+        for(int i = 0; i < depth; i++) out.append("    ");
+    }
+
+    private void statement(int depth, boolean inFunction)
+    {
+        indent(depth);
+        int kinds = depth < 3 ? 16 : 12;
+        switch(pick(kinds))
+        {
+            case 0: out.append("a = ").append(intExpr(3)).append(";\n"); break;
+            case 1: out.append("d = ").append(realExpr(3)).append(";\n"); break;
+            case 2: out.append("gi[").append(pick(8)).append("] = ").append(intExpr(2)).append(";\n"); break;
+            case 3: out.append("put_i(").append(intExpr(3)).append(");\n"); break;
+            case 4: out.append("put_d(").append(realExpr(3)).append(");\n"); break;
+            case 5: out.append("c = ").append(intExpr(1)).append(";\n").append("    ".repeat(depth)).append("put_c(c);\n"); break;
+            case 6: out.append("put_s(\"").append(word()).append("\");\n"); break;
+            case 7: strings(depth, inFunction); break;
+            case 8: out.append("b = get_i() + ").append(intExpr(1)).append(";\n"); break;
+            case 9: out.append("gd[").append(pick(8)).append("] = get_d() * ").append(realExpr(1)).append(";\n"); break;
+            case 10:
+                if(structs) structure(depth);
+                else out.append("gx = gx + ").append(realExpr(2)).append(";\n");
+                break;
+            case 11:
+                // the rest of the line goes too, so a later get_i never reads what get_c left of it
+                out.append("c = get_c();\n");
+                indent(depth);
+                out.append("get_s(gs);\n");
+                break;
+            case 12:
+                out.append("if(").append(condition()).append(")\n");
+                branch(depth, inFunction);
+                if(pick(2) == 0)
+                {
+                    indent(depth);
+                    out.append("else\n");
+                    branch(depth, inFunction);
+                }
+                break;
+            case 13:
+            {
+                String i = loops++ % 2 == 0 ? "i" : "k";
+                out.append("for(").append(i).append(" = 0; ").append(i).append(" < ").append(1 + pick(4)).append("; ")
+                    .append(i).append(" = ").append(i).append(" + 1)\n");
+                indent(depth);
+                out.append("{\n");
+                indent(depth + 1);
+                out.append("gi[").append(i).append("] = gi[").append(i).append("] + ").append(i).append(";\n");
+                statement(depth + 1, inFunction);
+                indent(depth);
+                out.append("}\n");
+                break;
+            }
+            case 14:
+                out.append("gn = 3;\n");
+                indent(depth);
+                out.append("while(gn > 0)\n");
+                indent(depth);
+                out.append("{\n");
+                indent(depth + 1);
+                out.append("gn = gn - 1;\n");
+                indent(depth + 1);
+                out.append("if(gn == ").append(pick(3)).append(") break;\n");
+                indent(depth + 1);
+                out.append("put_i(gn);\n");
+                indent(depth);
+                out.append("}\n");
+                break;
+            default:
+                out.append("{\n");
+                for(int s = 1 + pick(3); s > 0; s--) statement(depth + 1, inFunction);
+                indent(depth);
+                out.append("}\n");
+                break;
+        }
+    }
+
+    // braced, since some statements above print as two
+    private void branch(int depth, boolean inFunction)
+    {
+        indent(depth);
+        out.append("{\n");
+        statement(depth + 1, inFunction);
+        indent(depth);
+        out.append("}\n");
+    }
+
+    // get_s into locals, globals, fields and parameters, then put_s, so a line longer than the array shows
+    private void strings(int depth, boolean inFunction)
+    {
+        String[] targets = structs ? new String[] { "t", "gs", "q.s", "gq.s", "gqs[1].s", "s" } : new String[] { "t", "gs", "s" };
+        String target = targets[pick(inFunction ? targets.length : targets.length - 1)];
+        out.append("get_s(").append(target).append(");\n");
+        indent(depth);
+        out.append("put_s(").append(target).append(");\n");
+    }
+
+    private void structure(int depth)
+    {
+        switch(pick(4))
+        {
+            case 0: out.append("q.a = q.a + ").append(intExpr(2)).append(";\n"); break;
+            case 1: out.append("gqs[").append(pick(3)).append("].b = ").append(realExpr(2)).append(";\n"); break;
+            case 2: out.append("q.v[").append(pick(3)).append("] = ").append(intExpr(2)).append(";\n"); break;
+            default:
+                out.append("gq = q;\n");
+                indent(depth);
+                out.append("put_i(gq.a);\n");
+                break;
+        }
+    }
+
+    private String word()
+    {
+        StringBuilder word = new StringBuilder();
+        for(int i = pick(8); i > 0; i--) word.append((char)('a' + pick(26)));
+        return word.toString();
+    }
+
+    private String condition()
+    {
+        String[] ops = { "<", "<=", ">", ">=", "==", "!=" };
+        String compare = intExpr(2) + " " + ops[pick(ops.length)] + " " + intExpr(2);
+        switch(pick(4))
+        {
+            case 0: return compare + " && " + realExpr(1) + " < " + realExpr(1);
+            case 1: return compare + " || !(" + intExpr(1) + ")";
+            default: return compare;
+        }
+    }
+
+    private String call(int depth)
+    {
+        int f = pick(functions.size());
+        String[] arrays = { "gs", "t" };
+        String args = "(" + intExpr(depth) + ", " + realExpr(depth) + ", " + arrays[pick(arrays.length)] + ")";
+        return returnsReal.get(f) ? "(int)" + functions.get(f) + args : functions.get(f) + args;
+    }
+
+    private String intExpr(int depth)
+    {
+        if(depth == 0 || pick(5) == 0)
+        {
+            switch(pick(8))
+            {
+                case 0: return Integer.toString(pick(1000));
+                case 1: return "gi[" + pick(8) + "]";
+                case 2: return "b";
+                case 3: return "c";
+                case 4: return structs ? "gqs[" + pick(3) + "].v[" + pick(3) + "]" : "gn";
+                case 5: return "(int)d";
+                default: return "a";
+            }
+        }
+        switch(pick(11))
+        {
+            case 0: return "(" + intExpr(depth - 1) + " + " + intExpr(depth - 1) + ")";
+            case 1: return "(" + intExpr(depth - 1) + " - " + intExpr(depth - 1) + ")";
+            case 2: return intExpr(depth - 1) + " * " + intExpr(depth - 1);
+            case 3: return "(" + intExpr(depth - 1) + " / " + (1 + pick(9)) + ")";
+            case 4: return "(" + intExpr(depth - 1) + " / (" + intExpr(depth - 1) + " * " + intExpr(depth - 1) + " + 1))";
+            case 5: return "-(" + intExpr(depth - 1) + ")";
+            case 6: return "(" + intExpr(depth - 1) + " < " + intExpr(depth - 1) + ")";
+            case 7: return "(" + intExpr(depth - 1) + " == " + intExpr(depth - 1) + " || " + intExpr(depth - 1) + " != 0)";
+            case 8: return "rec(" + pick(6) + ")";
+            case 9: return functions.isEmpty() ? "a" : call(depth - 1);
+            default: return "(int)(" + realExpr(depth - 1) + ")";
+        }
+    }
+
+    private String realExpr(int depth)
+    {
+        if(depth == 0 || pick(5) == 0)
+        {
+            switch(pick(5))
+            {
+                case 0: return pick(100) + "." + pick(100);
+                case 1: return "gd[" + pick(8) + "]";
+                case 2: return "1.5e" + pick(4);
+                case 3: return structs ? "gqs[" + pick(3) + "].b" : "gx";
+                default: return "d";
+            }
+        }
+        switch(pick(6))
+        {
+            case 0: return "(" + realExpr(depth - 1) + " + " + intExpr(depth - 1) + ")";
+            case 1: return realExpr(depth - 1) + " * " + realExpr(depth - 1);
+            case 2: return "(" + realExpr(depth - 1) + " / " + realExpr(depth - 1) + ")";
+            case 3: return "-(" + realExpr(depth - 1) + ")";
+            case 4: return "(double)" + intExpr(depth - 1);
+            default: return "(" + realExpr(depth - 1) + " - " + realExpr(depth - 1) + " / 2.0)";
+        }
+    }
+}
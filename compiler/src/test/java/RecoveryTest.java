@@ -0,0 +1,77 @@
+import java.time.Duration;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// a recovering parse must report first what a throwing parse stops at, and must get through any input
+class RecoveryTest
+{
+    private static final String[] WORDS = {
+        "int", "double", "char", "struct", "if", "else", "while", "for", "break", "return", "x", "y", "f", "S", "1", "2.5",
+        "'c'", "\"s\"", "(", ")", "[", "]", "{", "}", ";", ",", ".", "=", "==", "!=", "<", "<=", ">", ">=", "+", "-", "*",
+        "/", "!", "&&", "||"
+    };
+
+    @Test
+    void firstDiagnosticIsTheThrowingError()
+    {
+        String[] inputs = {
+            "int x;\n5;\n", "}", "int main()\n{\n    return 0\n}\n", "struct S { int a; } int y;", "int f(int a,) {}",
+            "int main() { if(x) }", "int main() { x = ; }", "int a[3;", "int main() { while(1) { break } }",
+            "double d; struct Q q; int main() { q.a = (int; }", "int x int y;"
+        };
+        for(String input : inputs) compare(input, input);
+        for(long seed = 1; seed <= 10; seed++)
+        {
+            String text = Programs.generate(seed, true);
+            TokenStore tokens = new Lex(new StringSource(text)).tokenizeCompact();
+            for(int cut = 1; cut < tokens.size() - 1; cut += 11) compare("seed " + seed + " cut at token " + cut, text.substring(0, tokens.start(cut)));
+        }
+    }
+
+    @Test
+    void recoveryGetsThroughGarbage()
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+        {
+            for(long seed = 1; seed <= 300; seed++)
+            {
+                SplittableRandom random = new SplittableRandom(seed);
+                StringBuilder text = new StringBuilder();
+                for(int i = 0; i < 300; i++) text.append(WORDS[random.nextInt(WORDS.length)]).append(i % 12 == 11 ? '\n' : ' ');
+                compare("garbage seed " + seed, text.toString());
+            }
+        });
+    }
+
+    private static void compare(String name, String text)
+    {
+        TokenStore tokens = new Lex(new StringSource(text)).tokenizeCompact();
+        String thrown;
+        Syntactic throwing = new Syntactic(tokens);
+        try
+        {
+            thrown = throwing.parse() ? null : throwing.error();
+        }
+        catch(RuntimeException e)
+        {
+            thrown = e.getMessage();
+        }
+
+        Diagnostics diagnostics = new Diagnostics();
+        Syntactic recovering = new Syntactic(tokens).recover(diagnostics);
+        boolean parsed = recovering.parse();
+        if(thrown == null)
+        {
+            assertTrue(parsed, name);
+            assertEquals(0, diagnostics.size(), name);
+            return;
+        }
+        assertFalse(parsed, name);
+        assertTrue(diagnostics.size() > 0, name);
+        assertEquals(thrown, diagnostics.format(0), name + "\n" + text);
+        assertEquals(thrown, recovering.error(), name);
+    }
+}
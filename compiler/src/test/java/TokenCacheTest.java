@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCacheTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesRoundTrip() throws IOException
+    {
+        MappedSource src = source();
+        TokenCache cache = new TokenCache(dir.resolve("cache"), 1 << 20);
+        String key = TokenCache.key(src);
+        TokenStore tokens = new Lex(src).tokenizeCompact();
+        Syntactic parser = new Syntactic(tokens, new Ast());
+        assertTrue(parser.parse());
+        cache.store(key, tokens, parser.ast(), parser.root());
+
+        TokenCache.Entry entry = cache.load(key, src);
+        assertNotNull(entry);
+        assertEquals(tokens.size(), entry.tokens.size());
+        for(int i = 0; i < tokens.size(); i++) assertEquals(tokens.token(i).toString(), entry.tokens.token(i).toString());
+        assertEquals(parser.ast().size(), entry.ast.size());
+        assertEquals(parser.root(), entry.root);
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void truncatedEntriesAreMissesAndGetDeleted() throws IOException
+    {
+        MappedSource src = source();
+        Path files = dir.resolve("cache");
+        TokenCache writer = new TokenCache(files, 1 << 20);
+        String key = TokenCache.key(src);
+        TokenStore tokens = new Lex(src).tokenizeCompact();
+        Syntactic parser = new Syntactic(tokens, new Ast());
+        assertTrue(parser.parse());
+        writer.store(key, tokens, parser.ast(), parser.root());
+        Path file = files.resolve(key + ".tok");
+        long size = Files.size(file);
+
+        for(long cut : new long[]{ size - 1, size / 2, 20, 13 })
+        {
+            writer.store(key, tokens, parser.ast(), parser.root());
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(cut);
+            }
+            TokenCache cache = new TokenCache(files, 1 << 20);
+            assertNull(cache.load(key, src), "cut at " + cut);
+            assertEquals(1, cache.misses());
+            assertFalse(Files.exists(file));
+            assertEquals(0, cache.bytes());
+        }
+    }
+
+    @Test
+    void corruptCountsAreMisses() throws IOException
+    {
+        MappedSource src = source();
+        Path files = dir.resolve("cache");
+        TokenCache writer = new TokenCache(files, 1 << 20);
+        String key = TokenCache.key(src);
+        writer.store(key, new Lex(src).tokenizeCompact(), null, Ast.NONE);
+        Path file = files.resolve(key + ".tok");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[12] = (byte)0x7F;       // the symbol count's high byte
+        Files.write(file, bytes);
+
+        TokenCache cache = new TokenCache(files, 1 << 20);
+        assertNull(cache.load(key, src));
+        assertEquals(1, cache.misses());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void longSymbolNamesRoundTrip() throws IOException
+    {
+        String name = "v".repeat(70000);
+        Path file = dir.resolve("0.c");
+        Files.writeString(file, "int " + name + ";\nint main()\n{\n    return " + name + ";\n}\n");
+        MappedSource src = MappedSource.map(file);
+        TokenCache cache = new TokenCache(dir.resolve("cache"), 1 << 20);
+        String key = TokenCache.key(src);
+        TokenStore tokens = new Lex(src).tokenizeCompact();
+        cache.store(key, tokens, null, Ast.NONE);
+
+        TokenCache.Entry entry = cache.load(key, src);
+        assertNotNull(entry);
+        assertEquals(tokens.size(), entry.tokens.size());
+        for(int i = 0; i < tokens.size(); i++) assertEquals(tokens.token(i).toString(), entry.tokens.token(i).toString());
+    }
+
+    @Test
+    void warningsRoundTrip() throws IOException
+    {
+        Path file = dir.resolve("0.c");
+        Files.writeString(file, "int main()\n{\n    return 0 @ ;\n}\n");
+        MappedSource src = MappedSource.map(file);
+        TokenCache cache = new TokenCache(dir.resolve("cache"), 1 << 20);
+        String key = TokenCache.key(src);
+        List<String> warnings = new ArrayList<>();
+        TokenStore tokens = new Lex(src).warnings((message, at) -> warnings.add(message)).tokenizeCompact();
+        assertEquals(List.of("Unknown character @"), warnings);
+        cache.store(key, tokens, warnings, null, Ast.NONE);
+
+        TokenCache.Entry entry = cache.load(key, src);
+        assertNotNull(entry);
+        assertEquals(warnings, entry.warnings);
+    }
+
+    private MappedSource source() throws IOException
+    {
+        Path file = dir.resolve("0.c");
+        Files.writeString(file, "struct P { int x; double w[4]; };\nint main()\n{\n    put_s(\"hi\\n\");\n    return 0;\n}\n");
+        return MappedSource.map(file);
+    }
+}
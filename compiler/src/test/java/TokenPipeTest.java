@@ -0,0 +1,92 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPipeTest
+{
+    @Test
+    void pipelinedParsesMatchLexingFirst()
+    {
+        for(Corpus.Shape shape : Corpus.Shape.values())
+        {
+            String text = Corpus.generate(shape, 12_000, 3);
+            TokenStore expected = new Lex(new StringSource(text)).tokenizeCompact();
+            Syntactic sequential = new Syntactic(expected);
+            assertTrue(sequential.parse(), sequential::error);
+
+            TokenPipe pipe = new TokenPipe(new StringSource(text), false).start();
+            Syntactic pipelined = new Syntactic(pipe.tokens()).feed(pipe);
+            assertTrue(pipelined.parse(), pipelined::error);
+
+            assertTokens(expected, pipe.tokens());
+            assertEquals(dump(sequential, expected), dump(pipelined, pipe.tokens()), shape.toString());
+        }
+    }
+
+    @Test
+    void lexerWaitsWhileTheRingIsFull() throws InterruptedException
+    {
+        String text = Corpus.generate(Corpus.Shape.EXPRESSIONS, 400_000, 5);
+        TokenStore expected = new Lex(new StringSource(text)).tokenizeCompact();
+        assertTrue(expected.size() > 2 * TokenPipe.SLOTS * TokenPipe.BATCH);
+
+        TokenPipe pipe = new TokenPipe(new StringSource(text), false).start();
+        for(int i = 0; i < 500 && pipe.buffered() < TokenPipe.SLOTS; i++) Thread.sleep(10);
+        Thread.sleep(50);
+        assertEquals(TokenPipe.SLOTS, pipe.buffered());
+        assertEquals(0, pipe.tokens().size());
+
+        pipe.fill(0);
+        assertEquals(TokenPipe.BATCH, pipe.tokens().size());
+        pipe.drain();
+        assertTrue(pipe.ended());
+        assertTokens(expected, pipe.tokens());
+    }
+
+    @Test
+    void lexicalErrorsReachTheParserAfterTheTokensBeforeThem()
+    {
+        String good = Corpus.generate(Corpus.Shape.EXPRESSIONS, 24_000, 9);
+        String text = good + "int bad[09];\n";
+        TokenPipe pipe = new TokenPipe(new StringSource(text), false).start();
+        Syntactic parser = new Syntactic(pipe.tokens()).feed(pipe);
+        RuntimeException e = assertThrows(RuntimeException.class, parser::parse);
+        assertSame(pipe.failure(), e);
+        assertTrue(e.getMessage().startsWith("Lexical error"), e.getMessage());
+        // every batch published before the error reached the store
+        int before = new Lex(new StringSource(good)).tokenizeCompact().size() - 1;
+        assertEquals(before / TokenPipe.BATCH * TokenPipe.BATCH, pipe.tokens().size());
+
+        Diagnostics diagnostics = new Diagnostics();
+        pipe = new TokenPipe(new StringSource(text), false).recover(diagnostics).start();
+        parser = new Syntactic(pipe.tokens()).feed(pipe);
+        assertTrue(parser.parse(), parser::error);
+        assertEquals(1, diagnostics.size());
+        assertTrue(diagnostics.format(0).startsWith("Lexical error"), diagnostics.format(0));
+    }
+
+    private static void assertTokens(TokenStore expected, TokenStore actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.type(i), actual.type(i), "token " + i);
+            assertEquals(expected.start(i), actual.start(i), "token " + i);
+            assertEquals(expected.line(i), actual.line(i), "token " + i);
+            assertEquals(expected.value(i), actual.value(i), "token " + i);
+            assertEquals(expected.text(i), actual.text(i), "token " + i);
+        }
+    }
+
+    private static String dump(Syntactic parser, TokenStore tokens)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        parser.ast().dump(parser.root(), tokens, out);
+        out.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}